@@ -0,0 +1,60 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base class for transports that always fetch the complete list. Only
+ * {@link #open(String, int)} remains to be implemented.
+ */
+public abstract class AbstractTrustServiceListTransport implements
+		TrustServiceListTransport {
+
+	/**
+	 * Ignores the validators, so the list is never reported as not modified.
+	 */
+	public TrustServiceListResponse open(String location, String etag,
+			String lastModified, int timeout) throws IOException {
+		return new TrustServiceListResponse(open(location, timeout), null,
+				null);
+	}
+
+	public TrustServiceList getTrustServiceList(String location, int timeout)
+			throws IOException {
+		return parse(open(location, timeout));
+	}
+
+	/**
+	 * Parses and closes the given TSL content.
+	 * 
+	 * @param inputStream
+	 * @return
+	 * @throws IOException
+	 */
+	static TrustServiceList parse(InputStream inputStream) throws IOException {
+		try {
+			return TrustServiceListFactory.newInstance(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+
+import be.fedict.eid.tsl.CertificateValidationResult.Status;
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityListType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryInstanceType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryType;
+
+/**
+ * Validates many certificates against a trust service list at once. The
+ * issuing trust service of a certificate is found via the trust service
+ * index, its signature is verified against the (current or historical)
+ * service digital identity and the service status at the validation time is
+ * taken from the {@link ServiceStatusTimeline}.
+ * 
+ * The service digital identities are decoded once at construction and shared
+ * by all validations. Batches are split in chunks that are validated
+ * concurrently on a bounded thread pool, or on the executor given by the
+ * caller. Don't change the trust service list while a validator is in use.
+ */
+public class BatchCertificateValidator {
+
+	private static final Log LOG = LogFactory
+			.getLog(BatchCertificateValidator.class);
+
+	private static final Set<String> ACTIVE_SERVICE_STATUSES;
+
+	static {
+		ACTIVE_SERVICE_STATUSES = new HashSet<String>();
+		ACTIVE_SERVICE_STATUSES.add(TrustService.SERVICE_STATUS_UNDER_SUPERVISION);
+		ACTIVE_SERVICE_STATUSES
+				.add(TrustService.SERVICE_STATUS_UNDER_SUPERVISION_IN_CESSATION);
+		ACTIVE_SERVICE_STATUSES.add(TrustService.SERVICE_STATUS_ACCREDITED);
+		ACTIVE_SERVICE_STATUSES
+				.add(TrustService.SERVICE_STATUS_SET_BY_NATIONAL_LAW);
+	}
+
+	/**
+	 * Number of chunks per thread, to even out chunks that take longer.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final TrustServiceIndex trustServiceIndex;
+
+	private final ServiceStatusTimeline serviceStatusTimeline;
+
+	private final Map<TrustService, List<X509Certificate>> serviceCertificates;
+
+	private final int threads;
+
+	private final ExecutorService executorService;
+
+	/**
+	 * Main constructor. Every validation of a batch runs on a thread pool of
+	 * its own.
+	 * 
+	 * @param trustServiceList
+	 * @param threads
+	 *            the maximum number of concurrent validations.
+	 */
+	public BatchCertificateValidator(TrustServiceList trustServiceList,
+			int threads) {
+		this(trustServiceList, threads, null);
+	}
+
+	/**
+	 * Constructor for validating many batches on the same executor, e.g. for
+	 * long running jobs. The executor is not shut down by the validator.
+	 * 
+	 * @param trustServiceList
+	 * @param threads
+	 *            the number of concurrent validations, should match the
+	 *            executor.
+	 * @param executorService
+	 *            the executor to validate on, or <code>null</code> for a
+	 *            thread pool per batch.
+	 */
+	public BatchCertificateValidator(TrustServiceList trustServiceList,
+			int threads, ExecutorService executorService) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads should be positive");
+		}
+		this.threads = threads;
+		this.executorService = executorService;
+		this.trustServiceIndex = trustServiceList.getTrustServiceIndex();
+		this.serviceStatusTimeline = trustServiceList
+				.getServiceStatusTimeline();
+		this.serviceCertificates = new HashMap<TrustService, List<X509Certificate>>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceList
+				.getTrustServiceProviders()) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+				addCertificates(trustService.getTSPService()
+						.getServiceInformation().getServiceDigitalIdentity(),
+						certificates);
+				ServiceHistoryType serviceHistory = trustService
+						.getServiceHistory();
+				if (null != serviceHistory) {
+					for (ServiceHistoryInstanceType serviceHistoryInstance : serviceHistory
+							.getServiceHistoryInstance()) {
+						addCertificates(
+								serviceHistoryInstance
+										.getServiceDigitalIdentity(),
+								certificates);
+					}
+				}
+				this.serviceCertificates.put(trustService, certificates);
+			}
+		}
+	}
+
+	private static void addCertificates(
+			DigitalIdentityListType digitalIdentityList,
+			List<X509Certificate> certificates) {
+		for (X509Certificate certificate : DigitalIdentityCertificates
+				.getCertificates(digitalIdentityList)) {
+			if (false == certificates.contains(certificate)) {
+				certificates.add(certificate);
+			}
+		}
+	}
+
+	public List<CertificateValidationResult> validate(
+			X509Certificate[] certificates, DateTime validationTime) {
+		return validate(Arrays.asList(certificates), validationTime);
+	}
+
+	/**
+	 * Validates the given certificates at the given time.
+	 * 
+	 * @param certificates
+	 * @param validationTime
+	 * @return the validation results, in the order of the given certificates.
+	 */
+	public List<CertificateValidationResult> validate(
+			List<X509Certificate> certificates, DateTime validationTime) {
+		long start = System.nanoTime();
+		X509Certificate[] input = certificates
+				.toArray(new X509Certificate[certificates.size()]);
+		CertificateValidationResult[] results = new CertificateValidationResult[input.length];
+		if (0 == input.length) {
+			return Arrays.asList(results);
+		}
+		int chunkCount = Math.min(input.length, this.threads
+				* CHUNKS_PER_THREAD);
+		int chunkSize = (input.length + chunkCount - 1) / chunkCount;
+		long validationMillis = validationTime.getMillis();
+		List<Future<Void>> futures = new LinkedList<Future<Void>>();
+		ExecutorService executorService = this.executorService;
+		if (null == executorService) {
+			executorService = Executors.newFixedThreadPool(Math.min(
+					this.threads, chunkCount));
+		}
+		try {
+			for (int from = 0; from < input.length; from += chunkSize) {
+				futures.add(executorService.submit(new ValidationTask(input,
+						results, from, Math.min(input.length, from
+								+ chunkSize), validationMillis)));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException("validation error: "
+							+ e.getCause().getMessage(), e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("validation interrupted", e);
+				}
+			}
+		} finally {
+			if (null == this.executorService) {
+				executorService.shutdownNow();
+			} else {
+				// don't leave chunks of a failed batch running
+				for (Future<Void> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+		LOG.debug("validated " + input.length + " certificates in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		return Arrays.asList(results);
+	}
+
+	private class ValidationTask implements Callable<Void> {
+
+		private final X509Certificate[] certificates;
+
+		private final CertificateValidationResult[] results;
+
+		private final int from;
+
+		private final int to;
+
+		private final long validationTime;
+
+		public ValidationTask(X509Certificate[] certificates,
+				CertificateValidationResult[] results, int from, int to,
+				long validationTime) {
+			this.certificates = certificates;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.validationTime = validationTime;
+		}
+
+		public Void call() throws Exception {
+			Date validationDate = new Date(this.validationTime);
+			for (int idx = this.from; idx < this.to; idx++) {
+				X509Certificate certificate = this.certificates[idx];
+				try {
+					this.results[idx] = validate(certificate, validationDate);
+				} catch (RuntimeException e) {
+					LOG.error("validation error for "
+							+ certificate.getSubjectX500Principal() + ": "
+							+ e.getMessage(), e);
+					this.results[idx] = new CertificateValidationResult(
+							certificate, Status.ERROR, null, null);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Validates a single certificate at the given time.
+	 * 
+	 * @param certificate
+	 * @param validationDate
+	 * @return
+	 */
+	public CertificateValidationResult validate(X509Certificate certificate,
+			Date validationDate) {
+		try {
+			certificate.checkValidity(validationDate);
+		} catch (CertificateException e) {
+			return new CertificateValidationResult(certificate,
+					Status.EXPIRED, null, null);
+		}
+		List<TrustService> issuingServices = this.trustServiceIndex
+				.findIssuingServices(certificate);
+		if (issuingServices.isEmpty()) {
+			return new CertificateValidationResult(certificate,
+					Status.UNKNOWN_ISSUER, null, null);
+		}
+		CertificateValidationResult notActiveResult = null;
+		for (TrustService issuingService : issuingServices) {
+			for (X509Certificate serviceCertificate : this.serviceCertificates
+					.get(issuingService)) {
+				if (false == serviceCertificate.getSubjectX500Principal()
+						.equals(certificate.getIssuerX500Principal())) {
+					continue;
+				}
+				try {
+					certificate.verify(serviceCertificate.getPublicKey());
+				} catch (Exception e) {
+					continue;
+				}
+				String serviceStatus = this.serviceStatusTimeline.statusAt(
+						issuingService, serviceCertificate,
+						validationDate.getTime());
+				if (null != serviceStatus
+						&& ACTIVE_SERVICE_STATUSES.contains(serviceStatus)) {
+					return new CertificateValidationResult(certificate,
+							Status.VALID, issuingService, serviceStatus);
+				}
+				// another identity might have been active
+				notActiveResult = new CertificateValidationResult(certificate,
+						Status.SERVICE_NOT_ACTIVE, issuingService,
+						serviceStatus);
+			}
+		}
+		if (null != notActiveResult) {
+			return notActiveResult;
+		}
+		return new CertificateValidationResult(certificate,
+				Status.INVALID_SIGNATURE, null, null);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Keeps the SHA-256 digests of known signer and service certificates, so
+ * that repeated verifications against the same certificates don't have to
+ * re-digest the certificate encoding.
+ * 
+ * The cache is keyed on certificate identity via weak references. Lookups
+ * don't lock, and don't need the certificate hash code, which digests the
+ * whole encoding on some runtimes. Certificates that are only queried once,
+ * like the certificates to validate, are digested via
+ * {@link #computeSha256(X509Certificate)} so that they don't churn the cache.
+ */
+final class CertificateDigests {
+
+	private static final WeakIdentityCache<X509Certificate, byte[]> SHA256_DIGESTS = new WeakIdentityCache<X509Certificate, byte[]>();
+
+	private CertificateDigests() {
+		super();
+	}
+
+	/**
+	 * Gives back the SHA-256 digest of the encoding of the given certificate.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	static byte[] getSha256(X509Certificate certificate) {
+		byte[] digest = SHA256_DIGESTS.get(certificate);
+		if (null == digest) {
+			digest = computeSha256(certificate);
+			SHA256_DIGESTS.put(certificate, digest);
+		}
+		return digest.clone();
+	}
+
+	static String getSha256Hex(X509Certificate certificate) {
+		return new String(Hex.encodeHex(getSha256(certificate)));
+	}
+
+	/**
+	 * Gives back the SHA-256 digest of the encoding of the given certificate,
+	 * without caching it.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	static byte[] computeSha256(X509Certificate certificate) {
+		try {
+			return DigestUtils.sha256(certificate.getEncoded());
+		} catch (CertificateEncodingException e) {
+			throw new RuntimeException("X509 encoding error: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	static String computeSha256Hex(X509Certificate certificate) {
+		return new String(Hex.encodeHex(computeSha256(certificate)));
+	}
+}
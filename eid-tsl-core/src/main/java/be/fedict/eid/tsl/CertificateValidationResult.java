@@ -0,0 +1,106 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Outcome of validating a single certificate against a trust service list.
+ * 
+ * @see BatchCertificateValidator
+ */
+public class CertificateValidationResult {
+
+	public enum Status {
+		/**
+		 * Issued by a trust service that was active at the validation time.
+		 */
+		VALID,
+		/**
+		 * The certificate was not valid at the validation time.
+		 */
+		EXPIRED,
+		/**
+		 * No trust service matches the issuer of the certificate.
+		 */
+		UNKNOWN_ISSUER,
+		/**
+		 * None of the matching trust service identities signed the
+		 * certificate.
+		 */
+		INVALID_SIGNATURE,
+		/**
+		 * The issuing trust service was not active at the validation time.
+		 */
+		SERVICE_NOT_ACTIVE,
+		/**
+		 * Validation failed unexpectedly.
+		 */
+		ERROR
+	}
+
+	private final X509Certificate certificate;
+
+	private final Status status;
+
+	private final TrustService trustService;
+
+	private final String serviceStatus;
+
+	CertificateValidationResult(X509Certificate certificate, Status status,
+			TrustService trustService, String serviceStatus) {
+		this.certificate = certificate;
+		this.status = status;
+		this.trustService = trustService;
+		this.serviceStatus = serviceStatus;
+	}
+
+	public X509Certificate getCertificate() {
+		return this.certificate;
+	}
+
+	public Status getStatus() {
+		return this.status;
+	}
+
+	public boolean isValid() {
+		return Status.VALID == this.status;
+	}
+
+	/**
+	 * @return the issuing trust service, or <code>null</code> if not found.
+	 */
+	public TrustService getTrustService() {
+		return this.trustService;
+	}
+
+	/**
+	 * @return the status URI of the issuing trust service at the validation
+	 *         time, or <code>null</code> if not found.
+	 */
+	public String getServiceStatus() {
+		return this.serviceStatus;
+	}
+
+	@Override
+	public String toString() {
+		return this.certificate.getSubjectX500Principal() + ": "
+				+ this.status;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.List;
+
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityListType;
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityType;
+
+/**
+ * Keeps the decoded X509 certificates of digital identities, so that the
+ * DER encoding of a service digital identity is parsed only once. Entries are
+ * keyed on the identity of the JAXB digital identity objects and go away
+ * together with them. Lookups don't lock.
+ */
+final class DigitalIdentityCertificates {
+
+	/**
+	 * Certificate factories are not guaranteed to be thread-safe, so each
+	 * thread gets its own.
+	 */
+	private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = new ThreadLocal<CertificateFactory>() {
+
+		@Override
+		protected CertificateFactory initialValue() {
+			try {
+				return CertificateFactory.getInstance("X.509");
+			} catch (CertificateException e) {
+				throw new RuntimeException("X509 error: " + e.getMessage(), e);
+			}
+		}
+	};
+
+	private static class Entry {
+
+		private final byte[] encodedCertificate;
+
+		private final X509Certificate certificate;
+
+		public Entry(byte[] encodedCertificate, X509Certificate certificate) {
+			this.encodedCertificate = encodedCertificate;
+			this.certificate = certificate;
+		}
+	}
+
+	private static final WeakIdentityCache<DigitalIdentityType, Entry> CERTIFICATES = new WeakIdentityCache<DigitalIdentityType, Entry>();
+
+	private DigitalIdentityCertificates() {
+		super();
+	}
+
+	/**
+	 * Gives back the X509 certificate of the given digital identity, or
+	 * <code>null</code> if it's another kind of digital identity.
+	 * 
+	 * @param digitalIdentity
+	 * @return
+	 */
+	static X509Certificate getCertificate(DigitalIdentityType digitalIdentity) {
+		byte[] encodedCertificate = digitalIdentity.getX509Certificate();
+		if (null == encodedCertificate) {
+			return null;
+		}
+		Entry entry = CERTIFICATES.get(digitalIdentity);
+		/*
+		 * The JAXB setter replaces the byte array, so a changed digital
+		 * identity shows up as another array.
+		 */
+		if (null != entry && entry.encodedCertificate == encodedCertificate) {
+			return entry.certificate;
+		}
+		X509Certificate certificate = decode(encodedCertificate);
+		CERTIFICATES.put(digitalIdentity, new Entry(encodedCertificate,
+				certificate));
+		return certificate;
+	}
+
+	/**
+	 * Gives back the X509 certificates of the given digital identity list.
+	 * Other kinds of digital identities are skipped.
+	 * 
+	 * @param digitalIdentityList
+	 * @return
+	 */
+	static List<X509Certificate> getCertificates(
+			DigitalIdentityListType digitalIdentityList) {
+		List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+		if (null == digitalIdentityList) {
+			return certificates;
+		}
+		for (DigitalIdentityType digitalIdentity : digitalIdentityList
+				.getDigitalId()) {
+			X509Certificate certificate = getCertificate(digitalIdentity);
+			if (null != certificate) {
+				certificates.add(certificate);
+			}
+		}
+		return certificates;
+	}
+
+	static X509Certificate decode(byte[] encodedCertificate) {
+		try {
+			return (X509Certificate) CERTIFICATE_FACTORY.get()
+					.generateCertificate(
+							new ByteArrayInputStream(encodedCertificate));
+		} catch (CertificateException e) {
+			throw new RuntimeException("X509 error: " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.crypto.dsig.XMLSignature;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Direct DOM navigation for the fixed-position elements of a TSL document,
+ * like the enveloped ds:Signature and its XAdES properties. Walks child
+ * elements by namespace and local name instead of evaluating XPath
+ * expressions.
+ */
+final class DomNavigator {
+
+	static final String TSL_NAMESPACE = "http://uri.etsi.org/02231/v2#";
+
+	private DomNavigator() {
+		super();
+	}
+
+	/**
+	 * Gives back the enveloped ds:Signature element of the given TSL document,
+	 * or <code>null</code> if not present.
+	 * 
+	 * @param tslDocument
+	 * @return
+	 */
+	static Element getSignatureElement(Document tslDocument) {
+		Element rootElement = tslDocument.getDocumentElement();
+		if (null == rootElement
+				|| false == TSL_NAMESPACE.equals(rootElement.getNamespaceURI())
+				|| false == "TrustServiceStatusList".equals(rootElement
+						.getLocalName())) {
+			return null;
+		}
+		return getChildElement(rootElement, XMLSignature.XMLNS, "Signature");
+	}
+
+	/**
+	 * Gives back the XAdES QualifyingProperties element within one of the
+	 * ds:Object elements of the given signature, or <code>null</code> if not
+	 * present.
+	 * 
+	 * @param signatureElement
+	 * @return
+	 */
+	static Element getQualifyingPropertiesElement(Element signatureElement) {
+		for (Element objectElement : getChildElements(signatureElement,
+				XMLSignature.XMLNS, "Object")) {
+			Element qualifyingPropertiesElement = getChildElement(
+					objectElement, TrustServiceList.XADES_NAMESPACE,
+					"QualifyingProperties");
+			if (null != qualifyingPropertiesElement) {
+				return qualifyingPropertiesElement;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Follows the given path of local names, all within the same namespace,
+	 * starting from the given element.
+	 * 
+	 * @param element
+	 * @param namespace
+	 * @param localNames
+	 * @return the element at the end of the path, or <code>null</code>.
+	 */
+	static Element getElement(Element element, String namespace,
+			String... localNames) {
+		Element currentElement = element;
+		for (String localName : localNames) {
+			if (null == currentElement) {
+				return null;
+			}
+			currentElement = getChildElement(currentElement, namespace,
+					localName);
+		}
+		return currentElement;
+	}
+
+	/**
+	 * Gives back the first child element with the given namespace and local
+	 * name, or <code>null</code> if not present.
+	 * 
+	 * @param parentElement
+	 * @param namespace
+	 * @param localName
+	 * @return
+	 */
+	static Element getChildElement(Element parentElement, String namespace,
+			String localName) {
+		Node childNode = parentElement.getFirstChild();
+		while (null != childNode) {
+			if (isElement(childNode, namespace, localName)) {
+				return (Element) childNode;
+			}
+			childNode = childNode.getNextSibling();
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back all child elements with the given namespace and local name.
+	 * 
+	 * @param parentElement
+	 * @param namespace
+	 * @param localName
+	 * @return
+	 */
+	static List<Element> getChildElements(Element parentElement,
+			String namespace, String localName) {
+		List<Element> childElements = new LinkedList<Element>();
+		Node childNode = parentElement.getFirstChild();
+		while (null != childNode) {
+			if (isElement(childNode, namespace, localName)) {
+				childElements.add((Element) childNode);
+			}
+			childNode = childNode.getNextSibling();
+		}
+		return childElements;
+	}
+
+	private static boolean isElement(Node node, String namespace,
+			String localName) {
+		return Node.ELEMENT_NODE == node.getNodeType()
+				&& namespace.equals(node.getNamespaceURI())
+				&& localName.equals(node.getLocalName());
+	}
+}
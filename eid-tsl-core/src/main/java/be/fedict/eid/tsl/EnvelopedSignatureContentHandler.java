@@ -0,0 +1,198 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * SAX content handler that passes a document through to a serializer while
+ * digesting the exclusive canonical form of its document element. Right
+ * before the document element is closed, the enveloped ds:Signature created
+ * by {@link #createSignature(byte[])} is spliced in as last child.
+ */
+abstract class EnvelopedSignatureContentHandler implements ContentHandler {
+
+	private final ContentHandler serializer;
+
+	private final MessageDigest messageDigest;
+
+	private final ExclusiveCanonicalizer canonicalizer;
+
+	private int depth;
+
+	public EnvelopedSignatureContentHandler(ContentHandler serializer,
+			MessageDigest messageDigest) {
+		this.serializer = serializer;
+		this.messageDigest = messageDigest;
+		this.canonicalizer = new ExclusiveCanonicalizer(
+				new DigestOutputStream(new NullOutputStream(), messageDigest));
+	}
+
+	/**
+	 * Creates the ds:Signature element given the digest value of the
+	 * enveloped reference.
+	 *
+	 * @param digestValue
+	 * @return
+	 * @throws Exception
+	 */
+	protected abstract Element createSignature(byte[] digestValue)
+			throws Exception;
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes atts) throws SAXException {
+		this.depth++;
+		this.canonicalizer.startElement(uri, localName, qName, atts);
+		this.serializer.startElement(uri, localName, qName, atts);
+	}
+
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		this.depth--;
+		this.canonicalizer.endElement(uri, localName, qName);
+		if (0 == this.depth) {
+			try {
+				this.canonicalizer.flush();
+			} catch (IOException e) {
+				throw new SAXException("C14N error: " + e.getMessage(), e);
+			}
+			byte[] digestValue = this.messageDigest.digest();
+			Element signatureElement;
+			try {
+				signatureElement = createSignature(digestValue);
+			} catch (Exception e) {
+				throw new SAXException("XML sign error: " + e.getMessage(), e);
+			}
+			serialize(signatureElement);
+		}
+		this.serializer.endElement(uri, localName, qName);
+	}
+
+	private void serialize(Element element) throws SAXException {
+		List<String> prefixes = new LinkedList<String>();
+		AttributesImpl attributes = new AttributesImpl();
+		NamedNodeMap attributeNodes = element.getAttributes();
+		for (int idx = 0; idx < attributeNodes.getLength(); idx++) {
+			Attr attribute = (Attr) attributeNodes.item(idx);
+			if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute
+					.getNamespaceURI())) {
+				String prefix = XMLConstants.XMLNS_ATTRIBUTE.equals(attribute
+						.getName()) ? "" : attribute.getLocalName();
+				this.serializer.startPrefixMapping(prefix,
+						attribute.getValue());
+				prefixes.add(prefix);
+				continue;
+			}
+			String namespace = attribute.getNamespaceURI();
+			String localName = attribute.getLocalName();
+			attributes.addAttribute(null == namespace ? "" : namespace,
+					null == localName ? attribute.getName() : localName,
+					attribute.getName(), "CDATA", attribute.getValue());
+		}
+		String namespace = element.getNamespaceURI();
+		if (null == namespace) {
+			namespace = "";
+		}
+		this.serializer.startElement(namespace, element.getLocalName(),
+				element.getNodeName(), attributes);
+		Node childNode = element.getFirstChild();
+		while (null != childNode) {
+			switch (childNode.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				serialize((Element) childNode);
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				char[] text = childNode.getNodeValue().toCharArray();
+				this.serializer.characters(text, 0, text.length);
+				break;
+			default:
+				break;
+			}
+			childNode = childNode.getNextSibling();
+		}
+		this.serializer.endElement(namespace, element.getLocalName(),
+				element.getNodeName());
+		for (String prefix : prefixes) {
+			this.serializer.endPrefixMapping(prefix);
+		}
+	}
+
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		this.canonicalizer.characters(ch, start, length);
+		this.serializer.characters(ch, start, length);
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length)
+			throws SAXException {
+		this.canonicalizer.ignorableWhitespace(ch, start, length);
+		this.serializer.ignorableWhitespace(ch, start, length);
+	}
+
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+		if (0 != this.depth) {
+			this.canonicalizer.processingInstruction(target, data);
+		}
+		this.serializer.processingInstruction(target, data);
+	}
+
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+		this.serializer.startPrefixMapping(prefix, uri);
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+		this.serializer.endPrefixMapping(prefix);
+	}
+
+	public void setDocumentLocator(Locator locator) {
+		this.serializer.setDocumentLocator(locator);
+	}
+
+	public void startDocument() throws SAXException {
+		this.serializer.startDocument();
+	}
+
+	public void endDocument() throws SAXException {
+		this.serializer.endDocument();
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+		this.serializer.skippedEntity(name);
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * SAX content handler that writes the Exclusive XML Canonicalization (without
+ * comments) of the received element subtree to an output stream.
+ *
+ * Only the events of a single element subtree should be fed, as is the case
+ * for an enveloped signature reference to the document element.
+ */
+class ExclusiveCanonicalizer implements ContentHandler {
+
+	private final Writer writer;
+
+	private final LinkedList<Map<String, String>> renderedNamespaces;
+
+	public ExclusiveCanonicalizer(OutputStream outputStream) {
+		try {
+			this.writer = new BufferedWriter(new OutputStreamWriter(
+					outputStream, "UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException("UTF-8 error: " + e.getMessage(), e);
+		}
+		this.renderedNamespaces = new LinkedList<Map<String, String>>();
+		this.renderedNamespaces.add(new HashMap<String, String>());
+	}
+
+	/**
+	 * Flushes the canonical form written so far to the underlying output
+	 * stream.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		this.writer.flush();
+	}
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes atts) throws SAXException {
+		Map<String, String> rendered = new HashMap<String, String>(
+				this.renderedNamespaces.getLast());
+		SortedMap<String, String> namespacesToRender = new TreeMap<String, String>();
+
+		/*
+		 * Only visibly utilized namespaces not yet rendered by an output
+		 * ancestor are rendered.
+		 */
+		String elementPrefix = getPrefix(qName);
+		String elementNamespace = null == uri ? "" : uri;
+		if (0 == elementPrefix.length()) {
+			String renderedDefault = rendered.get("");
+			if (null == renderedDefault) {
+				renderedDefault = "";
+			}
+			if (false == elementNamespace.equals(renderedDefault)) {
+				namespacesToRender.put("", elementNamespace);
+			}
+		} else {
+			visiblyUtilize(elementPrefix, elementNamespace, rendered,
+					namespacesToRender);
+		}
+
+		SortedMap<String, Integer> attributes = new TreeMap<String, Integer>();
+		for (int idx = 0; idx < atts.getLength(); idx++) {
+			String attributeQName = atts.getQName(idx);
+			if (attributeQName.equals(XMLConstants.XMLNS_ATTRIBUTE)
+					|| attributeQName.startsWith(XMLConstants.XMLNS_ATTRIBUTE
+							+ ":")) {
+				continue;
+			}
+			String attributePrefix = getPrefix(attributeQName);
+			String attributeNamespace = atts.getURI(idx);
+			if (null == attributeNamespace) {
+				attributeNamespace = "";
+			}
+			if (0 != attributePrefix.length()) {
+				visiblyUtilize(attributePrefix, attributeNamespace, rendered,
+						namespacesToRender);
+			}
+			String attributeLocalName = atts.getLocalName(idx);
+			if (null == attributeLocalName
+					|| 0 == attributeLocalName.length()) {
+				attributeLocalName = attributeQName;
+			}
+			/*
+			 * Attributes are ordered on namespace URI first, local name
+			 * second.
+			 */
+			attributes.put(attributeNamespace + " " + attributeLocalName, idx);
+		}
+
+		try {
+			this.writer.write('<');
+			this.writer.write(qName);
+			for (Map.Entry<String, String> namespace : namespacesToRender
+					.entrySet()) {
+				String prefix = namespace.getKey();
+				this.writer.write(" xmlns");
+				if (0 != prefix.length()) {
+					this.writer.write(':');
+					this.writer.write(prefix);
+				}
+				this.writer.write("=\"");
+				writeAttributeValue(namespace.getValue());
+				this.writer.write('"');
+				rendered.put(prefix, namespace.getValue());
+			}
+			for (Integer idx : attributes.values()) {
+				this.writer.write(' ');
+				this.writer.write(atts.getQName(idx));
+				this.writer.write("=\"");
+				writeAttributeValue(atts.getValue(idx));
+				this.writer.write('"');
+			}
+			this.writer.write('>');
+		} catch (IOException e) {
+			throw new SAXException("C14N error: " + e.getMessage(), e);
+		}
+		this.renderedNamespaces.add(rendered);
+	}
+
+	private void visiblyUtilize(String prefix, String namespace,
+			Map<String, String> rendered,
+			SortedMap<String, String> namespacesToRender) {
+		if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+			// the xml namespace is never rendered
+			return;
+		}
+		if (false == namespace.equals(rendered.get(prefix))) {
+			namespacesToRender.put(prefix, namespace);
+		}
+	}
+
+	public void endElement(String uri, String localName, String qName)
+			throws SAXException {
+		try {
+			this.writer.write("</");
+			this.writer.write(qName);
+			this.writer.write('>');
+		} catch (IOException e) {
+			throw new SAXException("C14N error: " + e.getMessage(), e);
+		}
+		this.renderedNamespaces.removeLast();
+	}
+
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		try {
+			for (int idx = start; idx < start + length; idx++) {
+				char c = ch[idx];
+				switch (c) {
+				case '&':
+					this.writer.write("&amp;");
+					break;
+				case '<':
+					this.writer.write("&lt;");
+					break;
+				case '>':
+					this.writer.write("&gt;");
+					break;
+				case '\r':
+					this.writer.write("&#xD;");
+					break;
+				default:
+					this.writer.write(c);
+				}
+			}
+		} catch (IOException e) {
+			throw new SAXException("C14N error: " + e.getMessage(), e);
+		}
+	}
+
+	private void writeAttributeValue(String value) throws IOException {
+		for (int idx = 0; idx < value.length(); idx++) {
+			char c = value.charAt(idx);
+			switch (c) {
+			case '&':
+				this.writer.write("&amp;");
+				break;
+			case '<':
+				this.writer.write("&lt;");
+				break;
+			case '"':
+				this.writer.write("&quot;");
+				break;
+			case '\t':
+				this.writer.write("&#x9;");
+				break;
+			case '\n':
+				this.writer.write("&#xA;");
+				break;
+			case '\r':
+				this.writer.write("&#xD;");
+				break;
+			default:
+				this.writer.write(c);
+			}
+		}
+	}
+
+	public void ignorableWhitespace(char[] ch, int start, int length)
+			throws SAXException {
+		characters(ch, start, length);
+	}
+
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+		try {
+			this.writer.write("<?");
+			this.writer.write(target);
+			if (null != data && 0 != data.length()) {
+				this.writer.write(' ');
+				this.writer.write(data);
+			}
+			this.writer.write("?>");
+		} catch (IOException e) {
+			throw new SAXException("C14N error: " + e.getMessage(), e);
+		}
+	}
+
+	private static String getPrefix(String qName) {
+		int colonIdx = qName.indexOf(':');
+		if (-1 == colonIdx) {
+			return "";
+		}
+		return qName.substring(0, colonIdx);
+	}
+
+	public void setDocumentLocator(Locator locator) {
+	}
+
+	public void startDocument() throws SAXException {
+	}
+
+	public void endDocument() throws SAXException {
+	}
+
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+		// namespace declarations are rendered on visible utilization only
+	}
+
+	public void endPrefixMapping(String prefix) throws SAXException {
+	}
+
+	public void skippedEntity(String name) throws SAXException {
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of the trust services of many member state trust service lists.
+ * The registry publishes immutable snapshots, partitioned per territory.
+ * Updating a territory builds a new partition and swaps in a new snapshot
+ * atomically, so readers never block and never see a half-updated registry.
+ * Each snapshot merges the indexes of its partitions, so that a lookup is a
+ * single index search whatever the number of territories.
+ * 
+ * The registry keeps a frozen snapshot of every registered trust service
+ * list, so later changes of the registered list don't affect it.
+ */
+public class FederatedTrustRegistry {
+
+	private static final Log LOG = LogFactory
+			.getLog(FederatedTrustRegistry.class);
+
+	private final AtomicReference<Snapshot> snapshot;
+
+	public FederatedTrustRegistry() {
+		this.snapshot = new AtomicReference<Snapshot>(new Snapshot(0,
+				new EnumMap<EUCountry, Partition>(EUCountry.class)));
+	}
+
+	/**
+	 * Immutable version of the registry.
+	 */
+	public static class Snapshot {
+
+		private final long version;
+
+		private final Map<EUCountry, Partition> partitions;
+
+		private final TrustServiceIndex trustServiceIndex;
+
+		private Snapshot(long version, Map<EUCountry, Partition> partitions) {
+			this.version = version;
+			this.partitions = partitions;
+			List<TrustServiceIndex> trustServiceIndexes = new LinkedList<TrustServiceIndex>();
+			for (Partition partition : partitions.values()) {
+				trustServiceIndexes.add(partition.trustServiceIndex);
+			}
+			this.trustServiceIndex = TrustServiceIndex
+					.merge(trustServiceIndexes);
+		}
+
+		/**
+		 * Gives back the version of this snapshot. Every update increments the
+		 * version.
+		 * 
+		 * @return
+		 */
+		public long getVersion() {
+			return this.version;
+		}
+
+		public Set<EUCountry> getTerritories() {
+			return Collections.unmodifiableSet(this.partitions.keySet());
+		}
+
+		/**
+		 * Gives back the frozen trust service list of the given territory, or
+		 * <code>null</code> if not registered.
+		 * 
+		 * @param territory
+		 * @return
+		 */
+		public TrustServiceList getTrustServiceList(EUCountry territory) {
+			Partition partition = this.partitions.get(territory);
+			if (null == partition) {
+				return null;
+			}
+			return partition.trustServiceList;
+		}
+
+		public TrustServiceIndex getTrustServiceIndex(EUCountry territory) {
+			Partition partition = this.partitions.get(territory);
+			if (null == partition) {
+				return null;
+			}
+			return partition.trustServiceIndex;
+		}
+
+		/**
+		 * Gives back the merged index of the trust services of all
+		 * territories.
+		 * 
+		 * @return
+		 */
+		public TrustServiceIndex getTrustServiceIndex() {
+			return this.trustServiceIndex;
+		}
+
+		/**
+		 * Gives back the trust services of all territories having the given
+		 * certificate as service digital identity.
+		 * 
+		 * @param certificate
+		 * @return
+		 */
+		public List<TrustService> findByCertificate(X509Certificate certificate) {
+			return this.trustServiceIndex.findByCertificate(certificate);
+		}
+
+		/**
+		 * Gives back the trust services of all territories that (might have)
+		 * issued the given certificate.
+		 * 
+		 * @param certificate
+		 * @return
+		 * @see TrustServiceIndex#findIssuingServices(X509Certificate)
+		 */
+		public List<TrustService> findIssuingServices(
+				X509Certificate certificate) {
+			return this.trustServiceIndex.findIssuingServices(certificate);
+		}
+	}
+
+	private static class Partition {
+
+		private final TrustServiceList trustServiceList;
+
+		private final TrustServiceIndex trustServiceIndex;
+
+		public Partition(TrustServiceList trustServiceList) {
+			this.trustServiceList = trustServiceList.snapshot();
+			this.trustServiceIndex = this.trustServiceList
+					.getTrustServiceIndex();
+		}
+	}
+
+	/**
+	 * Gives back the current snapshot. Run related queries against the same
+	 * snapshot to get consistent answers.
+	 * 
+	 * @return
+	 */
+	public Snapshot getSnapshot() {
+		return this.snapshot.get();
+	}
+
+	/**
+	 * Registers or replaces the trust service list of its scheme territory.
+	 * 
+	 * @param trustServiceList
+	 * @return the territory of the trust service list.
+	 * @throws IllegalArgumentException
+	 *             if the scheme territory is not an EU member state.
+	 */
+	public EUCountry update(TrustServiceList trustServiceList) {
+		EUCountry territory = getTerritory(trustServiceList
+				.getSchemeTerritory());
+		if (null == territory) {
+			throw new IllegalArgumentException("unknown scheme territory: "
+					+ trustServiceList.getSchemeTerritory());
+		}
+		update(territory, trustServiceList);
+		return territory;
+	}
+
+	/**
+	 * Registers or replaces the trust service list of the given territory.
+	 * The registry keeps a frozen snapshot of the given list.
+	 * 
+	 * @param territory
+	 * @param trustServiceList
+	 */
+	public void update(EUCountry territory, TrustServiceList trustServiceList) {
+		// snapshot and index the list before entering the swap loop
+		Partition partition = new Partition(trustServiceList);
+		Snapshot currentSnapshot;
+		Snapshot newSnapshot;
+		do {
+			currentSnapshot = this.snapshot.get();
+			Map<EUCountry, Partition> partitions = new EnumMap<EUCountry, Partition>(
+					currentSnapshot.partitions);
+			partitions.put(territory, partition);
+			newSnapshot = new Snapshot(currentSnapshot.version + 1, partitions);
+		} while (false == this.snapshot.compareAndSet(currentSnapshot,
+				newSnapshot));
+		LOG.debug("territory " + territory + " updated, version: "
+				+ newSnapshot.version);
+	}
+
+	/**
+	 * Removes the trust service list of the given territory.
+	 * 
+	 * @param territory
+	 */
+	public void remove(EUCountry territory) {
+		Snapshot currentSnapshot;
+		Snapshot newSnapshot;
+		do {
+			currentSnapshot = this.snapshot.get();
+			if (false == currentSnapshot.partitions.containsKey(territory)) {
+				return;
+			}
+			Map<EUCountry, Partition> partitions = new EnumMap<EUCountry, Partition>(
+					currentSnapshot.partitions);
+			partitions.remove(territory);
+			newSnapshot = new Snapshot(currentSnapshot.version + 1, partitions);
+		} while (false == this.snapshot.compareAndSet(currentSnapshot,
+				newSnapshot));
+	}
+
+	public List<TrustService> findByCertificate(X509Certificate certificate) {
+		return getSnapshot().findByCertificate(certificate);
+	}
+
+	public List<TrustService> findIssuingServices(X509Certificate certificate) {
+		return getSnapshot().findIssuingServices(certificate);
+	}
+
+	/**
+	 * Gives back the member state for the given scheme territory code. Both
+	 * the ISO 3166 codes (GB, GR) and the EU codes (UK, EL) are accepted.
+	 * 
+	 * @param schemeTerritory
+	 * @return the member state, or <code>null</code> if unknown.
+	 */
+	public static EUCountry getTerritory(String schemeTerritory) {
+		if (null == schemeTerritory) {
+			return null;
+		}
+		String code = schemeTerritory.trim().toUpperCase(Locale.ENGLISH);
+		for (EUCountry country : EUCountry.values()) {
+			if (country.name().equals(code)
+					|| country.getIsoCode().equals(code)) {
+				return country;
+			}
+		}
+		return null;
+	}
+}
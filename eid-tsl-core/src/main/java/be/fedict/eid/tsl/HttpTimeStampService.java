@@ -0,0 +1,137 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+
+/**
+ * RFC 3161 time-stamp client over HTTP.
+ *
+ * RFC 3161 carries a single message imprint per request, so a batch is sent
+ * as consecutive requests to the same TSA location. These reuse the
+ * persistent (keep-alive) HTTP connection, so only the first request of a
+ * batch pays for the connection setup.
+ */
+public class HttpTimeStampService implements TimeStampService {
+
+	private static final Log LOG = LogFactory
+			.getLog(HttpTimeStampService.class);
+
+	private final String tsaLocation;
+
+	private final SecureRandom secureRandom;
+
+	private int timeout;
+
+	public HttpTimeStampService(String tsaLocation) {
+		if (null == tsaLocation) {
+			throw new IllegalArgumentException();
+		}
+		this.tsaLocation = tsaLocation;
+		this.secureRandom = new SecureRandom();
+		this.timeout = 30 * 1000;
+	}
+
+	/**
+	 * Sets the connect and read timeout per request, in milliseconds.
+	 *
+	 * @param timeout
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public List<byte[]> timeStamp(List<byte[]> digests) throws IOException {
+		LOG.debug("time-stamping " + digests.size() + " digest(s) at "
+				+ this.tsaLocation);
+		List<byte[]> timeStampTokens = new LinkedList<byte[]>();
+		URL url = new URL(this.tsaLocation);
+		for (byte[] digest : digests) {
+			TimeStampRequestGenerator requestGenerator = new TimeStampRequestGenerator();
+			requestGenerator.setCertReq(true);
+			BigInteger nonce = new BigInteger(128, this.secureRandom);
+			TimeStampRequest request = requestGenerator.generate(
+					TSPAlgorithms.SHA256, digest, nonce);
+			byte[] responseData = post(url, request.getEncoded());
+			try {
+				TimeStampResponse response = new TimeStampResponse(
+						responseData);
+				response.validate(request);
+				TimeStampToken timeStampToken = response.getTimeStampToken();
+				if (null == timeStampToken) {
+					throw new IOException("TSA error: "
+							+ response.getStatusString());
+				}
+				timeStampTokens.add(timeStampToken.getEncoded());
+			} catch (TSPException e) {
+				throw new IOException("TSP error: " + e.getMessage(), e);
+			}
+		}
+		return timeStampTokens;
+	}
+
+	private byte[] post(URL url, byte[] requestData) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url
+				.openConnection();
+		connection.setConnectTimeout(this.timeout);
+		connection.setReadTimeout(this.timeout);
+		connection.setDoOutput(true);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type",
+				"application/timestamp-query");
+		OutputStream outputStream = connection.getOutputStream();
+		try {
+			outputStream.write(requestData);
+		} finally {
+			outputStream.close();
+		}
+		int responseCode = connection.getResponseCode();
+		if (HttpURLConnection.HTTP_OK != responseCode) {
+			throw new IOException("TSA HTTP response code: " + responseCode);
+		}
+		/*
+		 * Fully consuming and closing the input stream returns the connection
+		 * to the keep-alive cache for the next request of the batch.
+		 */
+		InputStream inputStream = connection.getInputStream();
+		try {
+			return IOUtils.toByteArray(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.util.JAXBSource;
+import javax.xml.namespace.QName;
+
+/**
+ * Deep copies of JAXB objects, so that the getters of a frozen trust service
+ * list don't hand out the live JAXB objects of the shared list.
+ */
+final class JaxbCopies {
+
+	private static final QName COPY_NAME = new QName(
+			DomNavigator.TSL_NAMESPACE, "Copy");
+
+	private static JAXBContext jaxbContext;
+
+	private JaxbCopies() {
+		super();
+	}
+
+	private static synchronized JAXBContext getJAXBContext()
+			throws JAXBException {
+		if (null == jaxbContext) {
+			jaxbContext = JAXBContext.newInstance(
+					be.fedict.eid.tsl.jaxb.tsl.ObjectFactory.class,
+					be.fedict.eid.tsl.jaxb.ecc.ObjectFactory.class,
+					be.fedict.eid.tsl.jaxb.tslx.ObjectFactory.class);
+		}
+		return jaxbContext;
+	}
+
+	/**
+	 * Gives back a deep copy of the given JAXB object.
+	 * 
+	 * @param object
+	 *            the JAXB object, can be <code>null</code>.
+	 * @return
+	 */
+	static <T> T copy(T object) {
+		if (null == object) {
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		Class<T> type = (Class<T>) object.getClass();
+		try {
+			JAXBContext context = getJAXBContext();
+			JAXBSource source = new JAXBSource(context, new JAXBElement<T>(
+					COPY_NAME, type, object));
+			Unmarshaller unmarshaller = context.createUnmarshaller();
+			return unmarshaller.unmarshal(source, type).getValue();
+		} catch (JAXBException e) {
+			throw new RuntimeException("JAXB error: " + e.getMessage(), e);
+		}
+	}
+}
@@ -28,6 +28,7 @@ import javax.xml.crypto.KeySelectorException;
 import javax.xml.crypto.KeySelectorResult;
 import javax.xml.crypto.XMLCryptoContext;
 import javax.xml.crypto.XMLStructure;
+import javax.xml.crypto.dsig.SignatureMethod;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
 
@@ -39,13 +40,34 @@ public class KeyInfoKeySelector extends KeySelector implements
 
 	private static final Log LOG = LogFactory.getLog(KeyInfoKeySelector.class);
 
+	private final X509Certificate pinnedCertificate;
+
 	private X509Certificate certificate;
 
+	public KeyInfoKeySelector() {
+		this.pinnedCertificate = null;
+	}
+
+	/**
+	 * Creates a key selector that always selects the key of the given
+	 * certificate, whatever the ds:KeyInfo contains.
+	 * 
+	 * @param pinnedCertificate
+	 */
+	public KeyInfoKeySelector(X509Certificate pinnedCertificate) {
+		this.pinnedCertificate = pinnedCertificate;
+	}
+
 	@Override
 	public KeySelectorResult select(KeyInfo keyInfo, Purpose purpose,
 			AlgorithmMethod method, XMLCryptoContext context)
 			throws KeySelectorException {
 		LOG.debug("select key");
+		if (null != this.pinnedCertificate) {
+			checkCompatible(method, this.pinnedCertificate);
+			this.certificate = this.pinnedCertificate;
+			return this;
+		}
 		List<XMLStructure> keyInfoContent = keyInfo.getContent();
 		for (XMLStructure keyInfoStructure : keyInfoContent) {
 			if (false == (keyInfoStructure instanceof X509Data)) {
@@ -57,7 +79,9 @@ public class KeyInfoKeySelector extends KeySelector implements
 				if (false == (x509DataObject instanceof X509Certificate)) {
 					continue;
 				}
-				this.certificate = (X509Certificate) x509DataObject;
+				X509Certificate certificate = (X509Certificate) x509DataObject;
+				checkCompatible(method, certificate);
+				this.certificate = certificate;
 				// stop after first match
 				return this;
 			}
@@ -65,6 +89,18 @@ public class KeyInfoKeySelector extends KeySelector implements
 		throw new KeySelectorException("No key found!");
 	}
 
+	private void checkCompatible(AlgorithmMethod method,
+			X509Certificate certificate) throws KeySelectorException {
+		if (method instanceof SignatureMethod
+				&& false == SignatureMethodSelector.isCompatible(
+						method.getAlgorithm(), certificate.getPublicKey())) {
+			throw new KeySelectorException("key algorithm "
+					+ certificate.getPublicKey().getAlgorithm()
+					+ " not compatible with signature method "
+					+ method.getAlgorithm());
+		}
+	}
+
 	@Override
 	public Key getKey() {
 		return this.certificate.getPublicKey();
@@ -0,0 +1,174 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import be.fedict.eid.tsl.jaxb.tsl.InternationalNamesType;
+import be.fedict.eid.tsl.jaxb.tsl.MultiLangNormStringType;
+import be.fedict.eid.tsl.jaxb.tsl.PostalAddressListType;
+import be.fedict.eid.tsl.jaxb.tsl.PostalAddressType;
+
+/**
+ * Per multilingual JAXB list a map from normalised language code to entry, so
+ * that localised lookups don't have to scan and lowercase every entry. The
+ * maps are built on first lookup and go away together with the JAXB objects.
+ * 
+ * Each lookup checks, by reference only, that the list still holds the same
+ * entries with the same language as when the map was built. Entries that were
+ * added, removed, replaced or got another language trigger a rebuild.
+ */
+final class LanguageIndex {
+
+	private static final String ENGLISH = Locale.ENGLISH.getLanguage();
+
+	private interface Language<T> {
+
+		String getLang(T entry);
+	}
+
+	private static final Language<MultiLangNormStringType> NAME_LANGUAGE = new Language<MultiLangNormStringType>() {
+
+		public String getLang(MultiLangNormStringType entry) {
+			return entry.getLang();
+		}
+	};
+
+	private static final Language<PostalAddressType> POSTAL_ADDRESS_LANGUAGE = new Language<PostalAddressType>() {
+
+		public String getLang(PostalAddressType entry) {
+			return entry.getLang();
+		}
+	};
+
+	private static class Index<T> {
+
+		private final Object[] indexedEntries;
+
+		private final String[] indexedLanguages;
+
+		private final Map<String, T> entries;
+
+		private final T fallback;
+
+		public Index(List<T> list, Language<T> language, boolean fallback) {
+			int size = list.size();
+			this.indexedEntries = new Object[size];
+			this.indexedLanguages = new String[size];
+			this.entries = new HashMap<String, T>();
+			for (int idx = 0; idx < size; idx++) {
+				T entry = list.get(idx);
+				String lang = language.getLang(entry);
+				this.indexedEntries[idx] = entry;
+				this.indexedLanguages[idx] = lang;
+				put(this.entries, lang, entry);
+			}
+			T fallbackEntry = null;
+			if (fallback) {
+				fallbackEntry = this.entries.get(ENGLISH);
+				if (null == fallbackEntry && 0 != size) {
+					fallbackEntry = list.get(0);
+				}
+			}
+			this.fallback = fallbackEntry;
+		}
+
+		public boolean isCurrent(List<T> list, Language<T> language) {
+			int size = list.size();
+			if (size != this.indexedEntries.length) {
+				return false;
+			}
+			for (int idx = 0; idx < size; idx++) {
+				T entry = list.get(idx);
+				if (entry != this.indexedEntries[idx]) {
+					return false;
+				}
+				if (language.getLang(entry) != this.indexedLanguages[idx]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final WeakIdentityCache<Object, Index<?>> INDEXES = new WeakIdentityCache<Object, Index<?>>();
+
+	private LanguageIndex() {
+		super();
+	}
+
+	/**
+	 * Gives back the name for the given locale, falling back to English and
+	 * next to the first name.
+	 * 
+	 * @param i18nName
+	 * @param locale
+	 * @return the name, or <code>null</code> if there are no names.
+	 */
+	static MultiLangNormStringType getName(InternationalNamesType i18nName,
+			Locale locale) {
+		Index<MultiLangNormStringType> index = getIndex(i18nName,
+				i18nName.getName(), NAME_LANGUAGE, true);
+		MultiLangNormStringType name = index.entries.get(locale.getLanguage());
+		if (null != name) {
+			return name;
+		}
+		return index.fallback;
+	}
+
+	/**
+	 * Gives back the postal address for the given locale, without fallback.
+	 * 
+	 * @param postalAddresses
+	 * @param locale
+	 * @return the postal address, or <code>null</code> if not present.
+	 */
+	static PostalAddressType getPostalAddress(
+			PostalAddressListType postalAddresses, Locale locale) {
+		Index<PostalAddressType> index = getIndex(postalAddresses,
+				postalAddresses.getPostalAddress(), POSTAL_ADDRESS_LANGUAGE,
+				false);
+		return index.entries.get(locale.getLanguage());
+	}
+
+	private static <T> void put(Map<String, T> entries, String lang, T entry) {
+		if (null == lang) {
+			return;
+		}
+		String key = lang.toLowerCase(Locale.ENGLISH);
+		// first entry wins, as with the former linear scan
+		if (false == entries.containsKey(key)) {
+			entries.put(key, entry);
+		}
+	}
+
+	private static <T> Index<T> getIndex(Object owner, List<T> list,
+			Language<T> language, boolean fallback) {
+		@SuppressWarnings("unchecked")
+		Index<T> index = (Index<T>) INDEXES.get(owner);
+		if (null == index || false == index.isCurrent(list, language)) {
+			index = new Index<T>(list, language, fallback);
+			INDEXES.put(owner, index);
+		}
+		return index;
+	}
+}
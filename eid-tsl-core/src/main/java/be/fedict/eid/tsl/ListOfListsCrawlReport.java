@@ -0,0 +1,141 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Outcome of fetching the member state trust service lists a list of lists
+ * points to.
+ */
+public class ListOfListsCrawlReport {
+
+	/**
+	 * Fetch outcome of a single list of lists pointer.
+	 */
+	public static class Entry {
+
+		private final String territory;
+
+		private final String location;
+
+		private final TrustServiceList trustServiceList;
+
+		private final long duration;
+
+		private final String errorMessage;
+
+		Entry(String territory, String location,
+				TrustServiceList trustServiceList, long duration,
+				String errorMessage) {
+			this.territory = territory;
+			this.location = location;
+			this.trustServiceList = trustServiceList;
+			this.duration = duration;
+			this.errorMessage = errorMessage;
+		}
+
+		public String getTerritory() {
+			return this.territory;
+		}
+
+		public String getLocation() {
+			return this.location;
+		}
+
+		/**
+		 * @return the parsed trust service list, or <code>null</code> if the
+		 *         fetch failed.
+		 */
+		public TrustServiceList getTrustServiceList() {
+			return this.trustServiceList;
+		}
+
+		/**
+		 * @return the fetch and parse time in nanoseconds.
+		 */
+		public long getDuration() {
+			return this.duration;
+		}
+
+		public String getErrorMessage() {
+			return this.errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return this.territory + ": " + this.location + " ("
+					+ (null == this.errorMessage ? "OK" : this.errorMessage)
+					+ ", " + this.duration / 1000000 + " ms)";
+		}
+	}
+
+	private final List<Entry> entries;
+
+	private final long duration;
+
+	ListOfListsCrawlReport(List<Entry> entries, long duration) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.duration = duration;
+	}
+
+	/**
+	 * @return the entries, in list of lists pointer order.
+	 */
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	/**
+	 * Gives back the successfully fetched trust service lists, e.g. to verify
+	 * them via {@link ListOfListsVerifier#verify(java.util.Collection)}.
+	 * 
+	 * @return
+	 */
+	public List<TrustServiceList> getTrustServiceLists() {
+		List<TrustServiceList> trustServiceLists = new LinkedList<TrustServiceList>();
+		for (Entry entry : this.entries) {
+			if (null != entry.getTrustServiceList()) {
+				trustServiceLists.add(entry.getTrustServiceList());
+			}
+		}
+		return trustServiceLists;
+	}
+
+	/**
+	 * @return <code>true</code> if every list was fetched.
+	 */
+	public boolean isComplete() {
+		for (Entry entry : this.entries) {
+			if (null == entry.getTrustServiceList()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the wall clock time of the whole crawl in nanoseconds.
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+}
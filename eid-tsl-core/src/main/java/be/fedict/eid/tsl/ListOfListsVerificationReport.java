@@ -0,0 +1,166 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of verifying the member state trust service lists against the
+ * signer certificates announced by the list of lists.
+ */
+public class ListOfListsVerificationReport {
+
+	public enum Status {
+		/**
+		 * Signed by one of the certificates of the list of lists pointer.
+		 */
+		VALID,
+		/**
+		 * Not signed, or not signed by one of the pointer certificates.
+		 */
+		UNTRUSTED,
+		/**
+		 * The list of lists has no pointer for this territory.
+		 */
+		NO_POINTER,
+		/**
+		 * The list of lists points to this territory, but no list was given.
+		 */
+		MISSING,
+		/**
+		 * More than one list was given for this territory, none of them got
+		 * verified.
+		 */
+		DUPLICATE,
+		/**
+		 * Verification failed unexpectedly.
+		 */
+		ERROR
+	}
+
+	/**
+	 * Verification outcome of a single member state trust service list.
+	 */
+	public static class Entry {
+
+		private final String territory;
+
+		private final Status status;
+
+		private final X509Certificate signer;
+
+		private final long duration;
+
+		private final String errorMessage;
+
+		Entry(String territory, Status status, X509Certificate signer,
+				long duration, String errorMessage) {
+			this.territory = territory;
+			this.status = status;
+			this.signer = signer;
+			this.duration = duration;
+			this.errorMessage = errorMessage;
+		}
+
+		public String getTerritory() {
+			return this.territory;
+		}
+
+		public Status getStatus() {
+			return this.status;
+		}
+
+		/**
+		 * @return the signer certificate, or <code>null</code> if not valid.
+		 */
+		public X509Certificate getSigner() {
+			return this.signer;
+		}
+
+		/**
+		 * @return the verification time in nanoseconds.
+		 */
+		public long getDuration() {
+			return this.duration;
+		}
+
+		public String getErrorMessage() {
+			return this.errorMessage;
+		}
+
+		@Override
+		public String toString() {
+			return this.territory + ": " + this.status + " ("
+					+ this.duration / 1000000 + " ms)";
+		}
+	}
+
+	private final List<Entry> entries;
+
+	private final long duration;
+
+	ListOfListsVerificationReport(List<Entry> entries, long duration) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.duration = duration;
+	}
+
+	/**
+	 * @return the entries, ordered by territory.
+	 */
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	/**
+	 * Gives back the entry for the given territory, or <code>null</code> if
+	 * not present.
+	 * 
+	 * @param territory
+	 * @return
+	 */
+	public Entry getEntry(String territory) {
+		for (Entry entry : this.entries) {
+			if (entry.getTerritory().equalsIgnoreCase(territory)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return <code>true</code> if every entry is valid.
+	 */
+	public boolean isValid() {
+		for (Entry entry : this.entries) {
+			if (Status.VALID != entry.getStatus()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the wall clock time of the whole verification in nanoseconds.
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+}
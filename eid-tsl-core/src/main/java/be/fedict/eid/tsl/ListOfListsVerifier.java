@@ -0,0 +1,237 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.tsl.ListOfListsVerificationReport.Entry;
+import be.fedict.eid.tsl.ListOfListsVerificationReport.Status;
+import be.fedict.eid.tsl.jaxb.tsl.OtherTSLPointerType;
+
+/**
+ * Verifies member state trust service lists against the list of lists. Each
+ * member state list is paired with the list of lists pointers of the same
+ * scheme territory, whose service digital identities are the only accepted
+ * signers. The member state lists are verified concurrently on a bounded
+ * thread pool.
+ * 
+ * The list of lists itself should be verified by the caller, e.g. via
+ * {@link TrustServiceList#verifySignature(java.util.Collection)} with the
+ * pinned European Commission certificates.
+ */
+public class ListOfListsVerifier {
+
+	private static final Log LOG = LogFactory.getLog(ListOfListsVerifier.class);
+
+	private static final String PDF_MIME_TYPE = "application/pdf";
+
+	private final Map<String, TrustedSignerIndex> trustedSigners;
+
+	private final int threads;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param listOfLists
+	 *            the (verified) list of lists.
+	 * @param threads
+	 *            the maximum number of concurrent verifications.
+	 */
+	public ListOfListsVerifier(TrustServiceList listOfLists, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads should be positive");
+		}
+		this.threads = threads;
+		Map<String, List<X509Certificate>> certificates = new HashMap<String, List<X509Certificate>>();
+		List<OtherTSLPointerType> otherTSLPointers = listOfLists
+				.getOtherTSLPointers();
+		if (null != otherTSLPointers) {
+			for (OtherTSLPointerType otherTSLPointer : otherTSLPointers) {
+				String territory = TrustServiceListUtils
+						.getSchemeTerritory(otherTSLPointer);
+				if (null == territory) {
+					continue;
+				}
+				if (PDF_MIME_TYPE.equals(TrustServiceListUtils
+						.getMimeType(otherTSLPointer))) {
+					/*
+					 * The human readable PDF version is signed by other
+					 * means, but usually by the same certificates. Only the
+					 * XML pointers are taken into account.
+					 */
+					continue;
+				}
+				territory = territory.toUpperCase(Locale.ENGLISH);
+				List<X509Certificate> territoryCertificates = certificates
+						.get(territory);
+				if (null == territoryCertificates) {
+					territoryCertificates = new LinkedList<X509Certificate>();
+					certificates.put(territory, territoryCertificates);
+				}
+				territoryCertificates.addAll(TrustServiceListUtils
+						.getCertificates(otherTSLPointer));
+			}
+		}
+		this.trustedSigners = new HashMap<String, TrustedSignerIndex>();
+		for (Map.Entry<String, List<X509Certificate>> entry : certificates
+				.entrySet()) {
+			this.trustedSigners.put(entry.getKey(), new TrustedSignerIndex(
+					entry.getValue()));
+		}
+	}
+
+	/**
+	 * Gives back the scheme territories announced by the list of lists.
+	 * 
+	 * @return
+	 */
+	public Collection<String> getTerritories() {
+		return new ArrayList<String>(this.trustedSigners.keySet());
+	}
+
+	/**
+	 * Verifies the given member state trust service lists.
+	 * 
+	 * @param memberLists
+	 * @return the verification report, with an entry per territory.
+	 */
+	public ListOfListsVerificationReport verify(
+			Collection<TrustServiceList> memberLists) {
+		long start = System.nanoTime();
+		Map<String, Entry> entries = new TreeMap<String, Entry>();
+		Map<String, Future<Entry>> futures = new HashMap<String, Future<Entry>>();
+		ExecutorService executorService = Executors.newFixedThreadPool(Math
+				.max(1, Math.min(this.threads, memberLists.size())));
+		try {
+			Map<String, TrustServiceList> territoryLists = new HashMap<String, TrustServiceList>();
+			Set<String> duplicateTerritories = new HashSet<String>();
+			for (TrustServiceList memberList : memberLists) {
+				String territory = memberList.getSchemeTerritory();
+				if (null == territory) {
+					LOG.warn("member list without scheme territory");
+					continue;
+				}
+				territory = territory.toUpperCase(Locale.ENGLISH);
+				if (null != territoryLists.put(territory, memberList)) {
+					LOG.warn("multiple member lists for territory: "
+							+ territory);
+					duplicateTerritories.add(territory);
+				}
+			}
+			for (Map.Entry<String, TrustServiceList> territoryList : territoryLists
+					.entrySet()) {
+				String territory = territoryList.getKey();
+				if (duplicateTerritories.contains(territory)) {
+					/*
+					 * We cannot tell which of the lists is the authoritative
+					 * one, so none of them gets verified.
+					 */
+					entries.put(territory, new Entry(territory,
+							Status.DUPLICATE, null, 0, null));
+					continue;
+				}
+				TrustedSignerIndex trustedSignerIndex = this.trustedSigners
+						.get(territory);
+				if (null == trustedSignerIndex) {
+					entries.put(territory, new Entry(territory,
+							Status.NO_POINTER, null, 0, null));
+					continue;
+				}
+				futures.put(territory, executorService
+						.submit(new VerificationTask(territory, territoryList
+								.getValue(), trustedSignerIndex)));
+			}
+			for (Map.Entry<String, Future<Entry>> future : futures.entrySet()) {
+				String territory = future.getKey();
+				try {
+					entries.put(territory, future.getValue().get());
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					LOG.error("verification error for " + territory + ": "
+							+ cause.getMessage(), cause);
+					entries.put(territory, new Entry(territory, Status.ERROR,
+							null, 0, cause.getMessage()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("verification interrupted", e);
+				}
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		for (String territory : this.trustedSigners.keySet()) {
+			if (false == entries.containsKey(territory)) {
+				entries.put(territory, new Entry(territory, Status.MISSING,
+						null, 0, null));
+			}
+		}
+		long duration = System.nanoTime() - start;
+		LOG.debug("verified " + futures.size() + " member lists in "
+				+ duration / 1000000 + " ms");
+		return new ListOfListsVerificationReport(new ArrayList<Entry>(
+				entries.values()), duration);
+	}
+
+	private static class VerificationTask implements Callable<Entry> {
+
+		private final String territory;
+
+		private final TrustServiceList memberList;
+
+		private final TrustedSignerIndex trustedSignerIndex;
+
+		public VerificationTask(String territory, TrustServiceList memberList,
+				TrustedSignerIndex trustedSignerIndex) {
+			this.territory = territory;
+			this.memberList = memberList;
+			this.trustedSignerIndex = trustedSignerIndex;
+		}
+
+		public Entry call() throws Exception {
+			long start = System.nanoTime();
+			X509Certificate signer = this.memberList
+					.verifySignature(this.trustedSignerIndex);
+			long duration = System.nanoTime() - start;
+			if (null == signer) {
+				return new Entry(this.territory, Status.UNTRUSTED, null,
+						duration, null);
+			}
+			return new Entry(this.territory, Status.VALID, signer, duration,
+					null);
+		}
+	}
+}
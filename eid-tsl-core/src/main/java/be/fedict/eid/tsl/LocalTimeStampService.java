@@ -0,0 +1,180 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.CertStore;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+/**
+ * In-process time-stamp authority based on Bouncy Castle.
+ *
+ * Stand-in for a real TSA when time-stamping offline, e.g. during unit
+ * testing or when re-signing an archive on an air-gapped machine.
+ */
+public class LocalTimeStampService implements TimeStampService {
+
+	private static final Log LOG = LogFactory
+			.getLog(LocalTimeStampService.class);
+
+	public static final String DEFAULT_TSA_POLICY_OID = "1.3.6.1.4.1.0.1";
+
+	private final PrivateKey privateKey;
+
+	private final X509Certificate certificate;
+
+	private final String tsaPolicyOid;
+
+	private final SecureRandom secureRandom;
+
+	/**
+	 * Creates a local TSA with a freshly generated self-signed time-stamping
+	 * certificate.
+	 */
+	public LocalTimeStampService() {
+		registerBouncyCastle();
+		KeyPair keyPair;
+		try {
+			KeyPairGenerator keyPairGenerator = KeyPairGenerator
+					.getInstance("RSA");
+			keyPairGenerator.initialize(2048);
+			keyPair = keyPairGenerator.generateKeyPair();
+		} catch (Exception e) {
+			throw new RuntimeException("key generation error: "
+					+ e.getMessage(), e);
+		}
+		this.privateKey = keyPair.getPrivate();
+		this.certificate = generateTsaCertificate(keyPair);
+		this.tsaPolicyOid = DEFAULT_TSA_POLICY_OID;
+		this.secureRandom = new SecureRandom();
+	}
+
+	/**
+	 * Creates a local TSA using the given key and certificate. The
+	 * certificate should carry a critical time-stamping extended key usage.
+	 *
+	 * @param privateKey
+	 * @param certificate
+	 * @param tsaPolicyOid
+	 */
+	public LocalTimeStampService(PrivateKey privateKey,
+			X509Certificate certificate, String tsaPolicyOid) {
+		registerBouncyCastle();
+		this.privateKey = privateKey;
+		this.certificate = certificate;
+		this.tsaPolicyOid = tsaPolicyOid;
+		this.secureRandom = new SecureRandom();
+	}
+
+	public X509Certificate getCertificate() {
+		return this.certificate;
+	}
+
+	public List<byte[]> timeStamp(List<byte[]> digests) throws IOException {
+		LOG.debug("local time-stamping of " + digests.size() + " digest(s)");
+		List<byte[]> timeStampTokens = new LinkedList<byte[]>();
+		try {
+			/*
+			 * One token generator serves the entire batch.
+			 */
+			TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+					this.privateKey, this.certificate, TSPAlgorithms.SHA256,
+					this.tsaPolicyOid);
+			CertStore certStore = CertStore.getInstance("Collection",
+					new CollectionCertStoreParameters(Collections
+							.singletonList(this.certificate)),
+					BouncyCastleProvider.PROVIDER_NAME);
+			tokenGenerator.setCertificatesAndCRLs(certStore);
+			TimeStampRequestGenerator requestGenerator = new TimeStampRequestGenerator();
+			requestGenerator.setCertReq(true);
+			for (byte[] digest : digests) {
+				BigInteger nonce = new BigInteger(128, this.secureRandom);
+				TimeStampRequest request = requestGenerator.generate(
+						TSPAlgorithms.SHA256, digest, nonce);
+				BigInteger serialNumber = new BigInteger(128,
+						this.secureRandom);
+				TimeStampToken timeStampToken = tokenGenerator.generate(
+						request, serialNumber, new Date(),
+						BouncyCastleProvider.PROVIDER_NAME);
+				timeStampTokens.add(timeStampToken.getEncoded());
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("TSP error: " + e.getMessage(), e);
+		}
+		return timeStampTokens;
+	}
+
+	private static void registerBouncyCastle() {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+	}
+
+	private static X509Certificate generateTsaCertificate(KeyPair keyPair) {
+		X500Principal subject = new X500Principal("CN=Local TSA");
+		Date notBefore = new Date();
+		Date notAfter = new Date(notBefore.getTime() + 365L * 24 * 60 * 60
+				* 1000);
+		X509V3CertificateGenerator certificateGenerator = new X509V3CertificateGenerator();
+		certificateGenerator.setSerialNumber(BigInteger.valueOf(notBefore
+				.getTime()));
+		certificateGenerator.setIssuerDN(subject);
+		certificateGenerator.setSubjectDN(subject);
+		certificateGenerator.setNotBefore(notBefore);
+		certificateGenerator.setNotAfter(notAfter);
+		certificateGenerator.setPublicKey(keyPair.getPublic());
+		certificateGenerator.setSignatureAlgorithm("SHA256withRSA");
+		certificateGenerator.addExtension(X509Extensions.ExtendedKeyUsage,
+				true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+		try {
+			return certificateGenerator.generate(keyPair.getPrivate());
+		} catch (Exception e) {
+			throw new RuntimeException("certificate generation error: "
+					+ e.getMessage(), e);
+		}
+	}
+}
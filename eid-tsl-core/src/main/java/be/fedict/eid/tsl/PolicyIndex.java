@@ -0,0 +1,167 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.fedict.eid.tsl.jaxb.ecc.CriteriaListType;
+import be.fedict.eid.tsl.jaxb.ecc.PoliciesListType;
+import be.fedict.eid.tsl.jaxb.ecc.QualificationElementType;
+import be.fedict.eid.tsl.jaxb.ecc.QualificationsType;
+import be.fedict.eid.tsl.jaxb.ecc.QualifierType;
+import be.fedict.eid.tsl.jaxb.xades.ObjectIdentifierType;
+
+/**
+ * Reverse index from certificate policy OID to the trust services whose
+ * Qualifications extension references the policy, as written by e.g.
+ * {@link TrustService#addOIDForQCSSCDStatusAsInCert(String)}. Policy
+ * identifiers of nested criteria lists are indexed as well.
+ * 
+ * Both dotted OIDs and OID URNs can be used for lookups.
+ */
+public class PolicyIndex {
+
+	private final Map<String, Map<TrustService, Set<String>>> qualifiersByPolicy;
+
+	PolicyIndex(List<TrustServiceProvider> trustServiceProviders) {
+		this.qualifiersByPolicy = new HashMap<String, Map<TrustService, Set<String>>>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceProviders) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				for (QualificationsType qualifications : QualificationEvaluator
+						.getQualifications(trustService)) {
+					for (QualificationElementType qualificationElement : qualifications
+							.getQualificationElement()) {
+						index(trustService, qualificationElement);
+					}
+				}
+			}
+		}
+	}
+
+	private void index(TrustService trustService,
+			QualificationElementType qualificationElement) {
+		Set<String> oids = new LinkedHashSet<String>();
+		getOids(qualificationElement.getCriteriaList(), oids);
+		for (String oid : oids) {
+			Map<TrustService, Set<String>> services = this.qualifiersByPolicy
+					.get(oid);
+			if (null == services) {
+				services = new LinkedHashMap<TrustService, Set<String>>();
+				this.qualifiersByPolicy.put(oid, services);
+			}
+			Set<String> qualifiers = services.get(trustService);
+			if (null == qualifiers) {
+				qualifiers = new LinkedHashSet<String>();
+				services.put(trustService, qualifiers);
+			}
+			if (null == qualificationElement.getQualifiers()) {
+				continue;
+			}
+			for (QualifierType qualifier : qualificationElement
+					.getQualifiers().getQualifier()) {
+				qualifiers.add(qualifier.getUri());
+			}
+		}
+	}
+
+	private static void getOids(CriteriaListType criteriaList, Set<String> oids) {
+		if (null == criteriaList) {
+			return;
+		}
+		for (PoliciesListType policySet : criteriaList.getPolicySet()) {
+			for (ObjectIdentifierType policyIdentifier : policySet
+					.getPolicyIdentifier()) {
+				oids.add(QualificationCriteria.getOid(policyIdentifier));
+			}
+		}
+		for (CriteriaListType nestedCriteriaList : criteriaList
+				.getCriteriaList()) {
+			getOids(nestedCriteriaList, oids);
+		}
+	}
+
+	/**
+	 * Gives back the trust services that reference the given policy.
+	 * 
+	 * @param policyOid
+	 * @return
+	 */
+	public List<TrustService> getTrustServices(String policyOid) {
+		Map<TrustService, Set<String>> services = this.qualifiersByPolicy
+				.get(QualificationCriteria.getOid(policyOid));
+		if (null == services) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new LinkedList<TrustService>(
+				services.keySet()));
+	}
+
+	/**
+	 * Gives back the qualifier URIs that the given trust service attaches to
+	 * the given policy.
+	 * 
+	 * @param policyOid
+	 * @param trustService
+	 * @return
+	 */
+	public Set<String> getQualifiers(String policyOid, TrustService trustService) {
+		Map<TrustService, Set<String>> services = this.qualifiersByPolicy
+				.get(QualificationCriteria.getOid(policyOid));
+		if (null == services) {
+			return Collections.emptySet();
+		}
+		Set<String> qualifiers = services.get(trustService);
+		if (null == qualifiers) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(qualifiers);
+	}
+
+	/**
+	 * Gives back the qualifier URIs that any trust service attaches to the
+	 * given policy.
+	 * 
+	 * @param policyOid
+	 * @return
+	 */
+	public Set<String> getQualifiers(String policyOid) {
+		Map<TrustService, Set<String>> services = this.qualifiersByPolicy
+				.get(QualificationCriteria.getOid(policyOid));
+		if (null == services) {
+			return Collections.emptySet();
+		}
+		Set<String> qualifiers = new LinkedHashSet<String>();
+		for (Set<String> serviceQualifiers : services.values()) {
+			qualifiers.addAll(serviceQualifiers);
+		}
+		return Collections.unmodifiableSet(qualifiers);
+	}
+
+	public Set<String> getPolicyOids() {
+		return Collections.unmodifiableSet(this.qualifiersByPolicy.keySet());
+	}
+}
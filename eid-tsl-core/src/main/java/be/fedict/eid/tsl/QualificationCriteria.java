@@ -0,0 +1,246 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.tsl.jaxb.ecc.CriteriaListType;
+import be.fedict.eid.tsl.jaxb.ecc.KeyUsageBitType;
+import be.fedict.eid.tsl.jaxb.ecc.KeyUsageType;
+import be.fedict.eid.tsl.jaxb.ecc.PoliciesListType;
+import be.fedict.eid.tsl.jaxb.xades.ObjectIdentifierType;
+
+/**
+ * Compiled form of an ETSI TS 119 612 CriteriaList. Key usage criteria become
+ * bit masks and policy sets become OID arrays, so matching a certificate
+ * doesn't touch the JAXB model.
+ */
+final class QualificationCriteria {
+
+	private static final Log LOG = LogFactory
+			.getLog(QualificationCriteria.class);
+
+	private static final Map<String, Integer> KEY_USAGE_BITS;
+
+	static {
+		/*
+		 * Same order as X509Certificate.getKeyUsage()
+		 */
+		String[] keyUsageNames = new String[] { "digitalSignature",
+				"nonRepudiation", "keyEncipherment", "dataEncipherment",
+				"keyAgreement", "keyCertSign", "crlSign", "encipherOnly",
+				"decipherOnly" };
+		KEY_USAGE_BITS = new HashMap<String, Integer>();
+		for (int idx = 0; idx < keyUsageNames.length; idx++) {
+			KEY_USAGE_BITS.put(keyUsageNames[idx], 1 << idx);
+		}
+		// the X.509 name of the bit
+		KEY_USAGE_BITS.put("contentCommitment", 1 << 1);
+	}
+
+	private enum Assert {
+		ALL, AT_LEAST_ONE, NONE
+	}
+
+	private final Assert assertion;
+
+	/**
+	 * Per KeyUsage criterion the bits that should be set.
+	 */
+	private final int[] keyUsageSetMasks;
+
+	/**
+	 * Per KeyUsage criterion the bits that should be cleared.
+	 */
+	private final int[] keyUsageClearMasks;
+
+	private final String[][] policySets;
+
+	private final QualificationCriteria[] criteriaLists;
+
+	/**
+	 * Number of criteria we cannot evaluate, like otherCriteriaList, also
+	 * within nested criteria lists. If any, the criteria never match,
+	 * whatever the assertion.
+	 */
+	private final int unsupportedCriteria;
+
+	QualificationCriteria(CriteriaListType criteriaList) {
+		String assertValue = criteriaList.getAssert();
+		if ("atLeastOne".equals(assertValue)) {
+			this.assertion = Assert.AT_LEAST_ONE;
+		} else if ("none".equals(assertValue)) {
+			this.assertion = Assert.NONE;
+		} else {
+			this.assertion = Assert.ALL;
+		}
+
+		List<KeyUsageType> keyUsages = criteriaList.getKeyUsage();
+		this.keyUsageSetMasks = new int[keyUsages.size()];
+		this.keyUsageClearMasks = new int[keyUsages.size()];
+		int unsupportedCriteria = 0;
+		for (int idx = 0; idx < keyUsages.size(); idx++) {
+			for (KeyUsageBitType keyUsageBit : keyUsages.get(idx)
+					.getKeyUsageBit()) {
+				Integer bit = KEY_USAGE_BITS.get(keyUsageBit.getName());
+				if (null == bit) {
+					LOG.warn("unknown key usage bit: " + keyUsageBit.getName());
+					continue;
+				}
+				if (keyUsageBit.isValue()) {
+					this.keyUsageSetMasks[idx] |= bit;
+				} else {
+					this.keyUsageClearMasks[idx] |= bit;
+				}
+			}
+		}
+
+		List<PoliciesListType> policySets = criteriaList.getPolicySet();
+		this.policySets = new String[policySets.size()][];
+		for (int idx = 0; idx < policySets.size(); idx++) {
+			List<ObjectIdentifierType> policyIdentifiers = policySets.get(idx)
+					.getPolicyIdentifier();
+			List<String> oids = new LinkedList<String>();
+			for (ObjectIdentifierType policyIdentifier : policyIdentifiers) {
+				oids.add(getOid(policyIdentifier));
+			}
+			this.policySets[idx] = oids.toArray(new String[oids.size()]);
+		}
+
+		List<CriteriaListType> nestedCriteriaLists = criteriaList
+				.getCriteriaList();
+		this.criteriaLists = new QualificationCriteria[nestedCriteriaLists
+				.size()];
+		for (int idx = 0; idx < nestedCriteriaLists.size(); idx++) {
+			this.criteriaLists[idx] = new QualificationCriteria(
+					nestedCriteriaLists.get(idx));
+			if (this.criteriaLists[idx].unsupportedCriteria > 0) {
+				unsupportedCriteria++;
+			}
+		}
+
+		if (null != criteriaList.getOtherCriteriaList()) {
+			LOG.debug("otherCriteriaList not supported");
+			unsupportedCriteria++;
+		}
+		this.unsupportedCriteria = unsupportedCriteria;
+	}
+
+	/**
+	 * Checks whether a certificate matches these criteria.
+	 * 
+	 * @param keyUsage
+	 *            the key usage bits of the certificate, as mask.
+	 * @param certificatePolicies
+	 *            the certificate policy OIDs of the certificate.
+	 * @return
+	 */
+	boolean matches(int keyUsage, Set<String> certificatePolicies) {
+		if (this.unsupportedCriteria > 0) {
+			/*
+			 * Counting these as not matching would make assert="none" grant
+			 * the qualifiers.
+			 */
+			return false;
+		}
+		int total = this.keyUsageSetMasks.length + this.policySets.length
+				+ this.criteriaLists.length;
+		int matching = 0;
+		for (int idx = 0; idx < this.keyUsageSetMasks.length; idx++) {
+			if ((keyUsage & this.keyUsageSetMasks[idx]) == this.keyUsageSetMasks[idx]
+					&& 0 == (keyUsage & this.keyUsageClearMasks[idx])) {
+				matching++;
+			}
+		}
+		for (String[] policySet : this.policySets) {
+			if (containsAll(certificatePolicies, policySet)) {
+				matching++;
+			}
+		}
+		for (QualificationCriteria criteriaList : this.criteriaLists) {
+			if (criteriaList.matches(keyUsage, certificatePolicies)) {
+				matching++;
+			}
+		}
+		switch (this.assertion) {
+		case AT_LEAST_ONE:
+			return matching > 0;
+		case NONE:
+			return 0 == matching;
+		default:
+			return matching == total;
+		}
+	}
+
+	private static boolean containsAll(Set<String> certificatePolicies,
+			String[] policySet) {
+		for (String oid : policySet) {
+			if (false == certificatePolicies.contains(oid)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gives back the dotted OID of a policy identifier, which can be encoded
+	 * as an OID URN as well.
+	 * 
+	 * @param policyIdentifier
+	 * @return
+	 */
+	static String getOid(ObjectIdentifierType policyIdentifier) {
+		return getOid(policyIdentifier.getIdentifier().getValue());
+	}
+
+	static String getOid(String oid) {
+		oid = oid.trim();
+		if (oid.startsWith("urn:oid:")) {
+			oid = oid.substring("urn:oid:".length());
+		}
+		return oid;
+	}
+
+	/**
+	 * Gives back the key usage of the given certificate as bit mask.
+	 * 
+	 * @param keyUsage
+	 *            as returned by X509Certificate.getKeyUsage().
+	 * @return
+	 */
+	static int toMask(boolean[] keyUsage) {
+		if (null == keyUsage) {
+			return 0;
+		}
+		int mask = 0;
+		for (int idx = 0; idx < keyUsage.length && idx < 32; idx++) {
+			if (keyUsage[idx]) {
+				mask |= 1 << idx;
+			}
+		}
+		return mask;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Element;
+
+import be.fedict.eid.tsl.jaxb.ecc.QualificationElementType;
+import be.fedict.eid.tsl.jaxb.ecc.QualificationsType;
+import be.fedict.eid.tsl.jaxb.ecc.QualifierType;
+import be.fedict.eid.tsl.jaxb.tsl.ExtensionType;
+
+/**
+ * Determines the qualifiers that apply to a certificate, e.g.
+ * {@link TrustService#QC_SSCD_STATUS_AS_IN_CERT_QUALIFIER_URI}. The issuing
+ * trust service is found by matching the authority key identifier of the
+ * certificate against the service subject key identifiers.
+ * 
+ * The Qualifications extensions of all services are compiled once at
+ * construction, so create a new evaluator after the trust service list has
+ * changed. An evaluator can be shared between threads.
+ */
+public class QualificationEvaluator {
+
+	private static final Log LOG = LogFactory
+			.getLog(QualificationEvaluator.class);
+
+	private static final QName QUALIFICATIONS_QNAME = new QName(
+			"http://uri.etsi.org/TrstSvc/SvcInfoExt/eSigDir-1999-93-EC-TrustedList/#",
+			"Qualifications");
+
+	private static JAXBContext eccJAXBContext;
+
+	private final TrustServiceIndex trustServiceIndex;
+
+	private final Map<TrustService, List<CompiledQualification>> qualifications;
+
+	private static class CompiledQualification {
+
+		private final QualificationCriteria criteria;
+
+		private final List<String> qualifiers;
+
+		public CompiledQualification(QualificationCriteria criteria,
+				List<String> qualifiers) {
+			this.criteria = criteria;
+			this.qualifiers = qualifiers;
+		}
+	}
+
+	public QualificationEvaluator(TrustServiceList trustServiceList) {
+		this.trustServiceIndex = trustServiceList.getTrustServiceIndex();
+		this.qualifications = new HashMap<TrustService, List<CompiledQualification>>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceList
+				.getTrustServiceProviders()) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				List<CompiledQualification> compiledQualifications = new LinkedList<CompiledQualification>();
+				for (QualificationsType qualifications : getQualifications(trustService)) {
+					compile(qualifications, compiledQualifications);
+				}
+				if (false == compiledQualifications.isEmpty()) {
+					this.qualifications.put(trustService,
+							compiledQualifications);
+				}
+			}
+		}
+	}
+
+	private static void compile(QualificationsType qualifications,
+			List<CompiledQualification> compiledQualifications) {
+		for (QualificationElementType qualificationElement : qualifications
+				.getQualificationElement()) {
+			compiledQualifications.add(new CompiledQualification(
+					new QualificationCriteria(qualificationElement
+							.getCriteriaList()),
+					getQualifierUris(qualificationElement)));
+		}
+	}
+
+	private static List<String> getQualifierUris(
+			QualificationElementType qualificationElement) {
+		List<String> qualifiers = new LinkedList<String>();
+		for (QualifierType qualifier : qualificationElement.getQualifiers()
+				.getQualifier()) {
+			qualifiers.add(qualifier.getUri());
+		}
+		return qualifiers;
+	}
+
+	/**
+	 * Gives back all qualifier URIs mentioned by the Qualifications extensions
+	 * of the given trust service, regardless of their criteria.
+	 * 
+	 * @param trustService
+	 * @return
+	 */
+	static Set<String> getQualifierUris(TrustService trustService) {
+		Set<String> qualifiers = new HashSet<String>();
+		for (QualificationsType qualifications : getQualifications(trustService)) {
+			for (QualificationElementType qualificationElement : qualifications
+					.getQualificationElement()) {
+				qualifiers.addAll(getQualifierUris(qualificationElement));
+			}
+		}
+		return qualifiers;
+	}
+
+	/**
+	 * Gives back the Qualifications extensions of the given trust service.
+	 * Parsed trust service lists carry these as DOM elements, which get
+	 * unmarshalled here.
+	 * 
+	 * @param trustService
+	 * @return
+	 */
+	static List<QualificationsType> getQualifications(TrustService trustService) {
+		List<QualificationsType> result = new LinkedList<QualificationsType>();
+		Unmarshaller unmarshaller = null;
+		for (ExtensionType extension : trustService.getExtensions()) {
+			for (Object content : extension.getContent()) {
+				if (content instanceof JAXBElement
+						&& QUALIFICATIONS_QNAME.equals(((JAXBElement<?>) content)
+								.getName())) {
+					result.add((QualificationsType) ((JAXBElement<?>) content)
+							.getValue());
+				} else if (content instanceof Element
+						&& QUALIFICATIONS_QNAME.getNamespaceURI().equals(
+								((Element) content).getNamespaceURI())
+						&& QUALIFICATIONS_QNAME.getLocalPart().equals(
+								((Element) content).getLocalName())) {
+					if (null == unmarshaller) {
+						unmarshaller = createUnmarshaller();
+					}
+					result.add(unmarshallQualifications(unmarshaller,
+							(Element) content));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static synchronized JAXBContext getEccJAXBContext()
+			throws JAXBException {
+		if (null == eccJAXBContext) {
+			eccJAXBContext = JAXBContext
+					.newInstance(be.fedict.eid.tsl.jaxb.ecc.ObjectFactory.class);
+		}
+		return eccJAXBContext;
+	}
+
+	private static Unmarshaller createUnmarshaller() {
+		try {
+			return getEccJAXBContext().createUnmarshaller();
+		} catch (JAXBException e) {
+			throw new RuntimeException("JAXB error: " + e.getMessage(), e);
+		}
+	}
+
+	private static QualificationsType unmarshallQualifications(
+			Unmarshaller unmarshaller, Element element) {
+		try {
+			JAXBElement<?> jaxbElement = (JAXBElement<?>) unmarshaller
+					.unmarshal(element);
+			return (QualificationsType) jaxbElement.getValue();
+		} catch (JAXBException e) {
+			throw new RuntimeException("JAXB error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the trust services that issued the given certificate.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	public List<TrustService> findIssuingServices(X509Certificate certificate) {
+		return this.trustServiceIndex.findIssuingServices(certificate);
+	}
+
+	/**
+	 * Gives back the qualifier URIs that apply to the given certificate,
+	 * according to the Qualifications extensions of its issuing trust
+	 * services.
+	 * 
+	 * @param certificate
+	 * @return the qualifier URIs, empty if none apply.
+	 */
+	public Set<String> getQualifiers(X509Certificate certificate) {
+		List<TrustService> issuingServices = findIssuingServices(certificate);
+		if (issuingServices.isEmpty()) {
+			LOG.debug("no issuing trust service for: "
+					+ certificate.getSubjectX500Principal());
+			return Collections.emptySet();
+		}
+		int keyUsage = QualificationCriteria.toMask(certificate.getKeyUsage());
+		Set<String> certificatePolicies = null;
+		Set<String> qualifiers = new LinkedHashSet<String>();
+		for (TrustService issuingService : issuingServices) {
+			List<CompiledQualification> compiledQualifications = this.qualifications
+					.get(issuingService);
+			if (null == compiledQualifications) {
+				continue;
+			}
+			if (null == certificatePolicies) {
+				certificatePolicies = TrustServiceListUtils
+						.getCertificatePolicies(certificate);
+			}
+			for (CompiledQualification compiledQualification : compiledQualifications) {
+				if (compiledQualification.criteria.matches(keyUsage,
+						certificatePolicies)) {
+					qualifiers.addAll(compiledQualification.qualifiers);
+				}
+			}
+		}
+		return qualifiers;
+	}
+}
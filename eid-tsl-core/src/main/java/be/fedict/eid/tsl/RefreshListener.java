@@ -0,0 +1,50 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.EventListener;
+
+/**
+ * Notified by the {@link TrustServiceListRefreshScheduler} whenever a newer
+ * issue of a trust service list was fetched.
+ */
+public interface RefreshListener extends EventListener {
+
+	/**
+	 * Decides whether the newer issue replaces the loaded one, e.g. after
+	 * verifying its signature. A rejected issue is retried with back-off,
+	 * while the loaded one remains in effect.
+	 * 
+	 * @param location
+	 * @param trustServiceList
+	 *            the fetched newer issue.
+	 * @return <code>true</code> to accept the newer issue.
+	 */
+	boolean accept(String location, TrustServiceList trustServiceList);
+
+	/**
+	 * Called once the accepted issue replaced the loaded one.
+	 * 
+	 * @param location
+	 * @param trustServiceList
+	 */
+	void refreshed(String location, TrustServiceList trustServiceList);
+
+	void failed(String location, Exception exception);
+}
@@ -0,0 +1,117 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change of a single trust service between two versions of a trust service
+ * list.
+ * 
+ * @see ServiceDeltaFeed
+ */
+public class ServiceDelta {
+
+	public enum Type {
+		/**
+		 * The trust service only appears in the new list.
+		 */
+		ADDED,
+		/**
+		 * The trust service only appears in the old list.
+		 */
+		REMOVED,
+		/**
+		 * The service status changed.
+		 */
+		STATUS_CHANGED,
+		/**
+		 * Service digital identity certificates were added or removed.
+		 */
+		CERTIFICATE_ROTATED
+	}
+
+	private final Type type;
+
+	private final TrustService oldTrustService;
+
+	private final TrustService newTrustService;
+
+	private final List<X509Certificate> addedCertificates;
+
+	private final List<X509Certificate> removedCertificates;
+
+	ServiceDelta(Type type, TrustService oldTrustService,
+			TrustService newTrustService,
+			List<X509Certificate> addedCertificates,
+			List<X509Certificate> removedCertificates) {
+		this.type = type;
+		this.oldTrustService = oldTrustService;
+		this.newTrustService = newTrustService;
+		this.addedCertificates = Collections
+				.unmodifiableList(addedCertificates);
+		this.removedCertificates = Collections
+				.unmodifiableList(removedCertificates);
+	}
+
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * @return the trust service of the old list, or <code>null</code> if
+	 *         added.
+	 */
+	public TrustService getOldTrustService() {
+		return this.oldTrustService;
+	}
+
+	/**
+	 * @return the trust service of the new list, or <code>null</code> if
+	 *         removed.
+	 */
+	public TrustService getNewTrustService() {
+		return this.newTrustService;
+	}
+
+	/**
+	 * @return the service digital identity certificates that only appear in
+	 *         the new list.
+	 */
+	public List<X509Certificate> getAddedCertificates() {
+		return this.addedCertificates;
+	}
+
+	/**
+	 * @return the service digital identity certificates that only appear in
+	 *         the old list.
+	 */
+	public List<X509Certificate> getRemovedCertificates() {
+		return this.removedCertificates;
+	}
+
+	@Override
+	public String toString() {
+		TrustService trustService = null == this.newTrustService ? this.oldTrustService
+				: this.newTrustService;
+		return this.type + ": " + trustService.getName();
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.tsl.ServiceDelta.Type;
+
+/**
+ * Tells subscribers which trust services changed between two versions of a
+ * trust service list, so that downstream caches can be updated in time
+ * proportional to the change instead of the list size.
+ * 
+ * Trust services are matched by the SHA-256 digests of their service digital
+ * identity certificates, preferring the same service type when several trust
+ * services share a certificate. A trust service of which all certificates got
+ * replaced is matched by service name and service type instead, and reported
+ * as rotated. This only happens when no other trust service of either version
+ * has the same name and type.
+ * 
+ * As a {@link RefreshListener} the feed compares every refreshed list with
+ * the previous version of the same location, e.g. when driven by a
+ * {@link TrustServiceListRefreshScheduler}.
+ */
+public class ServiceDeltaFeed implements RefreshListener {
+
+	private static final Log LOG = LogFactory.getLog(ServiceDeltaFeed.class);
+
+	private final List<ServiceDeltaListener> listeners;
+
+	private final Map<String, TrustServiceList> trustServiceLists;
+
+	public ServiceDeltaFeed() {
+		this.listeners = new CopyOnWriteArrayList<ServiceDeltaListener>();
+		this.trustServiceLists = new HashMap<String, TrustServiceList>();
+	}
+
+	public void subscribe(ServiceDeltaListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void unsubscribe(ServiceDeltaListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Compares the given list with the previous version of the same location
+	 * and notifies the subscribers. The first version of a location is
+	 * reported as all trust services added.
+	 * 
+	 * @param location
+	 * @param trustServiceList
+	 * @return the changes.
+	 */
+	public List<ServiceDelta> update(String location,
+			TrustServiceList trustServiceList) {
+		TrustServiceList previousList;
+		synchronized (this.trustServiceLists) {
+			previousList = this.trustServiceLists.put(location,
+					trustServiceList);
+		}
+		List<ServiceDelta> deltas = compare(previousList, trustServiceList);
+		if (false == deltas.isEmpty()) {
+			LOG.debug(deltas.size() + " service delta(s) for " + location);
+			for (ServiceDeltaListener listener : this.listeners) {
+				try {
+					listener.changed(location, deltas);
+				} catch (RuntimeException e) {
+					LOG.error("service delta listener error: "
+							+ e.getMessage(), e);
+				}
+			}
+		}
+		return deltas;
+	}
+
+	public boolean accept(String location, TrustServiceList trustServiceList) {
+		return true;
+	}
+
+	public void refreshed(String location, TrustServiceList trustServiceList) {
+		update(location, trustServiceList);
+	}
+
+	public void failed(String location, Exception exception) {
+		// the previous version remains in effect
+	}
+
+	/**
+	 * Gives back the changes of the trust services between the given list
+	 * versions.
+	 * 
+	 * @param oldList
+	 *            the old version, can be <code>null</code>.
+	 * @param newList
+	 *            the new version, can be <code>null</code>.
+	 * @return
+	 */
+	public static List<ServiceDelta> compare(TrustServiceList oldList,
+			TrustServiceList newList) {
+		List<ServiceDelta> deltas = new LinkedList<ServiceDelta>();
+		if (oldList == newList) {
+			return deltas;
+		}
+		Map<TrustService, Map<String, X509Certificate>> oldServices = getServices(oldList);
+		Map<TrustService, Map<String, X509Certificate>> newServices = getServices(newList);
+
+		Map<String, List<TrustService>> oldServicesByDigest = new HashMap<String, List<TrustService>>();
+		Map<String, List<TrustService>> oldServicesByName = new HashMap<String, List<TrustService>>();
+		for (Map.Entry<TrustService, Map<String, X509Certificate>> oldService : oldServices
+				.entrySet()) {
+			for (String digest : oldService.getValue().keySet()) {
+				add(oldServicesByDigest, digest, oldService.getKey());
+			}
+			addByName(oldServicesByName, oldService.getKey());
+		}
+		Map<String, List<TrustService>> newServicesByName = new HashMap<String, List<TrustService>>();
+		for (TrustService newTrustService : newServices.keySet()) {
+			addByName(newServicesByName, newTrustService);
+		}
+
+		Set<TrustService> matchedServices = new HashSet<TrustService>();
+		for (Map.Entry<TrustService, Map<String, X509Certificate>> newService : newServices
+				.entrySet()) {
+			TrustService newTrustService = newService.getKey();
+			Map<String, X509Certificate> newCertificates = newService
+					.getValue();
+			TrustService oldTrustService = findByDigest(newTrustService,
+					newCertificates.keySet(), oldServicesByDigest,
+					matchedServices);
+			if (null == oldTrustService) {
+				/*
+				 * Only match by name if it is unambiguous on both sides, else
+				 * we might pair up unrelated trust services.
+				 */
+				String nameKey = getNameKey(newTrustService);
+				List<TrustService> oldCandidates = oldServicesByName
+						.get(nameKey);
+				if (null != oldCandidates && 1 == oldCandidates.size()
+						&& 1 == newServicesByName.get(nameKey).size()
+						&& false == matchedServices.contains(oldCandidates
+								.get(0))) {
+					oldTrustService = oldCandidates.get(0);
+				}
+			}
+			if (null == oldTrustService) {
+				deltas.add(new ServiceDelta(Type.ADDED, null, newTrustService,
+						new LinkedList<X509Certificate>(newCertificates
+								.values()), new LinkedList<X509Certificate>()));
+				continue;
+			}
+			matchedServices.add(oldTrustService);
+
+			String oldStatus = oldTrustService.getStatus();
+			if (null == oldStatus ? null != newTrustService.getStatus()
+					: false == oldStatus.equals(newTrustService.getStatus())) {
+				deltas.add(new ServiceDelta(Type.STATUS_CHANGED,
+						oldTrustService, newTrustService,
+						new LinkedList<X509Certificate>(),
+						new LinkedList<X509Certificate>()));
+			}
+			Map<String, X509Certificate> oldCertificates = oldServices
+					.get(oldTrustService);
+			List<X509Certificate> addedCertificates = getMissing(
+					newCertificates, oldCertificates);
+			List<X509Certificate> removedCertificates = getMissing(
+					oldCertificates, newCertificates);
+			if (false == addedCertificates.isEmpty()
+					|| false == removedCertificates.isEmpty()) {
+				deltas.add(new ServiceDelta(Type.CERTIFICATE_ROTATED,
+						oldTrustService, newTrustService, addedCertificates,
+						removedCertificates));
+			}
+		}
+
+		for (Map.Entry<TrustService, Map<String, X509Certificate>> oldService : oldServices
+				.entrySet()) {
+			if (matchedServices.contains(oldService.getKey())) {
+				continue;
+			}
+			deltas.add(new ServiceDelta(Type.REMOVED, oldService.getKey(),
+					null, new LinkedList<X509Certificate>(),
+					new LinkedList<X509Certificate>(oldService.getValue()
+							.values())));
+		}
+		return deltas;
+	}
+
+	/**
+	 * Several trust services can share a certificate, e.g. a CA/QC and an
+	 * OCSP/QC service. A candidate with the same service type is preferred.
+	 */
+	private static TrustService findByDigest(TrustService newTrustService,
+			Set<String> digests,
+			Map<String, List<TrustService>> oldServicesByDigest,
+			Set<TrustService> matchedServices) {
+		String type = newTrustService.getType();
+		TrustService otherTypeCandidate = null;
+		for (String digest : digests) {
+			List<TrustService> candidates = oldServicesByDigest.get(digest);
+			if (null == candidates) {
+				continue;
+			}
+			for (TrustService candidate : candidates) {
+				if (matchedServices.contains(candidate)) {
+					continue;
+				}
+				if (null == type ? null == candidate.getType() : type
+						.equals(candidate.getType())) {
+					return candidate;
+				}
+				if (null == otherTypeCandidate) {
+					otherTypeCandidate = candidate;
+				}
+			}
+		}
+		return otherTypeCandidate;
+	}
+
+	private static List<X509Certificate> getMissing(
+			Map<String, X509Certificate> certificates,
+			Map<String, X509Certificate> otherCertificates) {
+		List<X509Certificate> missing = new LinkedList<X509Certificate>();
+		for (Map.Entry<String, X509Certificate> certificate : certificates
+				.entrySet()) {
+			if (false == otherCertificates.containsKey(certificate.getKey())) {
+				missing.add(certificate.getValue());
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Gives back the trust services of the given list, with their service
+	 * digital identity certificates by SHA-256 digest.
+	 */
+	private static Map<TrustService, Map<String, X509Certificate>> getServices(
+			TrustServiceList trustServiceList) {
+		Map<TrustService, Map<String, X509Certificate>> services = new LinkedHashMap<TrustService, Map<String, X509Certificate>>();
+		if (null == trustServiceList) {
+			return services;
+		}
+		for (TrustServiceProvider trustServiceProvider : trustServiceList
+				.getTrustServiceProviders()) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				Map<String, X509Certificate> certificates = new LinkedHashMap<String, X509Certificate>();
+				for (X509Certificate certificate : DigitalIdentityCertificates
+						.getCertificates(trustService.getTSPService()
+								.getServiceInformation()
+								.getServiceDigitalIdentity())) {
+					certificates.put(
+							CertificateDigests.getSha256Hex(certificate),
+							certificate);
+				}
+				services.put(trustService, certificates);
+			}
+		}
+		return services;
+	}
+
+	private static void addByName(
+			Map<String, List<TrustService>> servicesByName,
+			TrustService trustService) {
+		add(servicesByName, getNameKey(trustService), trustService);
+	}
+
+	private static void add(Map<String, List<TrustService>> services,
+			String key, TrustService trustService) {
+		List<TrustService> keyServices = services.get(key);
+		if (null == keyServices) {
+			keyServices = new LinkedList<TrustService>();
+			services.put(key, keyServices);
+		}
+		keyServices.add(trustService);
+	}
+
+	private static String getNameKey(TrustService trustService) {
+		return trustService.getName() + "\n" + trustService.getType();
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.EventListener;
+import java.util.List;
+
+/**
+ * Subscriber of the {@link ServiceDeltaFeed}.
+ */
+public interface ServiceDeltaListener extends EventListener {
+
+	/**
+	 * Called once per new list version that changed any trust service.
+	 * 
+	 * @param location
+	 *            the location of the trust service list.
+	 * @param deltas
+	 *            the changes, never empty.
+	 */
+	void changed(String location, List<ServiceDelta> deltas);
+}
@@ -0,0 +1,363 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityListType;
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryInstanceType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryType;
+import be.fedict.eid.tsl.jaxb.tsl.TSPServiceInformationType;
+
+/**
+ * Point-in-time view on the status of the trust services of a trust service
+ * list. The current status and the ServiceHistory entries of every service
+ * are compiled into sorted arrays of status starting times, so that a status
+ * lookup is a binary search.
+ * 
+ * Build via {@link TrustServiceList#getServiceStatusTimeline()}, which keeps
+ * the timeline until the list changes.
+ */
+public class ServiceStatusTimeline {
+
+	private static final Log LOG = LogFactory
+			.getLog(ServiceStatusTimeline.class);
+
+	/**
+	 * Status intervals of a single trust service. Interval idx runs from
+	 * startTimes[idx] up to startTimes[idx + 1].
+	 */
+	private static class Intervals {
+
+		private final long[] startTimes;
+
+		private final String[] statuses;
+
+		private final Set<String>[] digitalIdentities;
+
+		public Intervals(long[] startTimes, String[] statuses,
+				Set<String>[] digitalIdentities) {
+			this.startTimes = startTimes;
+			this.statuses = statuses;
+			this.digitalIdentities = digitalIdentities;
+		}
+
+		/**
+		 * Gives back the index of the interval containing the given instant,
+		 * or -1 if before the first interval.
+		 */
+		public int indexAt(long instant) {
+			int idx = Arrays.binarySearch(this.startTimes, instant);
+			if (idx < 0) {
+				// insertion point minus one
+				idx = -idx - 2;
+			}
+			return idx;
+		}
+
+		public String statusAt(long instant, String[] certificateKeys) {
+			int idx = indexAt(instant);
+			if (idx < 0) {
+				return null;
+			}
+			Set<String> digitalIdentity = this.digitalIdentities[idx];
+			for (String certificateKey : certificateKeys) {
+				if (null != certificateKey
+						&& digitalIdentity.contains(certificateKey)) {
+					return this.statuses[idx];
+				}
+			}
+			// the service had another digital identity at that time
+			return null;
+		}
+	}
+
+	private static class Entry {
+
+		private final long startTime;
+
+		private final String status;
+
+		private final Set<String> digitalIdentity;
+
+		public Entry(long startTime, String status, Set<String> digitalIdentity) {
+			this.startTime = startTime;
+			this.status = status;
+			this.digitalIdentity = digitalIdentity;
+		}
+	}
+
+	private static final Comparator<Entry> START_TIME_COMPARATOR = new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			if (o1.startTime < o2.startTime) {
+				return -1;
+			}
+			if (o1.startTime > o2.startTime) {
+				return 1;
+			}
+			return 0;
+		}
+	};
+
+	private final Map<TrustService, Intervals> intervalsByService;
+
+	/**
+	 * Digital identity key (SHA-256 digest or subject key identifier, in hex)
+	 * to the trust services that had this digital identity at some time.
+	 */
+	private final Map<String, List<TrustService>> servicesByDigitalIdentity;
+
+	ServiceStatusTimeline(List<TrustServiceProvider> trustServiceProviders) {
+		this.intervalsByService = new HashMap<TrustService, Intervals>();
+		this.servicesByDigitalIdentity = new HashMap<String, List<TrustService>>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceProviders) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				compile(trustService);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void compile(TrustService trustService) {
+		List<Entry> entries = new LinkedList<Entry>();
+		TSPServiceInformationType serviceInformation = trustService
+				.getTSPService().getServiceInformation();
+		addEntry(entries, serviceInformation.getStatusStartingTime(),
+				serviceInformation.getServiceStatus(),
+				serviceInformation.getServiceDigitalIdentity());
+		ServiceHistoryType serviceHistory = trustService
+				.getServiceHistory();
+		if (null != serviceHistory) {
+			for (ServiceHistoryInstanceType serviceHistoryInstance : serviceHistory
+					.getServiceHistoryInstance()) {
+				addEntry(entries,
+						serviceHistoryInstance.getStatusStartingTime(),
+						serviceHistoryInstance.getServiceStatus(),
+						serviceHistoryInstance.getServiceDigitalIdentity());
+			}
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+		Collections.sort(entries, START_TIME_COMPARATOR);
+
+		int size = entries.size();
+		long[] startTimes = new long[size];
+		String[] statuses = new String[size];
+		Set<String>[] digitalIdentities = new Set[size];
+		int idx = 0;
+		for (Entry entry : entries) {
+			startTimes[idx] = entry.startTime;
+			statuses[idx] = entry.status;
+			digitalIdentities[idx] = entry.digitalIdentity;
+			idx++;
+			for (String key : entry.digitalIdentity) {
+				List<TrustService> trustServices = this.servicesByDigitalIdentity
+						.get(key);
+				if (null == trustServices) {
+					trustServices = new LinkedList<TrustService>();
+					this.servicesByDigitalIdentity.put(key, trustServices);
+				}
+				if (false == trustServices.contains(trustService)) {
+					trustServices.add(trustService);
+				}
+			}
+		}
+		this.intervalsByService.put(trustService, new Intervals(startTimes,
+				statuses, digitalIdentities));
+	}
+
+	private static void addEntry(List<Entry> entries,
+			XMLGregorianCalendar statusStartingTime, String status,
+			DigitalIdentityListType digitalIdentityList) {
+		if (null == statusStartingTime) {
+			LOG.warn("missing status starting time for status: " + status);
+			return;
+		}
+		long startTime = statusStartingTime.toGregorianCalendar()
+				.getTimeInMillis();
+		entries.add(new Entry(startTime, status,
+				getDigitalIdentityKeys(digitalIdentityList)));
+	}
+
+	private static Set<String> getDigitalIdentityKeys(
+			DigitalIdentityListType digitalIdentityList) {
+		Set<String> keys = new HashSet<String>();
+		if (null == digitalIdentityList) {
+			return keys;
+		}
+		for (DigitalIdentityType digitalIdentity : digitalIdentityList
+				.getDigitalId()) {
+			X509Certificate certificate = DigitalIdentityCertificates
+					.getCertificate(digitalIdentity);
+			if (null != certificate) {
+				keys.add(CertificateDigests.getSha256Hex(certificate));
+				byte[] subjectKeyIdentifier = TrustServiceListUtils
+						.getSubjectKeyIdentifier(certificate);
+				if (null != subjectKeyIdentifier) {
+					keys.add(toHex(subjectKeyIdentifier));
+				}
+			}
+			byte[] subjectKeyIdentifier = digitalIdentity.getX509SKI();
+			if (null != subjectKeyIdentifier) {
+				keys.add(toHex(subjectKeyIdentifier));
+			}
+		}
+		return keys;
+	}
+
+	private static String toHex(byte[] data) {
+		return new String(Hex.encodeHex(data));
+	}
+
+	/**
+	 * Gives back the status of the trust service that has the given
+	 * certificate as digital identity, or that issued the given certificate
+	 * (matched via the authority key identifier), at the given time. The
+	 * issuer is only looked at if the certificate is not a service digital
+	 * identity itself, else a CA service would get the status of its parent.
+	 * 
+	 * @param certificate
+	 * @param instant
+	 * @return the service status URI, or <code>null</code> if no service had
+	 *         this digital identity at the given time.
+	 */
+	public String statusAt(X509Certificate certificate, DateTime instant) {
+		return statusAt(certificate, instant.getMillis());
+	}
+
+	/**
+	 * Gives back the status at the given time in milliseconds since the epoch.
+	 * 
+	 * @param certificate
+	 * @param instant
+	 * @return
+	 * @see #statusAt(X509Certificate, DateTime)
+	 */
+	public String statusAt(X509Certificate certificate, long instant) {
+		String[] identityKeys = getIdentityKeys(certificate);
+		Set<TrustService> trustServices = getTrustServices(identityKeys);
+		if (false == trustServices.isEmpty()) {
+			return statusAt(trustServices, instant, identityKeys);
+		}
+		byte[] authorityKeyIdentifier = TrustServiceListUtils
+				.getAuthorityKeyIdentifier(certificate);
+		if (null == authorityKeyIdentifier) {
+			return null;
+		}
+		String[] issuerKeys = new String[] { toHex(authorityKeyIdentifier) };
+		return statusAt(getTrustServices(issuerKeys), instant, issuerKeys);
+	}
+
+	private Set<TrustService> getTrustServices(String[] certificateKeys) {
+		Set<TrustService> trustServices = new LinkedHashSet<TrustService>();
+		for (String certificateKey : certificateKeys) {
+			if (null == certificateKey) {
+				continue;
+			}
+			List<TrustService> services = this.servicesByDigitalIdentity
+					.get(certificateKey);
+			if (null != services) {
+				trustServices.addAll(services);
+			}
+		}
+		return trustServices;
+	}
+
+	private String statusAt(Set<TrustService> trustServices, long instant,
+			String[] certificateKeys) {
+		for (TrustService trustService : trustServices) {
+			String status = this.intervalsByService.get(trustService)
+					.statusAt(instant, certificateKeys);
+			if (null != status) {
+				return status;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back the status of the given trust service at the given time, or
+	 * <code>null</code> if the time is before the first status starting time.
+	 * 
+	 * @param trustService
+	 * @param instant
+	 * @return
+	 */
+	public String statusAt(TrustService trustService, DateTime instant) {
+		Intervals intervals = this.intervalsByService.get(trustService);
+		if (null == intervals) {
+			return null;
+		}
+		int idx = intervals.indexAt(instant.getMillis());
+		if (idx < 0) {
+			return null;
+		}
+		return intervals.statuses[idx];
+	}
+
+	/**
+	 * Gives back the status of the given trust service at the given time, if
+	 * the given certificate was its digital identity at that time.
+	 * 
+	 * @param trustService
+	 * @param serviceCertificate
+	 * @param instant
+	 * @return the service status URI, or <code>null</code> if the service had
+	 *         no status or another digital identity at the given time.
+	 */
+	public String statusAt(TrustService trustService,
+			X509Certificate serviceCertificate, long instant) {
+		Intervals intervals = this.intervalsByService.get(trustService);
+		if (null == intervals) {
+			return null;
+		}
+		return intervals.statusAt(instant, getIdentityKeys(serviceCertificate));
+	}
+
+	private static String[] getIdentityKeys(X509Certificate certificate) {
+		String[] keys = new String[2];
+		keys[0] = CertificateDigests.computeSha256Hex(certificate);
+		byte[] subjectKeyIdentifier = TrustServiceListUtils
+				.getSubjectKeyIdentifier(certificate);
+		if (null != subjectKeyIdentifier) {
+			keys[1] = toHex(subjectKeyIdentifier);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Selects the XML signature method based on the signing key type.
+ *
+ * Which signature methods are available depends on the XML signature
+ * providers and the JCA providers of the runtime. Instead of guessing this
+ * from the Java version, the providers are probed once per class loader.
+ */
+final class SignatureMethodSelector {
+
+	private static final Log LOG = LogFactory
+			.getLog(SignatureMethodSelector.class);
+
+	static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+	static final String RSA_SHA384 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha384";
+
+	static final String RSA_SHA512 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
+
+	static final String ECDSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256";
+
+	static final String ECDSA_SHA384 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha384";
+
+	static final String ECDSA_SHA512 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha512";
+
+	static final String RSA_PSS_SHA256 = "http://www.w3.org/2007/05/xmldsig-more#sha256-rsa-MGF1";
+
+	static final String RSA_PSS_SHA384 = "http://www.w3.org/2007/05/xmldsig-more#sha384-rsa-MGF1";
+
+	static final String RSA_PSS_SHA512 = "http://www.w3.org/2007/05/xmldsig-more#sha512-rsa-MGF1";
+
+	private static final Map<String, String[]> JCA_ALGORITHMS;
+
+	static {
+		JCA_ALGORITHMS = new LinkedHashMap<String, String[]>();
+		JCA_ALGORITHMS.put(RSA_SHA256, new String[] { "SHA256withRSA" });
+		JCA_ALGORITHMS.put(RSA_SHA384, new String[] { "SHA384withRSA" });
+		JCA_ALGORITHMS.put(RSA_SHA512, new String[] { "SHA512withRSA" });
+		JCA_ALGORITHMS.put(SignatureMethod.RSA_SHA1,
+				new String[] { "SHA1withRSA" });
+		JCA_ALGORITHMS.put(ECDSA_SHA256, new String[] { "SHA256withECDSA" });
+		JCA_ALGORITHMS.put(ECDSA_SHA384, new String[] { "SHA384withECDSA" });
+		JCA_ALGORITHMS.put(ECDSA_SHA512, new String[] { "SHA512withECDSA" });
+		JCA_ALGORITHMS.put(RSA_PSS_SHA256, new String[] {
+				"SHA256withRSAandMGF1", "RSASSA-PSS" });
+		JCA_ALGORITHMS.put(RSA_PSS_SHA384, new String[] {
+				"SHA384withRSAandMGF1", "RSASSA-PSS" });
+		JCA_ALGORITHMS.put(RSA_PSS_SHA512, new String[] {
+				"SHA512withRSAandMGF1", "RSASSA-PSS" });
+	}
+
+	/**
+	 * Signature method URI to the XML signature provider that supports it.
+	 */
+	private static Map<String, Provider> supportedSignatureMethods;
+
+	private SignatureMethodSelector() {
+		super();
+	}
+
+	/**
+	 * Gives back the signature method to use for the given public key.
+	 *
+	 * @param publicKey
+	 *            the public key of the signing certificate.
+	 * @param rsaPss
+	 *            use RSASSA-PSS instead of PKCS#1 v1.5 for RSA keys.
+	 * @return the signature method URI.
+	 * @throws NoSuchAlgorithmException
+	 *             if the runtime cannot sign with this key type.
+	 */
+	static String getSignatureMethod(PublicKey publicKey, boolean rsaPss)
+			throws NoSuchAlgorithmException {
+		return getSignatureMethod(publicKey, rsaPss,
+				getSupportedSignatureMethods().keySet());
+	}
+
+	/**
+	 * Gives back the signature method to use for the given public key, given
+	 * the signature methods supported by the runtime.
+	 *
+	 * RSA keys for which RSASSA-PSS was requested fall back to PKCS#1 v1.5 if
+	 * the runtime lacks the RSA-MGF1 signature methods.
+	 *
+	 * @param publicKey
+	 *            the public key of the signing certificate.
+	 * @param rsaPss
+	 *            use RSASSA-PSS instead of PKCS#1 v1.5 for RSA keys.
+	 * @param supportedSignatureMethods
+	 *            the supported signature method URIs.
+	 * @return the signature method URI.
+	 * @throws NoSuchAlgorithmException
+	 *             if the runtime cannot sign with this key type.
+	 */
+	static String getSignatureMethod(PublicKey publicKey,
+			boolean rsaPss, Set<String> supportedSignatureMethods)
+			throws NoSuchAlgorithmException {
+		String keyAlgorithm = publicKey.getAlgorithm();
+		String signatureMethod = null;
+		if ("EC".equals(keyAlgorithm) || "ECDSA".equals(keyAlgorithm)) {
+			int fieldSize = ((ECPublicKey) publicKey).getParams().getCurve()
+					.getField().getFieldSize();
+			if (fieldSize <= 256) {
+				signatureMethod = ECDSA_SHA256;
+			} else if (fieldSize <= 384) {
+				signatureMethod = ECDSA_SHA384;
+			} else {
+				signatureMethod = ECDSA_SHA512;
+			}
+		} else if ("RSASSA-PSS".equals(keyAlgorithm)
+				|| ("RSA".equals(keyAlgorithm) && rsaPss)) {
+			int modulusSize = ((RSAPublicKey) publicKey).getModulus()
+					.bitLength();
+			if (modulusSize < 3072) {
+				signatureMethod = RSA_PSS_SHA256;
+			} else if (modulusSize < 7680) {
+				signatureMethod = RSA_PSS_SHA384;
+			} else {
+				signatureMethod = RSA_PSS_SHA512;
+			}
+			if ("RSA".equals(keyAlgorithm)
+					&& false == supportedSignatureMethods
+							.contains(signatureMethod)) {
+				LOG.warn("RSASSA-PSS not supported by runtime: "
+						+ signatureMethod);
+				signatureMethod = null;
+			}
+		} else if (false == "RSA".equals(keyAlgorithm)) {
+			throw new NoSuchAlgorithmException("unsupported key algorithm: "
+					+ keyAlgorithm);
+		}
+		if (null == signatureMethod) {
+			if (supportedSignatureMethods.contains(RSA_SHA256)) {
+				signatureMethod = RSA_SHA256;
+			} else {
+				/*
+				 * Old runtimes (before Java 6u18) only have RSA-SHA1.
+				 */
+				signatureMethod = SignatureMethod.RSA_SHA1;
+			}
+		}
+		if (false == supportedSignatureMethods.contains(signatureMethod)) {
+			throw new NoSuchAlgorithmException(
+					"signature method not supported by runtime: "
+							+ signatureMethod);
+		}
+		LOG.debug("signature method: " + signatureMethod);
+		return signatureMethod;
+	}
+
+	/**
+	 * Gives back an XML signature factory that supports the given signature
+	 * method. Falls back to the default DOM factory for unknown methods.
+	 *
+	 * @param signatureMethod
+	 * @return
+	 */
+	static XMLSignatureFactory getSignatureFactory(String signatureMethod) {
+		Provider provider = getSupportedSignatureMethods().get(
+				signatureMethod);
+		if (null == provider) {
+			return XMLSignatureFactory.getInstance("DOM");
+		}
+		return XMLSignatureFactory.getInstance("DOM", provider);
+	}
+
+	/**
+	 * Checks whether the given public key can verify the given signature
+	 * method.
+	 *
+	 * @param signatureMethod
+	 * @param publicKey
+	 * @return
+	 */
+	static boolean isCompatible(String signatureMethod, PublicKey publicKey) {
+		String keyAlgorithm = publicKey.getAlgorithm();
+		if (signatureMethod.contains("#ecdsa-")) {
+			return "EC".equals(keyAlgorithm) || "ECDSA".equals(keyAlgorithm);
+		}
+		if (signatureMethod.endsWith("-rsa-MGF1")) {
+			return "RSA".equals(keyAlgorithm)
+					|| "RSASSA-PSS".equals(keyAlgorithm);
+		}
+		if (signatureMethod.contains("#rsa-")) {
+			return "RSA".equals(keyAlgorithm);
+		}
+		if (signatureMethod.contains("#dsa-")) {
+			return "DSA".equals(keyAlgorithm);
+		}
+		return false;
+	}
+
+	static boolean isSupported(String signatureMethod) {
+		return getSupportedSignatureMethods().containsKey(signatureMethod);
+	}
+
+	private static synchronized Map<String, Provider> getSupportedSignatureMethods() {
+		if (null == supportedSignatureMethods) {
+			supportedSignatureMethods = probe();
+		}
+		return supportedSignatureMethods;
+	}
+
+	private static Map<String, Provider> probe() {
+		/*
+		 * Apache XML Security comes first, as it's the provider we always
+		 * signed with.
+		 */
+		XMLSignatureFactory[] signatureFactories = new XMLSignatureFactory[] {
+				XMLSignatureFactory.getInstance("DOM",
+						new org.jcp.xml.dsig.internal.dom.XMLDSigRI()),
+				XMLSignatureFactory.getInstance("DOM") };
+		Map<String, Provider> result = new HashMap<String, Provider>();
+		for (Map.Entry<String, String[]> entry : JCA_ALGORITHMS.entrySet()) {
+			String signatureMethod = entry.getKey();
+			if (false == hasJcaSignature(entry.getValue())) {
+				LOG.debug("no JCA support for: " + signatureMethod);
+				continue;
+			}
+			for (XMLSignatureFactory signatureFactory : signatureFactories) {
+				try {
+					signatureFactory.newSignatureMethod(signatureMethod, null);
+				} catch (Exception e) {
+					continue;
+				}
+				result.put(signatureMethod, signatureFactory.getProvider());
+				break;
+			}
+		}
+		LOG.debug("supported signature methods: " + result.keySet());
+		return result;
+	}
+
+	private static boolean hasJcaSignature(String[] jcaAlgorithms) {
+		for (String jcaAlgorithm : jcaAlgorithms) {
+			try {
+				Signature.getInstance(jcaAlgorithm);
+				return true;
+			} catch (NoSuchAlgorithmException e) {
+				// try next
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Upgrades signed trust service lists from XAdES-BES to XAdES-T.
+ *
+ * Lists signed in one run are collected first and time-stamped together, so
+ * the TSA sees a single batch instead of one round-trip per list.
+ */
+public class SignatureTimeStamper {
+
+	private static final Log LOG = LogFactory
+			.getLog(SignatureTimeStamper.class);
+
+	private final TimeStampService timeStampService;
+
+	private final List<TrustServiceList> trustServiceLists;
+
+	public SignatureTimeStamper(TimeStampService timeStampService) {
+		if (null == timeStampService) {
+			throw new IllegalArgumentException();
+		}
+		this.timeStampService = timeStampService;
+		this.trustServiceLists = new LinkedList<TrustServiceList>();
+	}
+
+	/**
+	 * Adds a signed trust service list to the pending batch.
+	 *
+	 * @param trustServiceList
+	 */
+	public void add(TrustServiceList trustServiceList) {
+		if (false == trustServiceList.hasSignature()) {
+			throw new IllegalArgumentException("trust service list not signed");
+		}
+		this.trustServiceLists.add(trustServiceList);
+	}
+
+	/**
+	 * Time-stamps all pending trust service lists in a single batch and adds
+	 * the XAdES SignatureTimeStamp unsigned property to each of them.
+	 *
+	 * @throws IOException
+	 */
+	public void timeStamp() throws IOException {
+		if (this.trustServiceLists.isEmpty()) {
+			return;
+		}
+		LOG.debug("time-stamping " + this.trustServiceLists.size()
+				+ " trust service list(s)");
+		List<byte[]> digests = new LinkedList<byte[]>();
+		for (TrustServiceList trustServiceList : this.trustServiceLists) {
+			digests.add(trustServiceList.getSignatureTimeStampDigest());
+		}
+		List<byte[]> timeStampTokens = this.timeStampService
+				.timeStamp(digests);
+		if (timeStampTokens.size() != this.trustServiceLists.size()) {
+			throw new IOException("TSA returned " + timeStampTokens.size()
+					+ " tokens for " + this.trustServiceLists.size()
+					+ " digests");
+		}
+		Iterator<byte[]> timeStampTokenIterator = timeStampTokens.iterator();
+		for (TrustServiceList trustServiceList : this.trustServiceLists) {
+			trustServiceList.addSignatureTimeStamp(timeStampTokenIterator
+					.next());
+		}
+		this.trustServiceLists.clear();
+	}
+}
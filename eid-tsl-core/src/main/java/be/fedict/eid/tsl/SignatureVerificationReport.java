@@ -0,0 +1,263 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a trust service list signature verification, with the result
+ * per signature reference and the time spent per verification phase.
+ * 
+ * Reports are shared via the verification cache and should be treated as
+ * immutable.
+ */
+public class SignatureVerificationReport {
+
+	public enum Phase {
+		/**
+		 * Unmarshalling of the ds:Signature element.
+		 */
+		UNMARSHAL,
+		/**
+		 * Canonicalization of ds:SignedInfo and the public key operation.
+		 */
+		SIGNATURE_VALUE,
+		/**
+		 * Dereferencing, transforming (including canonicalization) and
+		 * digesting of all references.
+		 */
+		REFERENCES,
+		/**
+		 * Checks of what has been signed, including the XAdES signed
+		 * properties.
+		 */
+		SIGNED_PROPERTIES,
+		/**
+		 * Verification of the XAdES signature time-stamp against the trusted
+		 * TSAs. Fails if a time-stamp is present but does not cover the
+		 * signature value, or if trusted TSAs are set and none of them signed
+		 * it.
+		 */
+		TIME_STAMP
+	}
+
+	/**
+	 * Verification outcome of a single ds:Reference.
+	 */
+	public static class ReferenceResult {
+
+		private final String uri;
+
+		private final String type;
+
+		private final String digestAlgorithm;
+
+		private final boolean valid;
+
+		private final long duration;
+
+		ReferenceResult(String uri, String type, String digestAlgorithm,
+				boolean valid, long duration) {
+			this.uri = uri;
+			this.type = type;
+			this.digestAlgorithm = digestAlgorithm;
+			this.valid = valid;
+			this.duration = duration;
+		}
+
+		public String getUri() {
+			return this.uri;
+		}
+
+		public String getType() {
+			return this.type;
+		}
+
+		public String getDigestAlgorithm() {
+			return this.digestAlgorithm;
+		}
+
+		public boolean isValid() {
+			return this.valid;
+		}
+
+		/**
+		 * @return the validation time in nanoseconds.
+		 */
+		public long getDuration() {
+			return this.duration;
+		}
+	}
+
+	private boolean valid;
+
+	private Phase failedPhase;
+
+	private X509Certificate signer;
+
+	private String signatureMethod;
+
+	private Date signingTime;
+
+	private Date signatureTimeStamp;
+
+	private final List<ReferenceResult> references;
+
+	private final Map<Phase, Long> durations;
+
+	SignatureVerificationReport() {
+		this.references = new LinkedList<ReferenceResult>();
+		this.durations = new EnumMap<Phase, Long>(Phase.class);
+	}
+
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	void setValid(boolean valid) {
+		this.valid = valid;
+	}
+
+	/**
+	 * Gives back the phase in which the verification failed, or
+	 * <code>null</code> if the signature is valid or absent.
+	 * 
+	 * @return
+	 */
+	public Phase getFailedPhase() {
+		return this.failedPhase;
+	}
+
+	void setFailedPhase(Phase failedPhase) {
+		this.failedPhase = failedPhase;
+	}
+
+	/**
+	 * Gives back the signer certificate, or <code>null</code> if the
+	 * signature is absent or invalid.
+	 * 
+	 * @return
+	 */
+	public X509Certificate getSigner() {
+		if (false == this.valid) {
+			return null;
+		}
+		return this.signer;
+	}
+
+	void setSigner(X509Certificate signer) {
+		this.signer = signer;
+	}
+
+	public String getSignatureMethod() {
+		return this.signatureMethod;
+	}
+
+	void setSignatureMethod(String signatureMethod) {
+		this.signatureMethod = signatureMethod;
+	}
+
+	/**
+	 * @return the XAdES claimed signing time, or <code>null</code>.
+	 */
+	public Date getSigningTime() {
+		return copy(this.signingTime);
+	}
+
+	void setSigningTime(Date signingTime) {
+		this.signingTime = signingTime;
+	}
+
+	/**
+	 * @return the time of the verified XAdES signature time-stamp, or
+	 *         <code>null</code> if the signature carries no time-stamp or no
+	 *         trusted TSAs have been set.
+	 */
+	public Date getSignatureTimeStamp() {
+		return copy(this.signatureTimeStamp);
+	}
+
+	void setSignatureTimeStamp(Date signatureTimeStamp) {
+		this.signatureTimeStamp = signatureTimeStamp;
+	}
+
+	public List<ReferenceResult> getReferences() {
+		return Collections.unmodifiableList(this.references);
+	}
+
+	void addReference(ReferenceResult reference) {
+		this.references.add(reference);
+	}
+
+	/**
+	 * Gives back the time spent in the given phase.
+	 * 
+	 * @param phase
+	 * @return the duration in nanoseconds, or 0 if the phase was not reached.
+	 */
+	public long getDuration(Phase phase) {
+		Long duration = this.durations.get(phase);
+		if (null == duration) {
+			return 0;
+		}
+		return duration;
+	}
+
+	/**
+	 * @return the total verification time in nanoseconds.
+	 */
+	public long getDuration() {
+		long total = 0;
+		for (Long duration : this.durations.values()) {
+			total += duration;
+		}
+		return total;
+	}
+
+	void setDuration(Phase phase, long duration) {
+		this.durations.put(phase, duration);
+	}
+
+	private static Date copy(Date date) {
+		if (null == date) {
+			return null;
+		}
+		return new Date(date.getTime());
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer stringBuffer = new StringBuffer();
+		stringBuffer.append(this.valid ? "valid" : "invalid");
+		if (null != this.failedPhase) {
+			stringBuffer.append(" (" + this.failedPhase + ")");
+		}
+		for (Map.Entry<Phase, Long> duration : this.durations.entrySet()) {
+			stringBuffer.append(", " + duration.getKey() + ": "
+					+ duration.getValue() / 1000 + " us");
+		}
+		return stringBuffer.toString();
+	}
+}
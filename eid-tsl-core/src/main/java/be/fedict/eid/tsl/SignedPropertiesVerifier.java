@@ -0,0 +1,369 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignature;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.format.ISODateTimeFormat;
+import org.w3c.dom.Element;
+
+/**
+ * Checks what has been signed by a core valid TSL signature: the enveloped
+ * reference to the TSL document element and the XAdES signed properties
+ * (SigningCertificate and SigningTime).
+ */
+final class SignedPropertiesVerifier {
+
+	private static final Log LOG = LogFactory
+			.getLog(SignedPropertiesVerifier.class);
+
+	/**
+	 * Allowed clock skew between the signer and us.
+	 */
+	private static final long MAX_CLOCK_SKEW = 5 * 60 * 1000;
+
+	private static final Map<String, String> DIGEST_ALGORITHMS;
+
+	static {
+		DIGEST_ALGORITHMS = new HashMap<String, String>();
+		DIGEST_ALGORITHMS.put(DigestMethod.SHA1, "SHA-1");
+		DIGEST_ALGORITHMS.put(DigestMethod.SHA256, "SHA-256");
+		DIGEST_ALGORITHMS.put(
+				"http://www.w3.org/2001/04/xmldsig-more#sha384", "SHA-384");
+		DIGEST_ALGORITHMS.put(DigestMethod.SHA512, "SHA-512");
+	}
+
+	private SignedPropertiesVerifier() {
+		super();
+	}
+
+	/**
+	 * Verifies the signed content of the given core valid signature.
+	 * 
+	 * @param signature
+	 *            the unmarshalled and validated XML signature.
+	 * @param signatureElement
+	 *            the ds:Signature element, enveloped by the TSL document
+	 *            element.
+	 * @param signer
+	 *            the signer certificate.
+	 * @return <code>true</code> if the signed content checks out.
+	 */
+	static boolean verify(XMLSignature signature, Element signatureElement,
+			X509Certificate signer) {
+		@SuppressWarnings("unchecked")
+		List<Reference> references = signature.getSignedInfo()
+				.getReferences();
+		Element rootElement = (Element) signatureElement.getParentNode();
+		if (false == hasEnvelopedReference(references,
+				rootElement.getAttribute("Id"))) {
+			LOG.debug("signature does not cover the TSL document element");
+			return false;
+		}
+
+		Element qualifyingPropertiesElement = DomNavigator
+				.getQualifyingPropertiesElement(signatureElement);
+		if (null == qualifyingPropertiesElement) {
+			/*
+			 * Plain XML signatures are still accepted.
+			 */
+			LOG.debug("no XAdES QualifyingProperties");
+			return true;
+		}
+		String signatureId = signatureElement.getAttribute("Id");
+		if (false == ("#" + signatureId).equals(qualifyingPropertiesElement
+				.getAttribute("Target"))) {
+			LOG.debug("XAdES QualifyingProperties target mismatch");
+			return false;
+		}
+		Element signedPropertiesElement = DomNavigator.getChildElement(
+				qualifyingPropertiesElement, TrustServiceList.XADES_NAMESPACE,
+				"SignedProperties");
+		if (null == signedPropertiesElement) {
+			LOG.debug("no XAdES SignedProperties");
+			return false;
+		}
+		if (false == hasReference(references, "#"
+				+ signedPropertiesElement.getAttribute("Id"))) {
+			LOG.debug("XAdES SignedProperties not signed");
+			return false;
+		}
+		Element signedSignaturePropertiesElement = DomNavigator
+				.getChildElement(signedPropertiesElement,
+						TrustServiceList.XADES_NAMESPACE,
+						"SignedSignatureProperties");
+		if (null == signedSignaturePropertiesElement) {
+			LOG.debug("no XAdES SignedSignatureProperties");
+			return false;
+		}
+		if (false == verifySigningCertificate(
+				signedSignaturePropertiesElement, signer)) {
+			return false;
+		}
+		return verifySigningTime(signedSignaturePropertiesElement, signer);
+	}
+
+	private static boolean hasEnvelopedReference(List<Reference> references,
+			String rootId) {
+		for (Reference reference : references) {
+			String uri = reference.getURI();
+			if (false == "".equals(uri)
+					&& false == ("#" + rootId).equals(uri)) {
+				continue;
+			}
+			@SuppressWarnings("unchecked")
+			List<Transform> transforms = reference.getTransforms();
+			for (Transform transform : transforms) {
+				if (Transform.ENVELOPED.equals(transform.getAlgorithm())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasReference(List<Reference> references, String uri) {
+		for (Reference reference : references) {
+			if (uri.equals(reference.getURI())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the XAdES SigningCertificate of the given signature
+	 * refers to the given certificate. Used to choose between trusted
+	 * certificates that share the key referenced by the ds:KeyInfo.
+	 * 
+	 * @param signatureElement
+	 *            the ds:Signature element.
+	 * @param certificate
+	 *            the candidate signer certificate.
+	 * @return <code>true</code> if one of the XAdES Cert entries matches.
+	 */
+	static boolean matchesSigningCertificate(Element signatureElement,
+			X509Certificate certificate) {
+		Element qualifyingPropertiesElement = DomNavigator
+				.getQualifyingPropertiesElement(signatureElement);
+		if (null == qualifyingPropertiesElement) {
+			return false;
+		}
+		Element signingCertificateElement = DomNavigator.getElement(
+				qualifyingPropertiesElement, TrustServiceList.XADES_NAMESPACE,
+				"SignedProperties", "SignedSignatureProperties",
+				"SigningCertificate");
+		if (null == signingCertificateElement) {
+			return false;
+		}
+		for (Element certElement : DomNavigator.getChildElements(
+				signingCertificateElement, TrustServiceList.XADES_NAMESPACE,
+				"Cert")) {
+			if (isSigningCertificate(certElement, certificate)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean verifySigningCertificate(
+			Element signedSignaturePropertiesElement, X509Certificate signer) {
+		Element signingCertificateElement = DomNavigator.getChildElement(
+				signedSignaturePropertiesElement,
+				TrustServiceList.XADES_NAMESPACE, "SigningCertificate");
+		if (null == signingCertificateElement) {
+			LOG.debug("no XAdES SigningCertificate");
+			return false;
+		}
+		for (Element certElement : DomNavigator.getChildElements(
+				signingCertificateElement, TrustServiceList.XADES_NAMESPACE,
+				"Cert")) {
+			if (isSigningCertificate(certElement, signer)) {
+				return true;
+			}
+		}
+		LOG.debug("XAdES SigningCertificate does not match signer");
+		return false;
+	}
+
+	private static boolean isSigningCertificate(Element certElement,
+			X509Certificate signer) {
+		Element certDigestElement = DomNavigator.getChildElement(
+				certElement, TrustServiceList.XADES_NAMESPACE, "CertDigest");
+		if (null == certDigestElement) {
+			return false;
+		}
+		Element digestMethodElement = DomNavigator.getChildElement(
+				certDigestElement, XMLSignature.XMLNS, "DigestMethod");
+		Element digestValueElement = DomNavigator.getChildElement(
+				certDigestElement, XMLSignature.XMLNS, "DigestValue");
+		if (null == digestMethodElement || null == digestValueElement) {
+			return false;
+		}
+		byte[] digestValue = Base64.decodeBase64(digestValueElement
+				.getTextContent().trim().getBytes());
+		byte[] signerDigest = getDigest(
+				digestMethodElement.getAttribute("Algorithm"), signer);
+		if (false == Arrays.equals(signerDigest, digestValue)) {
+			return false;
+		}
+
+		Element issuerSerialElement = DomNavigator.getChildElement(
+				certElement, TrustServiceList.XADES_NAMESPACE, "IssuerSerial");
+		if (null == issuerSerialElement) {
+			// optional as of XAdES 1.4.1
+			return true;
+		}
+		Element serialNumberElement = DomNavigator.getChildElement(
+				issuerSerialElement, XMLSignature.XMLNS, "X509SerialNumber");
+		if (null != serialNumberElement) {
+			BigInteger serialNumber;
+			try {
+				serialNumber = new BigInteger(serialNumberElement
+						.getTextContent().trim());
+			} catch (NumberFormatException e) {
+				LOG.debug("invalid X509SerialNumber");
+				return false;
+			}
+			if (false == signer.getSerialNumber().equals(serialNumber)) {
+				LOG.debug("X509SerialNumber mismatch");
+				return false;
+			}
+		}
+		Element issuerNameElement = DomNavigator.getChildElement(
+				issuerSerialElement, XMLSignature.XMLNS, "X509IssuerName");
+		if (null != issuerNameElement) {
+			/*
+			 * Issuer names are encoded differently by different signers. The
+			 * certificate digest already binds the signer, so a mismatch
+			 * here is only logged.
+			 */
+			String issuerName = issuerNameElement.getTextContent().trim();
+			try {
+				if (false == signer.getIssuerX500Principal().equals(
+						new X500Principal(issuerName))) {
+					LOG.warn("X509IssuerName mismatch: " + issuerName);
+				}
+			} catch (IllegalArgumentException e) {
+				LOG.warn("unparsable X509IssuerName: " + issuerName);
+			}
+		}
+		return true;
+	}
+
+	private static byte[] getDigest(String digestAlgorithm,
+			X509Certificate certificate) {
+		if (DigestMethod.SHA256.equals(digestAlgorithm)) {
+			return CertificateDigests.getSha256(certificate);
+		}
+		String jcaDigestAlgorithm = DIGEST_ALGORITHMS.get(digestAlgorithm);
+		if (null == jcaDigestAlgorithm) {
+			LOG.debug("unsupported digest algorithm: " + digestAlgorithm);
+			return null;
+		}
+		try {
+			return MessageDigest.getInstance(jcaDigestAlgorithm).digest(
+					certificate.getEncoded());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("digest algo error: " + e.getMessage(),
+					e);
+		} catch (CertificateEncodingException e) {
+			throw new RuntimeException("X509 encoding error: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	private static boolean verifySigningTime(
+			Element signedSignaturePropertiesElement, X509Certificate signer) {
+		Element signingTimeElement = DomNavigator.getChildElement(
+				signedSignaturePropertiesElement,
+				TrustServiceList.XADES_NAMESPACE, "SigningTime");
+		if (null == signingTimeElement) {
+			// optional
+			return true;
+		}
+		Date signingTime;
+		try {
+			signingTime = ISODateTimeFormat.dateTimeParser()
+					.parseDateTime(signingTimeElement.getTextContent().trim())
+					.toDate();
+		} catch (IllegalArgumentException e) {
+			LOG.debug("invalid XAdES SigningTime");
+			return false;
+		}
+		if (signingTime.getTime() > System.currentTimeMillis()
+				+ MAX_CLOCK_SKEW) {
+			LOG.debug("XAdES SigningTime in the future: " + signingTime);
+			return false;
+		}
+		if (signingTime.before(signer.getNotBefore())
+				|| signingTime.after(signer.getNotAfter())) {
+			LOG.debug("XAdES SigningTime outside of signer validity: "
+					+ signingTime);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gives back the XAdES SigningTime of the given signature, or
+	 * <code>null</code> if absent or invalid.
+	 * 
+	 * @param signatureElement
+	 * @return
+	 */
+	static Date getSigningTime(Element signatureElement) {
+		Element qualifyingPropertiesElement = DomNavigator
+				.getQualifyingPropertiesElement(signatureElement);
+		if (null == qualifyingPropertiesElement) {
+			return null;
+		}
+		Element signingTimeElement = DomNavigator.getElement(
+				qualifyingPropertiesElement, TrustServiceList.XADES_NAMESPACE,
+				"SignedProperties", "SignedSignatureProperties", "SigningTime");
+		if (null == signingTimeElement) {
+			return null;
+		}
+		try {
+			return ISODateTimeFormat.dateTimeParser()
+					.parseDateTime(signingTimeElement.getTextContent().trim())
+					.toDate();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Interface for RFC 3161 time-stamp authority clients.
+ *
+ * The digests of all trust service lists signed in one run are handed over in
+ * a single call, so implementations can amortise connection setup over the
+ * whole batch.
+ */
+public interface TimeStampService {
+
+	/**
+	 * Requests time-stamp tokens for the given SHA-256 message imprints.
+	 *
+	 * @param digests
+	 *            the SHA-256 message imprints.
+	 * @return the DER encoded time-stamp tokens, in the same order as the
+	 *         given digests.
+	 * @throws IOException
+	 */
+	List<byte[]> timeStamp(List<byte[]> digests) throws IOException;
+}
@@ -18,12 +18,10 @@
 
 package be.fedict.eid.tsl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
-import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.LinkedList;
 import java.util.List;
@@ -115,6 +113,10 @@ public class TrustService {
 
 	private DateTime statusStartingDate;
 
+	private volatile boolean frozen;
+
+	private TrustServiceList trustServiceList;
+
 	TrustService(TSPServiceType tspService) {
 		this.tspService = tspService;
 		this.objectFactory = new ObjectFactory();
@@ -190,6 +192,7 @@ public class TrustService {
 	}
 	
 	public void addSchemeServiceDefinitionURI (String schemeServiceDefinitionURI){
+		checkNotFrozen();
 		NonEmptyMultiLangURIListType listschemeServiceDefinitionURI;
 		listschemeServiceDefinitionURI = this.tspService.getServiceInformation().getSchemeServiceDefinitionURI();
 		if (null == listschemeServiceDefinitionURI){
@@ -201,12 +204,13 @@ public class TrustService {
 				.createNonEmptyMultiLangURIType();
 		xSchemeServiceDefinitionURI.setLang(Locale.ENGLISH.getLanguage());
 		xSchemeServiceDefinitionURI.setValue(schemeServiceDefinitionURI);
-		listschemeServiceDefinitionURI.getURI().add(xSchemeServiceDefinitionURI);	
-		
+		listschemeServiceDefinitionURI.getURI().add(xSchemeServiceDefinitionURI);
+		setChanged();
 	}
 	
 	public void addServiceHistory(String serviceTypeIdentifier, String serviceName, String servicePreviousStatus, DateTime statusPreviousStartingDate,
 			 X509Certificate... certificates){
+		checkNotFrozen();
 		
 		ServiceHistoryType serviceHistoryType;
 		ServiceHistoryInstanceType serviceHistoryInstanceType;
@@ -258,8 +262,8 @@ public class TrustService {
 				.newXMLGregorianCalendar(statusStartingCalendar);
 		serviceHistoryInstanceType.setStatusStartingTime(statusStartingTime);
 		
-		serviceHistoryType.getServiceHistoryInstance().add(serviceHistoryInstanceType);	
-		
+		serviceHistoryType.getServiceHistoryInstance().add(serviceHistoryInstanceType);
+		setChanged();
 	}
 	/*
 	public TrustService(X509Certificate... certificates) {
@@ -314,6 +318,37 @@ public class TrustService {
 		return this.tspService;
 	}
 
+	/**
+	 * Makes this trust service read-only.
+	 * 
+	 * @see TrustServiceList#freeze()
+	 */
+	void freeze() {
+		this.frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException("trust service is frozen");
+		}
+	}
+
+	/**
+	 * Attaches this trust service to the given trust service list, which gets
+	 * notified of every edit.
+	 * 
+	 * @param trustServiceList
+	 */
+	void setTrustServiceList(TrustServiceList trustServiceList) {
+		this.trustServiceList = trustServiceList;
+	}
+
+	private void setChanged() {
+		if (null != this.trustServiceList) {
+			this.trustServiceList.trustServiceChanged();
+		}
+	}
+
 	public String getName(Locale locale) {
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
@@ -346,6 +381,9 @@ public class TrustService {
 			return new LinkedList<ExtensionType>();
 		}
 		List<ExtensionType> extensions = extensionsList.getExtension();
+		if (this.frozen) {
+			return Collections.unmodifiableList(extensions);
+		}
 		return extensions;
 	}
 
@@ -369,102 +407,77 @@ public class TrustService {
 	public X509Certificate getServiceDigitalIdentity() {
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
-		DigitalIdentityListType digitalIdentityList = tspServiceInformation
-				.getServiceDigitalIdentity();
-		try {
-			final CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X.509");
-			for (final DigitalIdentityType digitalIdentity : digitalIdentityList
-					.getDigitalId()) {
-				byte[] x509CertificateData = digitalIdentity
-						.getX509Certificate();
-				if (x509CertificateData != null) {
-					try {
-						X509Certificate certificate = (X509Certificate) certificateFactory
-								.generateCertificate(new ByteArrayInputStream(
-										x509CertificateData));
-						return certificate;
-					} catch (CertificateException e) {
-						throw new RuntimeException("X509 error: "
-								+ e.getMessage(), e);
-					}
-				}
-			}
-			throw new RuntimeException("No X509Certificate identity specified");
-		} catch (CertificateException e) {
-			throw new RuntimeException("X509 error: " + e.getMessage(), e);
-		}
+		return getServiceDigitalIdentity(tspServiceInformation
+				.getServiceDigitalIdentity());
 	}
+
 	public X509Certificate getServiceDigitalIdentity(DigitalIdentityListType digitalIdentityList) {
-	
-		try {
-			final CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X.509");
-			for (final DigitalIdentityType digitalIdentity : digitalIdentityList
-					.getDigitalId()) {
-				byte[] x509CertificateData = digitalIdentity
-						.getX509Certificate();
-				if (x509CertificateData != null) {
-					try {
-						X509Certificate certificate = (X509Certificate) certificateFactory
-								.generateCertificate(new ByteArrayInputStream(
-										x509CertificateData));
-						return certificate;
-					} catch (CertificateException e) {
-						throw new RuntimeException("X509 error: "
-								+ e.getMessage(), e);
-					}
-				}
+		for (DigitalIdentityType digitalIdentity : digitalIdentityList
+				.getDigitalId()) {
+			X509Certificate certificate = DigitalIdentityCertificates
+					.getCertificate(digitalIdentity);
+			if (null != certificate) {
+				return certificate;
 			}
-			throw new RuntimeException("No X509Certificate identity specified");
-		} catch (CertificateException e) {
-			throw new RuntimeException("X509 error: " + e.getMessage(), e);
 		}
+		throw new RuntimeException("No X509Certificate identity specified");
 	}
 
+	/**
+	 * Gives back the DER encoding of the service digital identity certificate.
+	 * 
+	 * @return
+	 */
 	public byte[] getServiceDigitalIdentityData() {
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
 		DigitalIdentityListType digitalIdentityList = tspServiceInformation
 				.getServiceDigitalIdentity();
-		try {
-			final CertificateFactory certificateFactory = CertificateFactory
-					.getInstance("X.509");
-			for (final DigitalIdentityType digitalIdentity : digitalIdentityList
-					.getDigitalId()) {
-				byte[] x509CertificateData = digitalIdentity
-						.getX509Certificate();
-				if (x509CertificateData != null) {
-					try {
-						X509Certificate certificate = (X509Certificate) certificateFactory
-								.generateCertificate(new ByteArrayInputStream(
-										x509CertificateData));
-						return x509CertificateData;
-					} catch (CertificateException e) {
-						throw new RuntimeException("X509 error: "
-								+ e.getMessage(), e);
-					}
-				}
+		for (DigitalIdentityType digitalIdentity : digitalIdentityList
+				.getDigitalId()) {
+			byte[] x509CertificateData = digitalIdentity.getX509Certificate();
+			if (x509CertificateData != null) {
+				return x509CertificateData;
 			}
-			throw new RuntimeException("No X509Certificate identity specified");
-		} catch (CertificateException e) {
-			throw new RuntimeException("X509 error: " + e.getMessage(), e);
 		}
+		throw new RuntimeException("No X509Certificate identity specified");
 	}
 
+	/**
+	 * Gives back the scheme service definition URIs. Once frozen, a copy is
+	 * returned.
+	 * 
+	 * @return
+	 */
 	public NonEmptyMultiLangURIListType getSchemeServiceDefinitionURI(){
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
-	return tspServiceInformation
+		NonEmptyMultiLangURIListType schemeServiceDefinitionURI = tspServiceInformation
 				.getSchemeServiceDefinitionURI();
-		
-	
+		if (this.frozen) {
+			return JaxbCopies.copy(schemeServiceDefinitionURI);
+		}
+		return schemeServiceDefinitionURI;
 	}
-	
+
+	/**
+	 * Gives back the service history. Once frozen, a copy is returned.
+	 * 
+	 * @return
+	 */
 	public ServiceHistoryType getServiceHistoryInstanceType(){
+		if (this.frozen) {
+			return JaxbCopies.copy(getServiceHistory());
+		}
+		return getServiceHistory();
+	}
+
+	/**
+	 * Gives back the live service history, for the indexes built from it.
+	 */
+	ServiceHistoryType getServiceHistory() {
 		return this.tspService.getServiceHistory();
-		
-	} 
+	}
 	
 	@Override
 	public String toString() {
@@ -476,10 +489,12 @@ public class TrustService {
 			"Qualifications");
 //http://uri.etsi.org/TrstSvc/TrustedList/SvcInfoExt/
 	public void addOIDForQCSSCDStatusAsInCert(String oid) {
+		checkNotFrozen();
 		addOIDForQCSSCDStatusAsInCert(oid, null);
 	}
 
 	public void addOIDForQCSSCDStatusAsInCert(String oid, String description) {
+		checkNotFrozen();
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
 		ExtensionsListType extensionsList = tspServiceInformation
@@ -538,6 +553,7 @@ public class TrustService {
 							}
 							policiesList.getPolicyIdentifier().add(
 									objectIdentifier);
+							setChanged();
 							return;
 						}
 					}
@@ -586,11 +602,10 @@ public class TrustService {
 		objectIdentifier.setDescription(description);
 		objectIdentifier.setIdentifier(identifier);
 		policiesList.getPolicyIdentifier().add(objectIdentifier);
-
-		
-
+		setChanged();
 	}
 	public void addAdditionalServiceInformationUri(String additionalServiceInformationString){
+		checkNotFrozen();
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
 		ExtensionsListType extensionsList = tspServiceInformation
@@ -618,14 +633,16 @@ public class TrustService {
 				.getContent()
 				.add(this.objectFactory
 						.createAdditionalServiceInformation(additionalServiceInformation));
-		
+		setChanged();
 	}
 
 	public void addOIDForQCForLegalPerson(String oid) {
+		checkNotFrozen();
 		addOIDForQCForLegalPerson(oid, false);
 	}
 
 	public void addOIDForQCForLegalPerson(String oid, boolean noRoot) {
+		checkNotFrozen();
 		TSPServiceInformationType tspServiceInformation = this.tspService
 				.getServiceInformation();
 		ExtensionsListType extensionsList = tspServiceInformation
@@ -676,6 +693,7 @@ public class TrustService {
 								objectIdentifier.setIdentifier(identifier);
 								policiesList.getPolicyIdentifier().add(
 										objectIdentifier);
+								setChanged();
 								return;
 							}
 						}
@@ -723,6 +741,7 @@ public class TrustService {
 		identifier.setValue(oid);
 		objectIdentifier.setIdentifier(identifier);
 		policiesList.getPolicyIdentifier().add(objectIdentifier);
+		setChanged();
 
 		
 		/*if (noRoot == false) {
@@ -0,0 +1,147 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary indexes of the trust services of a trust service list on service
+ * type and status, together with per service attributes that queries filter
+ * on. Kept by {@link TrustServiceList} until the list changes.
+ */
+class TrustServiceAttributeIndex {
+
+	static class Attributes {
+
+		private final long[] notBefore;
+
+		private final long[] notAfter;
+
+		private Set<String> qualifiers;
+
+		private final TrustService trustService;
+
+		Attributes(TrustService trustService) {
+			this.trustService = trustService;
+			List<X509Certificate> certificates = DigitalIdentityCertificates
+					.getCertificates(trustService.getTSPService()
+							.getServiceInformation().getServiceDigitalIdentity());
+			this.notBefore = new long[certificates.size()];
+			this.notAfter = new long[certificates.size()];
+			int idx = 0;
+			for (X509Certificate certificate : certificates) {
+				this.notBefore[idx] = certificate.getNotBefore().getTime();
+				this.notAfter[idx] = certificate.getNotAfter().getTime();
+				idx++;
+			}
+		}
+
+		/**
+		 * @return <code>true</code> if one of the service certificates is
+		 *         valid at the given time.
+		 */
+		boolean isValidAt(long instant) {
+			for (int idx = 0; idx < this.notBefore.length; idx++) {
+				if (this.notBefore[idx] <= instant
+						&& instant <= this.notAfter[idx]) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * The qualifiers are only unmarshalled once asked for.
+		 */
+		synchronized Set<String> getQualifiers() {
+			if (null == this.qualifiers) {
+				this.qualifiers = QualificationEvaluator
+						.getQualifierUris(this.trustService);
+			}
+			return this.qualifiers;
+		}
+	}
+
+	private final List<TrustService> trustServices;
+
+	private final Map<String, List<TrustService>> servicesByType;
+
+	private final Map<String, List<TrustService>> servicesByStatus;
+
+	private final Map<TrustService, Attributes> attributes;
+
+	TrustServiceAttributeIndex(List<TrustServiceProvider> trustServiceProviders) {
+		this.trustServices = new ArrayList<TrustService>();
+		this.servicesByType = new HashMap<String, List<TrustService>>();
+		this.servicesByStatus = new HashMap<String, List<TrustService>>();
+		this.attributes = new HashMap<TrustService, Attributes>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceProviders) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				this.trustServices.add(trustService);
+				put(this.servicesByType, trustService.getType(), trustService);
+				put(this.servicesByStatus, trustService.getStatus(),
+						trustService);
+				this.attributes.put(trustService, new Attributes(trustService));
+			}
+		}
+	}
+
+	private static void put(Map<String, List<TrustService>> map, String key,
+			TrustService trustService) {
+		List<TrustService> trustServices = map.get(key);
+		if (null == trustServices) {
+			trustServices = new ArrayList<TrustService>();
+			map.put(key, trustServices);
+		}
+		trustServices.add(trustService);
+	}
+
+	List<TrustService> getTrustServices() {
+		return Collections.unmodifiableList(this.trustServices);
+	}
+
+	List<TrustService> getByType(String serviceType) {
+		List<TrustService> trustServices = this.servicesByType
+				.get(serviceType);
+		if (null == trustServices) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(trustServices);
+	}
+
+	List<TrustService> getByStatus(String serviceStatus) {
+		List<TrustService> trustServices = this.servicesByStatus
+				.get(serviceStatus);
+		if (null == trustServices) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(trustServices);
+	}
+
+	Attributes getAttributes(TrustService trustService) {
+		return this.attributes.get(trustService);
+	}
+}
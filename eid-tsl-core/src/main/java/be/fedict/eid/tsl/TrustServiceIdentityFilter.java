@@ -0,0 +1,157 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+/**
+ * Bloom filter over the digital identities (SHA-256 certificate digests and
+ * subject key identifiers) of trust services. A negative answer is definite,
+ * so certificates of unknown issuers can be rejected before touching the
+ * exact index. A positive answer might be false, with a probability of about
+ * {@link #getFalsePositiveRate()}.
+ * 
+ * Adding keys is not thread-safe. Once filled, a filter can be queried from
+ * many threads.
+ */
+public class TrustServiceIdentityFilter {
+
+	private final long[] bits;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private final double falsePositiveRate;
+
+	private int entryCount;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param expectedEntries
+	 *            the expected number of keys.
+	 * @param falsePositiveRate
+	 *            the wanted false positive rate, e.g. 0.01.
+	 */
+	public TrustServiceIdentityFilter(int expectedEntries,
+			double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException(
+					"false positive rate should be between 0 and 1: "
+							+ falsePositiveRate);
+		}
+		int n = Math.max(1, expectedEntries);
+		double ln2 = Math.log(2);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate)
+				/ (ln2 * ln2));
+		// round up to whole words
+		m = Math.max(64, (m + 63) / 64 * 64);
+		this.bits = new long[(int) (m / 64)];
+		this.bitCount = m;
+		this.hashCount = Math.max(1, (int) Math.round((double) m / n * ln2));
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * Adds the given key, e.g. a SHA-256 digest or subject key identifier.
+	 * 
+	 * @param key
+	 */
+	public void put(byte[] key) {
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int idx = 1; idx <= this.hashCount; idx++) {
+			long bit = ((hash1 + (long) idx * hash2) & Long.MAX_VALUE)
+					% this.bitCount;
+			this.bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		this.entryCount++;
+	}
+
+	/**
+	 * Checks whether the given key might have been added.
+	 * 
+	 * @param key
+	 * @return <code>false</code> if the key was definitely not added.
+	 */
+	public boolean mightContain(byte[] key) {
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		for (int idx = 1; idx <= this.hashCount; idx++) {
+			long bit = ((hash1 + (long) idx * hash2) & Long.MAX_VALUE)
+					% this.bitCount;
+			if (0 == (this.bits[(int) (bit >>> 6)] & (1L << bit))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * FNV-1a followed by the MurmurHash3 finalizer. Digests are already well
+	 * distributed, but subject key identifiers need not be.
+	 */
+	private static long hash(byte[] key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Gives back the configured false positive rate.
+	 * 
+	 * @return
+	 */
+	public double getFalsePositiveRate() {
+		return this.falsePositiveRate;
+	}
+
+	/**
+	 * Gives back the false positive rate estimated from the number of keys
+	 * actually added.
+	 * 
+	 * @return
+	 */
+	public double getExpectedFalsePositiveRate() {
+		return Math.pow(
+				1 - Math.exp(-(double) this.hashCount * this.entryCount
+						/ this.bitCount), this.hashCount);
+	}
+
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	public long getBitCount() {
+		return this.bitCount;
+	}
+
+	public int getHashCount() {
+		return this.hashCount;
+	}
+}
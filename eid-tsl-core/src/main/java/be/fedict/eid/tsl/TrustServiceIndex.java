@@ -0,0 +1,274 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityListType;
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryInstanceType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceHistoryType;
+
+/**
+ * Index of the trust services of a trust service list by service digital
+ * identity. Covers the current and the historical (ServiceHistory) digital
+ * identities of every service of every trust service provider.
+ * 
+ * Build via {@link TrustServiceList#getTrustServiceIndex()}, which keeps the
+ * index until the list changes.
+ */
+public class TrustServiceIndex {
+
+	private static final Log LOG = LogFactory.getLog(TrustServiceIndex.class);
+
+	private final Map<String, List<TrustService>> servicesByDigest;
+
+	private final Map<String, List<TrustService>> servicesBySubjectKeyIdentifier;
+
+	private final Map<String, List<TrustService>> servicesBySubjectName;
+
+	private final List<byte[]> identityKeys;
+
+	private final TrustServiceIdentityFilter identityFilter;
+
+	/**
+	 * Default false positive rate of the identity filter.
+	 */
+	static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+	TrustServiceIndex(List<TrustServiceProvider> trustServiceProviders) {
+		this(trustServiceProviders, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	TrustServiceIndex(List<TrustServiceProvider> trustServiceProviders,
+			double falsePositiveRate) {
+		this.servicesByDigest = new HashMap<String, List<TrustService>>();
+		this.servicesBySubjectKeyIdentifier = new HashMap<String, List<TrustService>>();
+		this.servicesBySubjectName = new HashMap<String, List<TrustService>>();
+		this.identityKeys = new LinkedList<byte[]>();
+		for (TrustServiceProvider trustServiceProvider : trustServiceProviders) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				index(trustService, trustService.getTSPService()
+						.getServiceInformation().getServiceDigitalIdentity());
+				ServiceHistoryType serviceHistory = trustService
+						.getServiceHistory();
+				if (null == serviceHistory) {
+					continue;
+				}
+				for (ServiceHistoryInstanceType serviceHistoryInstance : serviceHistory
+						.getServiceHistoryInstance()) {
+					index(trustService,
+							serviceHistoryInstance.getServiceDigitalIdentity());
+				}
+			}
+		}
+		this.identityFilter = createIdentityFilter(this.identityKeys,
+				falsePositiveRate);
+	}
+
+	/**
+	 * Merges the given indexes, e.g. of the trust service lists of several
+	 * territories. The trust services keep the order of the given indexes.
+	 */
+	private TrustServiceIndex(Collection<TrustServiceIndex> trustServiceIndexes) {
+		this.servicesByDigest = new HashMap<String, List<TrustService>>();
+		this.servicesBySubjectKeyIdentifier = new HashMap<String, List<TrustService>>();
+		this.servicesBySubjectName = new HashMap<String, List<TrustService>>();
+		this.identityKeys = new LinkedList<byte[]>();
+		for (TrustServiceIndex trustServiceIndex : trustServiceIndexes) {
+			putAll(this.servicesByDigest, trustServiceIndex.servicesByDigest);
+			putAll(this.servicesBySubjectKeyIdentifier,
+					trustServiceIndex.servicesBySubjectKeyIdentifier);
+			putAll(this.servicesBySubjectName,
+					trustServiceIndex.servicesBySubjectName);
+			this.identityKeys.addAll(trustServiceIndex.identityKeys);
+		}
+		this.identityFilter = createIdentityFilter(this.identityKeys,
+				DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	static TrustServiceIndex merge(
+			Collection<TrustServiceIndex> trustServiceIndexes) {
+		return new TrustServiceIndex(trustServiceIndexes);
+	}
+
+	private static TrustServiceIdentityFilter createIdentityFilter(
+			List<byte[]> identityKeys, double falsePositiveRate) {
+		TrustServiceIdentityFilter identityFilter = new TrustServiceIdentityFilter(
+				identityKeys.size(), falsePositiveRate);
+		for (byte[] identityKey : identityKeys) {
+			identityFilter.put(identityKey);
+		}
+		return identityFilter;
+	}
+
+	private void index(TrustService trustService,
+			DigitalIdentityListType digitalIdentityList) {
+		if (null == digitalIdentityList) {
+			return;
+		}
+		for (DigitalIdentityType digitalIdentity : digitalIdentityList
+				.getDigitalId()) {
+			X509Certificate certificate = DigitalIdentityCertificates
+					.getCertificate(digitalIdentity);
+			if (null != certificate) {
+				byte[] digest = CertificateDigests.getSha256(certificate);
+				put(this.servicesByDigest, toHex(digest), trustService);
+				this.identityKeys.add(digest);
+				byte[] subjectKeyIdentifier = TrustServiceListUtils
+						.getSubjectKeyIdentifier(certificate);
+				if (null != subjectKeyIdentifier) {
+					put(this.servicesBySubjectKeyIdentifier,
+							toHex(subjectKeyIdentifier), trustService);
+					this.identityKeys.add(subjectKeyIdentifier);
+				}
+				put(this.servicesBySubjectName,
+						toKey(certificate.getSubjectX500Principal()),
+						trustService);
+			}
+			byte[] subjectKeyIdentifier = digitalIdentity.getX509SKI();
+			if (null != subjectKeyIdentifier) {
+				put(this.servicesBySubjectKeyIdentifier,
+						toHex(subjectKeyIdentifier), trustService);
+				this.identityKeys.add(subjectKeyIdentifier);
+			}
+			String subjectName = digitalIdentity.getX509SubjectName();
+			if (null != subjectName) {
+				X500Principal subject;
+				try {
+					subject = new X500Principal(subjectName);
+				} catch (IllegalArgumentException e) {
+					LOG.debug("invalid X509SubjectName: " + subjectName);
+					continue;
+				}
+				put(this.servicesBySubjectName, toKey(subject), trustService);
+			}
+		}
+	}
+
+	private static void put(Map<String, List<TrustService>> map, String key,
+			TrustService trustService) {
+		List<TrustService> trustServices = map.get(key);
+		if (null == trustServices) {
+			trustServices = new LinkedList<TrustService>();
+			map.put(key, trustServices);
+		}
+		if (false == trustServices.contains(trustService)) {
+			trustServices.add(trustService);
+		}
+	}
+
+	private static void putAll(Map<String, List<TrustService>> map,
+			Map<String, List<TrustService>> otherMap) {
+		for (Map.Entry<String, List<TrustService>> entry : otherMap.entrySet()) {
+			for (TrustService trustService : entry.getValue()) {
+				put(map, entry.getKey(), trustService);
+			}
+		}
+	}
+
+	private static List<TrustService> get(Map<String, List<TrustService>> map,
+			String key) {
+		List<TrustService> trustServices = map.get(key);
+		if (null == trustServices) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(trustServices);
+	}
+
+	private static String toHex(byte[] data) {
+		return new String(Hex.encodeHex(data));
+	}
+
+	private static String toKey(X500Principal principal) {
+		return principal.getName(X500Principal.CANONICAL);
+	}
+
+	/**
+	 * Gives back the trust services having the given certificate as (current
+	 * or historical) service digital identity.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	public List<TrustService> findByCertificate(X509Certificate certificate) {
+		return findBySha256(CertificateDigests.computeSha256(certificate));
+	}
+
+	private List<TrustService> findBySha256(byte[] sha256Digest) {
+		if (false == this.identityFilter.mightContain(sha256Digest)) {
+			return Collections.emptyList();
+		}
+		return get(this.servicesByDigest, toHex(sha256Digest));
+	}
+
+	public List<TrustService> findBySubjectKeyIdentifier(
+			byte[] subjectKeyIdentifier) {
+		if (false == this.identityFilter.mightContain(subjectKeyIdentifier)) {
+			return Collections.emptyList();
+		}
+		return get(this.servicesBySubjectKeyIdentifier,
+				toHex(subjectKeyIdentifier));
+	}
+
+	/**
+	 * Gives back the Bloom filter over the service digital identities, e.g.
+	 * to report its false positive rate.
+	 * 
+	 * @return
+	 */
+	public TrustServiceIdentityFilter getIdentityFilter() {
+		return this.identityFilter;
+	}
+
+	public List<TrustService> findBySubjectName(X500Principal subjectName) {
+		return get(this.servicesBySubjectName, toKey(subjectName));
+	}
+
+	/**
+	 * Gives back the trust services that (might have) issued the given
+	 * certificate. Matches the authority key identifier of the certificate
+	 * against the service subject key identifiers, falling back to the issuer
+	 * name if the certificate has no authority key identifier.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	public List<TrustService> findIssuingServices(X509Certificate certificate) {
+		byte[] authorityKeyIdentifier = TrustServiceListUtils
+				.getAuthorityKeyIdentifier(certificate);
+		if (null != authorityKeyIdentifier) {
+			return findBySubjectKeyIdentifier(authorityKeyIdentifier);
+		}
+		return findBySubjectName(certificate.getIssuerX500Principal());
+	}
+}
@@ -18,24 +18,37 @@
 
 package be.fedict.eid.tsl;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyException;
+import java.security.KeyStore;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.security.Security;
 import java.security.cert.CertificateEncodingException;
+import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
 
@@ -80,22 +93,29 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.xml.security.utils.Constants;
-import org.apache.xpath.XPathAPI;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.c14n.Canonicalizer;
 import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampToken;
 import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
 import org.joda.time.DateTime;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import be.fedict.eid.tsl.SignatureVerificationReport.Phase;
 import be.fedict.eid.tsl.jaxb.tsl.AdditionalInformationType;
 import be.fedict.eid.tsl.jaxb.tsl.AddressType;
 import be.fedict.eid.tsl.jaxb.tsl.AnyType;
@@ -128,6 +148,7 @@ import be.fedict.eid.tsl.jaxb.xades.QualifyingPropertiesType;
 import be.fedict.eid.tsl.jaxb.xades.SignedPropertiesType;
 import be.fedict.eid.tsl.jaxb.xades.SignedSignaturePropertiesType;
 import be.fedict.eid.tsl.jaxb.xmldsig.DigestMethodType;
+import be.fedict.eid.tsl.jaxb.xmldsig.SignatureType;
 import be.fedict.eid.tsl.jaxb.xmldsig.X509IssuerSerialType;
 
 /**
@@ -158,6 +179,8 @@ public class TrustServiceList {
 
 	private static final String XADES_TYPE = "http://uri.etsi.org/01903#SignedProperties";
 
+	static final String XADES_NAMESPACE = "http://uri.etsi.org/01903/v1.3.2#";
+
 	public static final String STATUS_DETERMINATION_APPROPRIATE = "http://uri.etsi.org/TrstSvc/TrustedList/TSLType/StatusDetn/EUappropriate";
 
 	public static final String SCHEME_RULE_COMMON = "http://uri.etsi.org/TrstSvc/TrustedList/schemerules/EUcommon";
@@ -172,8 +195,32 @@ public class TrustServiceList {
 
 	private boolean changed;
 
+	private boolean rsaPssSigning;
+
+	private String documentDigest;
+
+	private SignatureVerificationReport verificationReport;
+
+	private final List<X509Certificate> trustedTimeStampAuthorities;
+
+	private TrustServiceIndex trustServiceIndex;
+
+	private double identityFilterFalsePositiveRate = TrustServiceIndex.DEFAULT_FALSE_POSITIVE_RATE;
+
+	private ServiceStatusTimeline serviceStatusTimeline;
+
+	private Map<String, Set<TrustAnchor>> trustAnchors;
+
+	private TrustServiceAttributeIndex attributeIndex;
+
+	private PolicyIndex policyIndex;
+
+	private volatile boolean frozen;
+
 	private final List<ChangeListener> changeListeners;
 
+	private final List<VerificationListener> verificationListeners;
+
 	private final ObjectFactory objectFactory;
 
 	private final DatatypeFactory datatypeFactory;
@@ -188,6 +235,8 @@ public class TrustServiceList {
 		super();
 		this.changed = true;
 		this.changeListeners = new LinkedList<ChangeListener>();
+		this.verificationListeners = new LinkedList<VerificationListener>();
+		this.trustedTimeStampAuthorities = new LinkedList<X509Certificate>();
 		this.objectFactory = new ObjectFactory();
 		this.xadesObjectFactory = new be.fedict.eid.tsl.jaxb.xades.ObjectFactory();
 		this.xmldsigObjectFactory = new be.fedict.eid.tsl.jaxb.xmldsig.ObjectFactory();
@@ -206,6 +255,8 @@ public class TrustServiceList {
 		this.tslDocument = tslDocument;
 		this.tslFile = tslFile;
 		this.changeListeners = new LinkedList<ChangeListener>();
+		this.verificationListeners = new LinkedList<VerificationListener>();
+		this.trustedTimeStampAuthorities = new LinkedList<X509Certificate>();
 		this.objectFactory = new ObjectFactory();
 		this.xadesObjectFactory = new be.fedict.eid.tsl.jaxb.xades.ObjectFactory();
 		this.xmldsigObjectFactory = new be.fedict.eid.tsl.jaxb.xmldsig.ObjectFactory();
@@ -232,6 +283,22 @@ public class TrustServiceList {
 		}
 	}
 
+	public void addVerificationListener(
+			VerificationListener verificationListener) {
+		this.verificationListeners.add(verificationListener);
+	}
+
+	public void removeVerificationListener(
+			VerificationListener verificationListener) {
+		this.verificationListeners.remove(verificationListener);
+	}
+
+	private void notifyVerificationListeners(SignatureVerificationReport report) {
+		for (VerificationListener verificationListener : this.verificationListeners) {
+			verificationListener.verified(report);
+		}
+	}
+
 	public boolean hasChanged() {
 		return this.changed;
 	}
@@ -247,11 +314,13 @@ public class TrustServiceList {
 	 * @param schemeName
 	 */
 	public void setSchemeName(String schemeName) {
+		checkNotFrozen();
 		Locale locale = Locale.getDefault();
 		setSchemeName(schemeName, locale);
 	}
 
 	public void setSchemeOperatorName(String schemeOperatorName) {
+		checkNotFrozen();
 		Locale locale = Locale.getDefault();
 		setSchemeOperatorName(schemeOperatorName, locale);
 	}
@@ -265,8 +334,23 @@ public class TrustServiceList {
 		setChanged();
 	}
 
+	/**
+	 * Called by the attached trust service providers and trust services after
+	 * an edit, so that the lazily built indexes get rebuilt.
+	 */
+	void trustServiceChanged() {
+		clearDocumentCacheAndSetChanged();
+	}
+
 	private void setChanged() {
 		this.changed = true;
+		this.documentDigest = null;
+		this.verificationReport = null;
+		this.trustServiceIndex = null;
+		this.serviceStatusTimeline = null;
+		this.trustAnchors = null;
+		this.attributeIndex = null;
+		this.policyIndex = null;
 		notifyChangeListeners();
 	}
 
@@ -291,6 +375,7 @@ public class TrustServiceList {
 	}
 
 	public void setSchemeName(String schemeName, Locale locale) {
+		checkNotFrozen();
 		TSLSchemeInformationType tslSchemeInformation = getSchemeInformation();
 		InternationalNamesType i18nSchemeName = tslSchemeInformation
 				.getSchemeName();
@@ -306,6 +391,7 @@ public class TrustServiceList {
 	}
 
 	public void setSchemeOperatorName(String schemeOperatorName, Locale locale) {
+		checkNotFrozen();
 		TSLSchemeInformationType tslSchemeInformation = getSchemeInformation();
 		InternationalNamesType i18nSchemeOperatorName = tslSchemeInformation
 				.getSchemeOperatorName();
@@ -332,6 +418,7 @@ public class TrustServiceList {
 
 	public void setSchemeOperatorPostalAddress(PostalAddressType postalAddress,
 			Locale locale) {
+		checkNotFrozen();
 		AddressType schemeOperatorAddress = getSchemeOperatorAddress();
 		PostalAddressListType postalAddresses = schemeOperatorAddress
 				.getPostalAddresses();
@@ -342,15 +429,8 @@ public class TrustServiceList {
 		/*
 		 * First try to locate an existing address for the given locale.
 		 */
-		PostalAddressType existingPostalAddress = null;
-		for (PostalAddressType currentPostalAddress : postalAddresses
-				.getPostalAddress()) {
-			if (currentPostalAddress.getLang().toLowerCase()
-					.equals(locale.getLanguage())) {
-				existingPostalAddress = currentPostalAddress;
-				break;
-			}
-		}
+		PostalAddressType existingPostalAddress = LanguageIndex
+				.getPostalAddress(postalAddresses, locale);
 		if (null != existingPostalAddress) {
 			/*
 			 * Update the existing postal address.
@@ -423,6 +503,7 @@ public class TrustServiceList {
 	
 	
 	public void setSchemeOperatorElectronicAddresses(Locale local, String electronicAddres) {
+		checkNotFrozen();
 		AddressType schemeOperatorAddress = getSchemeOperatorAddress();
 		ElectronicAddressType electronicAddress = schemeOperatorAddress
 				.getElectronicAddress();
@@ -470,6 +551,7 @@ public class TrustServiceList {
 	}
 
 	public void addSchemeInformationUri(String uri, Locale locale) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		NonEmptyMultiLangURIListType schemeInformationUriList = schemeInformation
 				.getSchemeInformationURI();
@@ -509,6 +591,7 @@ public class TrustServiceList {
 
 	public void setStatusDeterminationApproach(
 			String statusDeterminationApproach) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		schemeInformation
 				.setStatusDeterminationApproach(statusDeterminationApproach);
@@ -546,11 +629,285 @@ public class TrustServiceList {
 		for (TSPType tsp : tsps) {
 			TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
 					tsp);
+			trustServiceProvider.setTrustServiceList(this);
 			this.trustServiceProviders.add(trustServiceProvider);
 		}
 		return this.trustServiceProviders;
 	}
 
+	/**
+	 * Makes this trust service list read-only, so that it can be shared
+	 * between threads. All lazily built indexes are built right away and from
+	 * now on every mutator, of the list and of its trust service providers and
+	 * trust services, throws an {@link IllegalStateException}. The getters
+	 * that hand out JAXB objects give back copies from now on. Only the
+	 * service information extensions are handed out as an unmodifiable list
+	 * of the JAXB objects themselves, which should not be modified.
+	 * 
+	 * Publish the frozen list via a volatile field or an
+	 * {@link java.util.concurrent.atomic.AtomicReference}, so that publishing
+	 * an edit is a single reference swap.
+	 * 
+	 * @return this trust service list.
+	 * @see #snapshot()
+	 */
+	public synchronized TrustServiceList freeze() {
+		if (this.frozen) {
+			return this;
+		}
+		try {
+			marshallUnsigned();
+		} catch (Exception e) {
+			throw new RuntimeException("marshall error: " + e.getMessage(), e);
+		}
+		getDocumentDigest();
+		List<TrustServiceProvider> trustServiceProviders = getTrustServiceProviders();
+		for (TrustServiceProvider trustServiceProvider : trustServiceProviders) {
+			trustServiceProvider.freeze();
+		}
+		this.trustServiceProviders = Collections
+				.unmodifiableList(trustServiceProviders);
+		getTrustServiceIndex();
+		getServiceStatusTimeline();
+		query();
+		getPolicyIndex();
+		/*
+		 * Trust anchors of other types and statuses are still added lazily.
+		 */
+		this.trustAnchors = Collections
+				.synchronizedMap(new HashMap<String, Set<TrustAnchor>>());
+		getTrustAnchors();
+		this.frozen = true;
+		return this;
+	}
+
+	/**
+	 * Gives back a frozen deep copy of this trust service list. The copy is
+	 * not affected by later edits of this list.
+	 * 
+	 * @return
+	 * @see #freeze()
+	 */
+	public TrustServiceList snapshot() {
+		if (this.frozen) {
+			return this;
+		}
+		TrustServiceList snapshot = copy();
+		/*
+		 * The file might get overwritten by the editor.
+		 */
+		snapshot.tslFile = null;
+		return snapshot.freeze();
+	}
+
+	/**
+	 * Gives back a mutable deep copy of this trust service list, e.g. to edit
+	 * a published snapshot.
+	 * 
+	 * @return
+	 */
+	public synchronized TrustServiceList copy() {
+		try {
+			marshallUnsigned();
+		} catch (Exception e) {
+			throw new RuntimeException("marshall error: " + e.getMessage(), e);
+		}
+		byte[] document = toDocumentByteArray();
+		TrustServiceList copy;
+		try {
+			copy = TrustServiceListFactory
+					.newInstance(new ByteArrayInputStream(document));
+		} catch (IOException e) {
+			throw new RuntimeException("TSL copy error: " + e.getMessage(), e);
+		}
+		copy.tslFile = this.tslFile;
+		copy.rsaPssSigning = this.rsaPssSigning;
+		copy.identityFilterFalsePositiveRate = this.identityFilterFalsePositiveRate;
+		copy.trustedTimeStampAuthorities
+				.addAll(this.trustedTimeStampAuthorities);
+		return copy;
+	}
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException("trust service list is frozen");
+		}
+	}
+
+	/**
+	 * Gives back the index of the trust services by service digital identity.
+	 * The index is built once and kept until the list changes.
+	 * 
+	 * @return
+	 */
+	public TrustServiceIndex getTrustServiceIndex() {
+		if (null == this.trustServiceIndex) {
+			this.trustServiceIndex = new TrustServiceIndex(
+					getTrustServiceProviders(),
+					this.identityFilterFalsePositiveRate);
+		}
+		return this.trustServiceIndex;
+	}
+
+	/**
+	 * Sets the false positive rate of the Bloom filter that rejects unknown
+	 * digital identities before the trust service index is searched. Defaults
+	 * to 1%.
+	 * 
+	 * @param falsePositiveRate
+	 * @see TrustServiceIndex#getIdentityFilter()
+	 */
+	public void setIdentityFilterFalsePositiveRate(double falsePositiveRate) {
+		checkNotFrozen();
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException(
+					"false positive rate should be between 0 and 1: "
+							+ falsePositiveRate);
+		}
+		this.identityFilterFalsePositiveRate = falsePositiveRate;
+		this.trustServiceIndex = null;
+	}
+
+	/**
+	 * Gives back the point-in-time view on the service statuses, including the
+	 * ServiceHistory. The timeline is built once and kept until the list
+	 * changes.
+	 * 
+	 * @return
+	 */
+	public ServiceStatusTimeline getServiceStatusTimeline() {
+		if (null == this.serviceStatusTimeline) {
+			this.serviceStatusTimeline = new ServiceStatusTimeline(
+					getTrustServiceProviders());
+		}
+		return this.serviceStatusTimeline;
+	}
+
+	/**
+	 * Starts a query over the trust services of this list. The secondary
+	 * indexes behind queries are built once and kept until the list changes.
+	 * 
+	 * @return
+	 */
+	public TrustServiceQuery query() {
+		if (null == this.attributeIndex) {
+			this.attributeIndex = new TrustServiceAttributeIndex(
+					getTrustServiceProviders());
+		}
+		return new TrustServiceQuery(this.attributeIndex, getSchemeTerritory());
+	}
+
+	/**
+	 * Gives back the reverse index from certificate policy OID to the trust
+	 * services referencing it. The index is built once and kept until the
+	 * list changes.
+	 * 
+	 * @return
+	 */
+	public PolicyIndex getPolicyIndex() {
+		if (null == this.policyIndex) {
+			this.policyIndex = new PolicyIndex(getTrustServiceProviders());
+		}
+		return this.policyIndex;
+	}
+
+	/**
+	 * Gives back the service digital identities of all trust services as trust
+	 * anchors for PKIX path validation.
+	 * 
+	 * @return
+	 * @see #getTrustAnchors(String, String)
+	 */
+	public Set<TrustAnchor> getTrustAnchors() {
+		return getTrustAnchors(null, null);
+	}
+
+	/**
+	 * Gives back the current service digital identities of the trust services
+	 * with the given type and status as trust anchors, e.g. for
+	 * {@link java.security.cert.PKIXParameters#PKIXParameters(Set)}. The sets are kept until the
+	 * list changes.
+	 * 
+	 * @param serviceType
+	 *            the service type identifier, or <code>null</code> for all
+	 *            types.
+	 * @param serviceStatus
+	 *            the service status, or <code>null</code> for all statuses.
+	 * @return an unmodifiable set of trust anchors.
+	 */
+	public Set<TrustAnchor> getTrustAnchors(String serviceType,
+			String serviceStatus) {
+		if (null == this.trustAnchors) {
+			this.trustAnchors = new HashMap<String, Set<TrustAnchor>>();
+		}
+		String key = serviceType + " " + serviceStatus;
+		Set<TrustAnchor> trustAnchors = this.trustAnchors.get(key);
+		if (null != trustAnchors) {
+			return trustAnchors;
+		}
+		trustAnchors = new LinkedHashSet<TrustAnchor>();
+		for (TrustServiceProvider trustServiceProvider : getTrustServiceProviders()) {
+			for (TrustService trustService : trustServiceProvider
+					.getTrustServices()) {
+				if (null != serviceType
+						&& false == serviceType.equals(trustService.getType())) {
+					continue;
+				}
+				if (null != serviceStatus
+						&& false == serviceStatus.equals(trustService
+								.getStatus())) {
+					continue;
+				}
+				for (X509Certificate certificate : DigitalIdentityCertificates
+						.getCertificates(trustService.getTSPService()
+								.getServiceInformation()
+								.getServiceDigitalIdentity())) {
+					trustAnchors.add(new TrustAnchor(certificate, null));
+				}
+			}
+		}
+		trustAnchors = Collections.unmodifiableSet(trustAnchors);
+		this.trustAnchors.put(key, trustAnchors);
+		return trustAnchors;
+	}
+
+	/**
+	 * Exports the trust anchors of the trust services with the given type and
+	 * status as a new key store with a trusted certificate entry per trust
+	 * anchor.
+	 * 
+	 * @param keyStoreType
+	 *            the key store type, e.g. "JKS".
+	 * @param serviceType
+	 * @param serviceStatus
+	 * @return
+	 * @see #getTrustAnchors(String, String)
+	 */
+	public KeyStore exportKeyStore(String keyStoreType, String serviceType,
+			String serviceStatus) {
+		KeyStore keyStore;
+		try {
+			keyStore = KeyStore.getInstance(keyStoreType);
+			keyStore.load(null, null);
+			for (TrustAnchor trustAnchor : getTrustAnchors(serviceType,
+					serviceStatus)) {
+				X509Certificate certificate = trustAnchor.getTrustedCert();
+				keyStore.setCertificateEntry(
+						CertificateDigests.getSha256Hex(certificate),
+						certificate);
+			}
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException("key store error: " + e.getMessage(), e);
+		} catch (IOException e) {
+			throw new RuntimeException("key store error: " + e.getMessage(), e);
+		}
+		return keyStore;
+	}
+
 	public String getType() {
 		if (null == this.tslDocument) {
 			try {
@@ -587,7 +944,7 @@ public class TrustServiceList {
 		return xmlGregorianCalendar.toGregorianCalendar().getTime();
 	}
 
-	public boolean hasSignature() {
+	public synchronized boolean hasSignature() {
 		if (null == this.tslDocument) {
 			/*
 			 * Even if the JAXB TSL still has a signature, it's probably already
@@ -602,23 +959,194 @@ public class TrustServiceList {
 		return true;
 	}
 
-	public X509Certificate verifySignature() {
+	public synchronized X509Certificate verifySignature() {
+		if (null == this.tslDocument) {
+			LOG.debug("first save the document");
+			return null;
+		}
+		return getSignatureVerificationReport().getSigner();
+	}
+
+	/**
+	 * Gives back the detailed outcome of the signature verification.
+	 * 
+	 * @return the verification report, or <code>null</code> if the document
+	 *         has not been saved yet.
+	 * @see #addVerificationListener(VerificationListener)
+	 */
+	public synchronized SignatureVerificationReport getSignatureVerificationReport() {
+		if (null == this.tslDocument) {
+			LOG.debug("first save the document");
+			return null;
+		}
+		if (null != this.verificationReport) {
+			return this.verificationReport;
+		}
+		String cacheKey = getVerificationCacheKey(getDocumentDigest());
+		SignatureVerificationReport verificationReport = VerificationReportCache
+				.get(cacheKey);
+		if (null == verificationReport) {
+			verificationReport = verify(new KeyInfoKeySelector());
+			VerificationReportCache.put(cacheKey, verificationReport);
+		} else {
+			LOG.debug("cached verification report");
+		}
+		this.verificationReport = verificationReport;
+		return verificationReport;
+	}
+
+	/**
+	 * Verifies the signature against the given trusted signers only. Signers
+	 * not present in the ds:KeyInfo of the signature are rejected before any
+	 * cryptographic verification takes place.
+	 * 
+	 * @param trustedSigners
+	 * @return the trusted signer certificate, or <code>null</code> if the
+	 *         signature is absent, invalid or not created by a trusted signer.
+	 */
+	public X509Certificate verifySignature(
+			Collection<X509Certificate> trustedSigners) {
+		return verifySignature(new TrustedSignerIndex(trustedSigners));
+	}
+
+	/**
+	 * Verifies the signature against the given index of trusted signers.
+	 * 
+	 * @param trustedSignerIndex
+	 * @return the trusted signer certificate, or <code>null</code> if the
+	 *         signature is absent, invalid or not created by a trusted signer.
+	 * @see #verifySignature(Collection)
+	 */
+	public synchronized X509Certificate verifySignature(TrustedSignerIndex trustedSignerIndex) {
 		if (null == this.tslDocument) {
 			LOG.debug("first save the document");
 			return null;
 		}
+		Element signatureElement = (Element) getSignatureNode();
+		if (null == signatureElement) {
+			LOG.debug("no ds:Signature element present");
+			return null;
+		}
+		X509Certificate trustedSigner = findTrustedSigner(signatureElement,
+				trustedSignerIndex);
+		if (null == trustedSigner) {
+			LOG.debug("signer not trusted");
+			return null;
+		}
+		if (null != this.verificationReport
+				&& trustedSigner.equals(this.verificationReport.getSigner())) {
+			return trustedSigner;
+		}
+		String cacheKey = getVerificationCacheKey(getDocumentDigest() + "-"
+				+ CertificateDigests.getSha256Hex(trustedSigner));
+		SignatureVerificationReport verificationReport = VerificationReportCache
+				.get(cacheKey);
+		if (null == verificationReport) {
+			verificationReport = verify(new KeyInfoKeySelector(trustedSigner));
+			VerificationReportCache.put(cacheKey, verificationReport);
+		}
+		return verificationReport.getSigner();
+	}
+
+	/**
+	 * The outcome of the verification also depends on the trusted TSAs.
+	 */
+	private String getVerificationCacheKey(String key) {
+		StringBuffer cacheKey = new StringBuffer(key);
+		for (X509Certificate trustedTimeStampAuthority : this.trustedTimeStampAuthorities) {
+			cacheKey.append("-tsa-");
+			cacheKey.append(CertificateDigests
+					.getSha256Hex(trustedTimeStampAuthority));
+		}
+		return cacheKey.toString();
+	}
+
+	private X509Certificate findTrustedSigner(Element signatureElement,
+			TrustedSignerIndex trustedSignerIndex) {
+		Element keyInfoElement = DomNavigator.getChildElement(
+				signatureElement, XMLSignature.XMLNS, "KeyInfo");
+		if (null == keyInfoElement) {
+			return null;
+		}
+		for (Element x509DataElement : DomNavigator.getChildElements(
+				keyInfoElement, XMLSignature.XMLNS, "X509Data")) {
+			Node childNode = x509DataElement.getFirstChild();
+			while (null != childNode) {
+				if (Node.ELEMENT_NODE == childNode.getNodeType()
+						&& XMLSignature.XMLNS.equals(childNode
+								.getNamespaceURI())) {
+					byte[] value = Base64.decodeBase64(childNode
+							.getTextContent().getBytes());
+					String localName = childNode.getLocalName();
+					if ("X509Certificate".equals(localName)) {
+						X509Certificate trustedSigner = trustedSignerIndex
+								.findByEncoding(value);
+						if (null != trustedSigner) {
+							return trustedSigner;
+						}
+					} else if ("X509SKI".equals(localName)) {
+						List<X509Certificate> trustedSigners = trustedSignerIndex
+								.findBySubjectKeyIdentifier(value);
+						X509Certificate trustedSigner = selectTrustedSigner(
+								signatureElement, trustedSigners);
+						if (null != trustedSigner) {
+							return trustedSigner;
+						}
+					}
+				}
+				childNode = childNode.getNextSibling();
+			}
+		}
+		return null;
+	}
 
+	/**
+	 * Several trusted certificates can share the key referenced by a
+	 * ds:X509SKI, e.g. a renewed signer certificate. The XAdES
+	 * SigningCertificate tells which one actually signed.
+	 */
+	private X509Certificate selectTrustedSigner(Element signatureElement,
+			List<X509Certificate> trustedSigners) {
+		if (trustedSigners.isEmpty()) {
+			return null;
+		}
+		if (1 == trustedSigners.size()) {
+			return trustedSigners.get(0);
+		}
+		for (X509Certificate trustedSigner : trustedSigners) {
+			if (SignedPropertiesVerifier.matchesSigningCertificate(
+					signatureElement, trustedSigner)) {
+				return trustedSigner;
+			}
+		}
+		LOG.debug("no XAdES SigningCertificate matches the trusted signers");
+		return trustedSigners.get(0);
+	}
+
+	private SignatureVerificationReport verify(
+			KeyInfoKeySelector keyInfoKeySelector) {
+		SignatureVerificationReport report = new SignatureVerificationReport();
+		validate(keyInfoKeySelector, report);
+		notifyVerificationListeners(report);
+		return report;
+	}
+
+	private void validate(KeyInfoKeySelector keyInfoKeySelector,
+			SignatureVerificationReport report) {
 		Node signatureNode = getSignatureNode();
 		if (null == signatureNode) {
 			LOG.debug("no ds:Signature element present");
-			return null;
+			return;
 		}
+		Element signatureElement = (Element) signatureNode;
+		String signatureMethod = getSignatureMethod(signatureElement);
+		report.setSignatureMethod(signatureMethod);
 
-		KeyInfoKeySelector keyInfoKeySelector = new KeyInfoKeySelector();
+		long start = System.nanoTime();
 		DOMValidateContext valContext = new DOMValidateContext(
 				keyInfoKeySelector, signatureNode);
-		XMLSignatureFactory xmlSignatureFactory = XMLSignatureFactory
-				.getInstance("DOM");
+		XMLSignatureFactory xmlSignatureFactory = SignatureMethodSelector
+				.getSignatureFactory(signatureMethod);
 		XMLSignature signature;
 		try {
 			signature = xmlSignatureFactory.unmarshalXMLSignature(valContext);
@@ -626,43 +1154,155 @@ public class TrustServiceList {
 			throw new RuntimeException("XML signature parse error: "
 					+ e.getMessage(), e);
 		}
-		boolean coreValidity;
+		long end = System.nanoTime();
+		report.setDuration(Phase.UNMARSHAL, end - start);
+
+		/*
+		 * Validate the signature value and every reference separately, rather
+		 * than via XMLSignature.validate, to time and report each of them.
+		 */
+		start = end;
+		boolean signatureValueValidity;
 		try {
-			coreValidity = signature.validate(valContext);
+			signatureValueValidity = signature.getSignatureValue().validate(
+					valContext);
 		} catch (XMLSignatureException e) {
 			throw new RuntimeException(
 					"XML signature error: " + e.getMessage(), e);
 		}
+		end = System.nanoTime();
+		report.setDuration(Phase.SIGNATURE_VALUE, end - start);
+		report.setSigner(keyInfoKeySelector.getCertificate());
+		if (false == signatureValueValidity) {
+			LOG.debug("signature value invalid");
+			report.setFailedPhase(Phase.SIGNATURE_VALUE);
+		}
+
+		start = end;
+		boolean referencesValidity = true;
+		for (Object referenceObject : signature.getSignedInfo()
+				.getReferences()) {
+			Reference reference = (Reference) referenceObject;
+			long referenceStart = System.nanoTime();
+			boolean referenceValidity;
+			try {
+				referenceValidity = reference.validate(valContext);
+			} catch (XMLSignatureException e) {
+				throw new RuntimeException("XML signature error: "
+						+ e.getMessage(), e);
+			}
+			report.addReference(new SignatureVerificationReport.ReferenceResult(
+					reference.getURI(), reference.getType(), reference
+							.getDigestMethod().getAlgorithm(),
+					referenceValidity, System.nanoTime() - referenceStart));
+			if (false == referenceValidity) {
+				LOG.debug("reference invalid: " + reference.getURI());
+				referencesValidity = false;
+			}
+		}
+		end = System.nanoTime();
+		report.setDuration(Phase.REFERENCES, end - start);
+		if (false == referencesValidity && null == report.getFailedPhase()) {
+			report.setFailedPhase(Phase.REFERENCES);
+		}
+		if (null != report.getFailedPhase()) {
+			LOG.debug("signature invalid");
+			return;
+		}
 
-		// TODO: check what has been signed
+		start = end;
+		report.setSigningTime(SignedPropertiesVerifier
+				.getSigningTime(signatureElement));
+		boolean signedPropertiesValidity = SignedPropertiesVerifier.verify(
+				signature, signatureElement,
+				keyInfoKeySelector.getCertificate());
+		end = System.nanoTime();
+		report.setDuration(Phase.SIGNED_PROPERTIES, end - start);
+		if (false == signedPropertiesValidity) {
+			LOG.debug("signed content invalid");
+			report.setFailedPhase(Phase.SIGNED_PROPERTIES);
+			return;
+		}
 
-		if (coreValidity) {
-			LOG.debug("signature valid");
-			return keyInfoKeySelector.getCertificate();
+		start = end;
+		Date signatureTimeStamp;
+		try {
+			signatureTimeStamp = findSignatureTimeStamp();
+		} catch (RuntimeException e) {
+			/*
+			 * A time-stamp that is present but cannot be verified makes the
+			 * signature invalid, rather than silently untimed.
+			 */
+			LOG.warn("signature time-stamp error: " + e.getMessage());
+			report.setDuration(Phase.TIME_STAMP, System.nanoTime() - start);
+			report.setFailedPhase(Phase.TIME_STAMP);
+			return;
 		}
-		LOG.debug("signature invalid");
+		report.setSignatureTimeStamp(signatureTimeStamp);
+		report.setDuration(Phase.TIME_STAMP, System.nanoTime() - start);
 
-		return null;
+		LOG.debug("signature valid");
+		report.setValid(true);
 	}
 
-	private Node getSignatureNode() {
-		Element nsElement = this.tslDocument.createElement("ns");
-		nsElement.setAttributeNS(Constants.NamespaceSpecNS, "xmlns:ds",
-				XMLSignature.XMLNS);
-		nsElement.setAttributeNS(Constants.NamespaceSpecNS, "xmlns:tsl",
-				"http://uri.etsi.org/02231/v2#");
+	/**
+	 * Sets the SHA-256 digest of the bytes the DOM document was parsed from.
+	 * 
+	 * @param documentDigest
+	 *            the hexadecimal SHA-256 digest.
+	 */
+	void setDocumentDigest(String documentDigest) {
+		this.documentDigest = documentDigest;
+	}
 
-		Node signatureNode;
-		try {
-			signatureNode = XPathAPI.selectSingleNode(this.tslDocument,
-					"tsl:TrustServiceStatusList/ds:Signature", nsElement);
-		} catch (TransformerException e) {
-			throw new RuntimeException("XPath error: " + e.getMessage(), e);
+	private String getDocumentDigest() {
+		if (null == this.documentDigest) {
+			/*
+			 * Only serialize the DOM if we don't know the parsed bytes.
+			 */
+			this.documentDigest = DigestUtils.sha256Hex(toDocumentByteArray());
+		}
+		return this.documentDigest;
+	}
+
+	private String getSignatureMethod(Element signatureElement) {
+		Element signedInfoElement = DomNavigator.getChildElement(
+				signatureElement, XMLSignature.XMLNS, "SignedInfo");
+		if (null == signedInfoElement) {
+			return null;
+		}
+		Element signatureMethodElement = DomNavigator.getChildElement(
+				signedInfoElement, XMLSignature.XMLNS, "SignatureMethod");
+		if (null == signatureMethodElement) {
+			return null;
 		}
-		return signatureNode;
+		return signatureMethodElement.getAttribute("Algorithm");
+	}
+
+	private Node getSignatureNode() {
+		return DomNavigator.getSignatureElement(this.tslDocument);
 	}
 
 	private void marshall() throws JAXBException, ParserConfigurationException {
+		prepareTrustStatusList();
+
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		DocumentBuilder documentBuilder = documentBuilderFactory
+				.newDocumentBuilder();
+		Document document = documentBuilder.newDocument();
+
+		Marshaller marshaller = createMarshaller();
+		ObjectFactory objectFactory = new ObjectFactory();
+		JAXBElement<TrustStatusListType> trustStatusListElement = objectFactory
+				.createTrustServiceStatusList(this.trustStatusList);
+		marshaller.marshal(trustStatusListElement, document);
+
+		this.tslDocument = document;
+	}
+
+	private void prepareTrustStatusList() {
 		/*
 		 * Assign a unique XML Id to the TSL for signing purposes.
 		 */
@@ -698,14 +1338,9 @@ public class TrustServiceList {
 		 * Scheme Information - TSL Type
 		 */
 		schemeInformation.setTSLType(TSL_TYPE);
+	}
 
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
-				.newInstance();
-		documentBuilderFactory.setNamespaceAware(true);
-		DocumentBuilder documentBuilder = documentBuilderFactory
-				.newDocumentBuilder();
-		Document document = documentBuilder.newDocument();
-
+	private Marshaller createMarshaller() throws JAXBException {
 		JAXBContext jaxbContext = JAXBContext.newInstance(ObjectFactory.class,
 				be.fedict.eid.tsl.jaxb.ecc.ObjectFactory.class,
 				be.fedict.eid.tsl.jaxb.tslx.ObjectFactory.class);
@@ -713,16 +1348,24 @@ public class TrustServiceList {
 		LOG.debug("marshaller type: " + marshaller.getClass().getName());
 		marshaller.setProperty("com.sun.xml.bind.namespacePrefixMapper",
 				new TSLNamespacePrefixMapper());
-		ObjectFactory objectFactory = new ObjectFactory();
-		JAXBElement<TrustStatusListType> trustStatusListElement = objectFactory
-				.createTrustServiceStatusList(trustStatusList);
-		marshaller.marshal(trustStatusListElement, document);
+		return marshaller;
+	}
 
-		this.tslDocument = document;
+	/**
+	 * Sets whether RSA keys sign using RSASSA-PSS instead of PKCS#1 v1.5.
+	 * Falls back to PKCS#1 v1.5 if the runtime doesn't support RSASSA-PSS. EC
+	 * keys always sign using ECDSA.
+	 * 
+	 * @param rsaPssSigning
+	 */
+	public void setRsaPssSigning(boolean rsaPssSigning) {
+		checkNotFrozen();
+		this.rsaPssSigning = rsaPssSigning;
 	}
 
 	public void sign(PrivateKey privateKey, X509Certificate certificate)
 			throws IOException {
+		checkNotFrozen();
 		LOG.debug("sign with: " + certificate.getSubjectX500Principal());
 		if (null == this.tslDocument) {
 			/*
@@ -756,12 +1399,76 @@ public class TrustServiceList {
 		setChanged();
 	}
 
+	/**
+	 * Signs the trust service list and writes the signed XML document to the
+	 * given output stream. Contrary to {@link #sign(PrivateKey, X509Certificate)}
+	 * the enveloped reference digest is computed while marshalling the JAXB
+	 * model, so no DOM of the list itself is ever built. Memory usage is
+	 * proportional to the signature, not to the list.
+	 * 
+	 * @param privateKey
+	 * @param certificate
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public void streamSign(final PrivateKey privateKey,
+			final X509Certificate certificate, OutputStream outputStream)
+			throws IOException {
+		checkNotFrozen();
+		LOG.debug("stream sign with: "
+				+ certificate.getSubjectX500Principal());
+		prepareTrustStatusList();
+		final String tslId = this.trustStatusList.getId();
+
+		/*
+		 * The enveloped signature transform drops any existing signature.
+		 */
+		SignatureType signature = this.trustStatusList.getSignature();
+		this.trustStatusList.setSignature(null);
+		try {
+			SAXTransformerFactory transformerFactory = (SAXTransformerFactory) TransformerFactory
+					.newInstance();
+			TransformerHandler serializer = transformerFactory
+					.newTransformerHandler();
+			serializer.setResult(new StreamResult(outputStream));
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			EnvelopedSignatureContentHandler contentHandler = new EnvelopedSignatureContentHandler(
+					serializer, messageDigest) {
+				@Override
+				protected Element createSignature(byte[] digestValue)
+						throws Exception {
+					return xmlStreamSign(privateKey, certificate, tslId,
+							digestValue);
+				}
+			};
+			Marshaller marshaller = createMarshaller();
+			ObjectFactory objectFactory = new ObjectFactory();
+			marshaller.marshal(objectFactory
+					.createTrustServiceStatusList(this.trustStatusList),
+					contentHandler);
+		} catch (JAXBException e) {
+			throw new IOException("marshaller error: " + e.getMessage(), e);
+		} catch (TransformerConfigurationException e) {
+			throw new IOException("serializer error: " + e.getMessage(), e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("digest error: " + e.getMessage(), e);
+		} finally {
+			this.trustStatusList.setSignature(signature);
+		}
+		/*
+		 * A previously marshalled DOM no longer matches the new TSL Id.
+		 */
+		clearDocumentCacheAndSetChanged();
+	}
+
 	private void xmlSign(PrivateKey privateKey, X509Certificate certificate,
 			String tslId) throws NoSuchAlgorithmException,
 			InvalidAlgorithmParameterException, MarshalException,
 			XMLSignatureException {
-		XMLSignatureFactory signatureFactory = XMLSignatureFactory.getInstance(
-				"DOM", new org.jcp.xml.dsig.internal.dom.XMLDSigRI());
+		String signatureMethod = SignatureMethodSelector.getSignatureMethod(
+				certificate.getPublicKey(), this.rsaPssSigning);
+		XMLSignatureFactory signatureFactory = SignatureMethodSelector
+				.getSignatureFactory(signatureMethod);
 		LOG.debug("xml signature factory: "
 				+ signatureFactory.getClass().getName());
 		LOG.debug("loader: " + signatureFactory.getClass().getClassLoader());
@@ -771,7 +1478,60 @@ public class TrustServiceList {
 
 		DigestMethod digestMethod = signatureFactory.newDigestMethod(
 				DigestMethod.SHA256, null);
-		List<Reference> references = new LinkedList<Reference>();
+		Reference reference = signatureFactory.newReference("#" + tslId,
+				digestMethod, createEnvelopedTransforms(signatureFactory),
+				null, null);
+
+		XMLSignature xmlSignature = createXMLSignature(signatureFactory,
+				signatureMethod, this.tslDocument, certificate, reference);
+		xmlSignature.sign(signContext);
+	}
+
+	private Element xmlStreamSign(PrivateKey privateKey,
+			X509Certificate certificate, String tslId, byte[] digestValue)
+			throws ParserConfigurationException, NoSuchAlgorithmException,
+			InvalidAlgorithmParameterException, MarshalException,
+			XMLSignatureException {
+		String signatureMethod = SignatureMethodSelector.getSignatureMethod(
+				certificate.getPublicKey(), this.rsaPssSigning);
+		XMLSignatureFactory signatureFactory = SignatureMethodSelector
+				.getSignatureFactory(signatureMethod);
+
+		/*
+		 * The signature is created within a small stand-alone document. All
+		 * signature references use exclusive C14N, so the signature remains
+		 * valid once spliced into the streamed TSL document.
+		 */
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		Element containerElement = document.createElementNS(
+				"http://uri.etsi.org/02231/v2#", "tsl:TrustServiceStatusList");
+		document.appendChild(containerElement);
+		XMLSignContext signContext = new DOMSignContext(privateKey,
+				containerElement);
+		signContext.putNamespacePrefix(XMLSignature.XMLNS, "ds");
+
+		/*
+		 * The reference to the TSL is already digested while streaming.
+		 */
+		DigestMethod digestMethod = signatureFactory.newDigestMethod(
+				DigestMethod.SHA256, null);
+		Reference reference = signatureFactory.newReference("#" + tslId,
+				digestMethod, createEnvelopedTransforms(signatureFactory),
+				null, null, digestValue);
+
+		XMLSignature xmlSignature = createXMLSignature(signatureFactory,
+				signatureMethod, document, certificate, reference);
+		xmlSignature.sign(signContext);
+		return (Element) containerElement.getFirstChild();
+	}
+
+	private List<Transform> createEnvelopedTransforms(
+			XMLSignatureFactory signatureFactory)
+			throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
 		List<Transform> transforms = new LinkedList<Transform>();
 		transforms.add(signatureFactory.newTransform(Transform.ENVELOPED,
 				(TransformParameterSpec) null));
@@ -779,24 +1539,24 @@ public class TrustServiceList {
 				.newTransform(CanonicalizationMethod.EXCLUSIVE,
 						(TransformParameterSpec) null);
 		transforms.add(exclusiveTransform);
+		return transforms;
+	}
 
-		Reference reference = signatureFactory.newReference("#" + tslId,
-				digestMethod, transforms, null, null);
-		references.add(reference);
+	private XMLSignature createXMLSignature(
+			XMLSignatureFactory signatureFactory, String signatureMethodUri,
+			Document document, X509Certificate certificate,
+			Reference tslReference)
+			throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+		List<Reference> references = new LinkedList<Reference>();
+		references.add(tslReference);
 
 		String signatureId = "xmldsig-" + UUID.randomUUID().toString();
 		List<XMLObject> objects = new LinkedList<XMLObject>();
-		addXadesBes(signatureFactory, this.tslDocument, signatureId,
-				certificate, references, objects);
+		addXadesBes(signatureFactory, document, signatureId, certificate,
+				references, objects);
 
-		SignatureMethod signatureMethod;
-		if (isJava6u18OrAbove()) {
-			signatureMethod = signatureFactory.newSignatureMethod(
-					"http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", null);
-		} else {
-			signatureMethod = signatureFactory.newSignatureMethod(
-					SignatureMethod.RSA_SHA1, null);
-		}
+		SignatureMethod signatureMethod = signatureFactory.newSignatureMethod(
+				signatureMethodUri, null);
 		CanonicalizationMethod canonicalizationMethod = signatureFactory
 				.newCanonicalizationMethod(CanonicalizationMethod.EXCLUSIVE,
 						(C14NMethodParameterSpec) null);
@@ -814,58 +1574,23 @@ public class TrustServiceList {
 		X509Data x509Data = keyInfoFactory.newX509Data(x509DataObjects);
 		keyInfoContent.add(x509Data);
 
-		KeyValue keyValue;
 		try {
-			keyValue = keyInfoFactory.newKeyValue(certificate.getPublicKey());
+			KeyValue keyValue = keyInfoFactory.newKeyValue(certificate
+					.getPublicKey());
+			keyInfoContent.add(keyValue);
 		} catch (KeyException e) {
-			throw new RuntimeException("key exception: " + e.getMessage(), e);
+			/*
+			 * Not every provider has a KeyValue encoding for EC keys. The
+			 * X509Data already carries the key.
+			 */
+			LOG.debug("no ds:KeyValue: " + e.getMessage());
 		}
-		keyInfoContent.add(keyValue);
 
 		KeyInfo keyInfo = keyInfoFactory.newKeyInfo(keyInfoContent);
 
 		String signatureValueId = signatureId + "-signature-value";
-		XMLSignature xmlSignature = signatureFactory.newXMLSignature(
-				signedInfo, keyInfo, objects, signatureId, signatureValueId);
-		xmlSignature.sign(signContext);
-	}
-
-	private boolean isJava6u18OrAbove() {
-		String javaVersion = System.getProperty("java.version");
-		String javaVmVersion = System.getProperty("java.vm.version");
-		LOG.debug("java version: " + javaVersion);
-		LOG.debug("java vm version: " + javaVmVersion);
-		if (false == SystemUtils.isJavaVersionAtLeast(160)) {
-			// 1.5- here
-			return false;
-		}
-		// 1.6+ here
-		if (false == javaVersion.startsWith("1.6.0")) {
-			// 1.7+ here
-			return true;
-		}
-		// 1.6 here
-		String updateVersion = javaVersion.substring("1.6.0_".length());
-		LOG.debug("update version: " + updateVersion);
-		if (-1 != updateVersion.indexOf("-")) {
-			updateVersion = updateVersion.substring(0,
-					updateVersion.indexOf("-"));
-		}
-		try {
-			Integer updateVersionNumber = Integer.parseInt(updateVersion);
-			LOG.debug("update version number: " + updateVersionNumber);
-			if (updateVersionNumber < 18) {
-				/*
-				 * Only from Java 6u18 we have the RSA-SHA256 XML signature algo
-				 * available.
-				 */
-				return false;
-			}
-			return true;
-		} catch (NumberFormatException e) {
-			// let's give it a try in this case
-			return true;
-		}
+		return signatureFactory.newXMLSignature(signedInfo, keyInfo, objects,
+				signatureId, signatureValueId);
 	}
 
 	public void addXadesBes(XMLSignatureFactory signatureFactory,
@@ -873,6 +1598,7 @@ public class TrustServiceList {
 			X509Certificate signingCertificate, List<Reference> references,
 			List<XMLObject> objects) throws NoSuchAlgorithmException,
 			InvalidAlgorithmParameterException {
+		checkNotFrozen();
 		LOG.debug("preSign");
 
 		// QualifyingProperties
@@ -959,6 +1685,245 @@ public class TrustServiceList {
 		references.add(reference);
 	}
 
+	/**
+	 * Upgrades the XAdES-BES signature to XAdES-T by adding a signature
+	 * time-stamp. Use {@link SignatureTimeStamper} to time-stamp several
+	 * signed lists in one batch.
+	 * 
+	 * @param timeStampService
+	 * @throws IOException
+	 */
+	public void addXadesT(TimeStampService timeStampService)
+			throws IOException {
+		checkNotFrozen();
+		SignatureTimeStamper signatureTimeStamper = new SignatureTimeStamper(
+				timeStampService);
+		signatureTimeStamper.add(this);
+		signatureTimeStamper.timeStamp();
+	}
+
+	/**
+	 * Gives back the SHA-256 digest of the canonicalized ds:SignatureValue
+	 * element, which is the message imprint of the XAdES SignatureTimeStamp.
+	 * 
+	 * @return
+	 */
+	byte[] getSignatureTimeStampDigest() {
+		Element signatureElement = (Element) getSignatureNode();
+		if (null == signatureElement) {
+			throw new IllegalStateException("no ds:Signature element present");
+		}
+		Element signatureValueElement = DomNavigator.getChildElement(
+				signatureElement, XMLSignature.XMLNS, "SignatureValue");
+		byte[] signatureValueData = canonicalize(signatureValueElement);
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			return messageDigest.digest(signatureValueData);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Adds the given time-stamp token as XAdES SignatureTimeStamp unsigned
+	 * signature property.
+	 * 
+	 * @param timeStampToken
+	 */
+	void addSignatureTimeStamp(byte[] timeStampToken) {
+		Element signatureElement = (Element) getSignatureNode();
+		Element qualifyingPropertiesElement = DomNavigator
+				.getQualifyingPropertiesElement(signatureElement);
+		if (null == qualifyingPropertiesElement) {
+			throw new IllegalStateException(
+					"no XAdES QualifyingProperties present");
+		}
+		String xadesPrefix = qualifyingPropertiesElement.getPrefix();
+		Element unsignedPropertiesElement = DomNavigator.getChildElement(
+				qualifyingPropertiesElement, XADES_NAMESPACE,
+				"UnsignedProperties");
+		if (null == unsignedPropertiesElement) {
+			unsignedPropertiesElement = this.tslDocument.createElementNS(
+					XADES_NAMESPACE,
+					qualifiedName(xadesPrefix, "UnsignedProperties"));
+			qualifyingPropertiesElement
+					.appendChild(unsignedPropertiesElement);
+		}
+		Element unsignedSignaturePropertiesElement = DomNavigator
+				.getChildElement(unsignedPropertiesElement, XADES_NAMESPACE,
+						"UnsignedSignatureProperties");
+		if (null == unsignedSignaturePropertiesElement) {
+			unsignedSignaturePropertiesElement = this.tslDocument
+					.createElementNS(XADES_NAMESPACE, qualifiedName(
+							xadesPrefix, "UnsignedSignatureProperties"));
+			unsignedPropertiesElement
+					.appendChild(unsignedSignaturePropertiesElement);
+		}
+
+		Element signatureTimeStampElement = this.tslDocument.createElementNS(
+				XADES_NAMESPACE,
+				qualifiedName(xadesPrefix, "SignatureTimeStamp"));
+		signatureTimeStampElement.setAttributeNS(null, "Id",
+				signatureElement.getAttribute("Id") + "-timestamp");
+		unsignedSignaturePropertiesElement
+				.appendChild(signatureTimeStampElement);
+
+		Element canonicalizationMethodElement = this.tslDocument
+				.createElementNS(XMLSignature.XMLNS, qualifiedName(
+						signatureElement.getPrefix(), "CanonicalizationMethod"));
+		canonicalizationMethodElement.setAttributeNS(null, "Algorithm",
+				CanonicalizationMethod.EXCLUSIVE);
+		signatureTimeStampElement.appendChild(canonicalizationMethodElement);
+
+		Element encapsulatedTimeStampElement = this.tslDocument
+				.createElementNS(XADES_NAMESPACE,
+						qualifiedName(xadesPrefix, "EncapsulatedTimeStamp"));
+		encapsulatedTimeStampElement.setTextContent(new String(Base64
+				.encodeBase64(timeStampToken)));
+		signatureTimeStampElement.appendChild(encapsulatedTimeStampElement);
+
+		setChanged();
+	}
+
+	/**
+	 * Sets the certificates of the time-stamp authorities that are trusted to
+	 * time-stamp the XAdES signature. Time-stamp tokens not signed by one of
+	 * these TSAs are not accepted. Without trusted TSAs, the default, the
+	 * time-stamp is not verified and reported as absent.
+	 * 
+	 * @param trustedTimeStampAuthorities
+	 */
+	public synchronized void setTrustedTimeStampAuthorities(
+			Collection<X509Certificate> trustedTimeStampAuthorities) {
+		checkNotFrozen();
+		this.trustedTimeStampAuthorities.clear();
+		this.trustedTimeStampAuthorities.addAll(trustedTimeStampAuthorities);
+		this.verificationReport = null;
+	}
+
+	public List<X509Certificate> getTrustedTimeStampAuthorities() {
+		return Collections.unmodifiableList(this.trustedTimeStampAuthorities);
+	}
+
+	/**
+	 * Gives back the time of the XAdES signature time-stamp, or
+	 * <code>null</code> if the signature carries no time-stamp that covers the
+	 * signature value and has been signed by a trusted TSA. Always
+	 * <code>null</code> if no trusted TSAs have been set.
+	 * 
+	 * @return
+	 * @see #setTrustedTimeStampAuthorities(Collection)
+	 */
+	public synchronized Date getSignatureTimeStamp() {
+		if (null == this.tslDocument) {
+			return null;
+		}
+		if (null != this.verificationReport
+				&& this.verificationReport.isValid()) {
+			return this.verificationReport.getSignatureTimeStamp();
+		}
+		try {
+			return findSignatureTimeStamp();
+		} catch (RuntimeException e) {
+			LOG.debug("signature time-stamp error: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private Date findSignatureTimeStamp() {
+		Element signatureElement = (Element) getSignatureNode();
+		if (null == signatureElement) {
+			return null;
+		}
+		Element qualifyingPropertiesElement = DomNavigator
+				.getQualifyingPropertiesElement(signatureElement);
+		if (null == qualifyingPropertiesElement) {
+			return null;
+		}
+		Element encapsulatedTimeStampElement = DomNavigator.getElement(
+				qualifyingPropertiesElement, XADES_NAMESPACE,
+				"UnsignedProperties", "UnsignedSignatureProperties",
+				"SignatureTimeStamp", "EncapsulatedTimeStamp");
+		if (null == encapsulatedTimeStampElement) {
+			return null;
+		}
+		byte[] encodedTimeStampToken = Base64
+				.decodeBase64(encapsulatedTimeStampElement.getTextContent()
+						.getBytes());
+		TimeStampToken timeStampToken;
+		try {
+			timeStampToken = new TimeStampToken(new CMSSignedData(
+					encodedTimeStampToken));
+		} catch (Exception e) {
+			throw new RuntimeException("time-stamp token error: "
+					+ e.getMessage(), e);
+		}
+		if (false == TSPAlgorithms.SHA256.equals(timeStampToken
+				.getTimeStampInfo().getMessageImprintAlgOID())) {
+			throw new RuntimeException(
+					"unsupported time-stamp message imprint algorithm: "
+							+ timeStampToken.getTimeStampInfo()
+									.getMessageImprintAlgOID());
+		}
+		byte[] messageImprint = timeStampToken.getTimeStampInfo()
+				.getMessageImprintDigest();
+		if (false == Arrays.equals(getSignatureTimeStampDigest(),
+				messageImprint)) {
+			throw new RuntimeException(
+					"time-stamp does not cover the signature value");
+		}
+		if (this.trustedTimeStampAuthorities.isEmpty()) {
+			/*
+			 * Without trusted TSAs the time-stamp cannot be verified, but
+			 * that does not make the signature itself invalid.
+			 */
+			LOG.debug("no trusted TSAs, time-stamp not verified");
+			return null;
+		}
+		verifyTimeStampToken(timeStampToken);
+		return timeStampToken.getTimeStampInfo().getGenTime();
+	}
+
+	private void verifyTimeStampToken(TimeStampToken timeStampToken) {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+		for (X509Certificate trustedTimeStampAuthority : this.trustedTimeStampAuthorities) {
+			try {
+				/*
+				 * Also checks the ESS certificate identifier, so a token of
+				 * another TSA does not validate.
+				 */
+				timeStampToken.validate(trustedTimeStampAuthority,
+						BouncyCastleProvider.PROVIDER_NAME);
+				return;
+			} catch (Exception e) {
+				LOG.debug("time-stamp not signed by "
+						+ trustedTimeStampAuthority.getSubjectX500Principal()
+						+ ": " + e.getMessage());
+			}
+		}
+		throw new RuntimeException("time-stamp not signed by a trusted TSA");
+	}
+
+	private static String qualifiedName(String prefix, String localName) {
+		if (null == prefix) {
+			return localName;
+		}
+		return prefix + ":" + localName;
+	}
+
+	private static byte[] canonicalize(Node node) {
+		Init.init();
+		try {
+			Canonicalizer canonicalizer = Canonicalizer
+					.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+			return canonicalizer.canonicalizeSubtree(node);
+		} catch (Exception e) {
+			throw new RuntimeException("C14N error: " + e.getMessage(), e);
+		}
+	}
+
 	private Node marshallQualifyingProperties(Document document,
 			QualifyingPropertiesType qualifyingProperties) {
 		Node marshallNode = document.createElement("marshall-node");
@@ -978,29 +1943,39 @@ public class TrustServiceList {
 		return qualifyingPropertiesNode;
 	}
 
+	/**
+	 * Marshalls the JAXB model to DOM, unless the DOM is still up to date.
+	 */
+	private void marshallUnsigned() throws JAXBException,
+			ParserConfigurationException {
+		if (null != this.tslDocument) {
+			return;
+		}
+		marshall();
+		/*
+		 * Only remove existing XML signature from new (or changed) DOM
+		 * documents.
+		 */
+		Node signatureNode = getSignatureNode();
+		if (null != signatureNode) {
+			signatureNode.getParentNode().removeChild(signatureNode);
+		}
+	}
+
 	private void clearChanged() {
 		this.changed = false;
 	}
 
 	public void save() throws IOException {
+		checkNotFrozen();
 		if (null == this.tslFile) {
 			throw new IllegalStateException("no TSL file set");
 		}
 		LOG.debug("save to: " + this.tslFile.getAbsolutePath());
-		if (null == this.tslDocument) {
-			try {
-				marshall();
-			} catch (Exception e) {
-				throw new IOException("marshall error: " + e.getMessage(), e);
-			}
-			/*
-			 * Only remove existing XML signature from new (or changed) DOM
-			 * documents.
-			 */
-			Node signatureNode = getSignatureNode();
-			if (null != signatureNode) {
-				signatureNode.getParentNode().removeChild(signatureNode);
-			}
+		try {
+			marshallUnsigned();
+		} catch (Exception e) {
+			throw new IOException("marshall error: " + e.getMessage(), e);
 		}
 		try {
 			toFile(this.tslFile);
@@ -1012,6 +1987,7 @@ public class TrustServiceList {
 	}
 
 	public void saveAs(File tslFile) throws IOException {
+		checkNotFrozen();
 		this.tslFile = tslFile;
 		save();
 	}
@@ -1058,17 +2034,16 @@ public class TrustServiceList {
 		if (null == postalAddresses) {
 			return null;
 		}
-		for (PostalAddressType postalAddress : postalAddresses
-				.getPostalAddress()) {
-			if (postalAddress.getLang().toLowerCase()
-					.equals(locale.getLanguage())) {
-				return postalAddress;
-			}
+		PostalAddressType postalAddress = LanguageIndex.getPostalAddress(
+				postalAddresses, locale);
+		if (this.frozen) {
+			return JaxbCopies.copy(postalAddress);
 		}
-		return null;
+		return postalAddress;
 	}
 
 	public void addSchemeType(String schemeType, Locale locale) {
+		checkNotFrozen();
 		NonEmptyMultiLangURIType uri = this.objectFactory
 				.createNonEmptyMultiLangURIType();
 		uri.setLang(locale.getLanguage());
@@ -1100,10 +2075,15 @@ public class TrustServiceList {
 			return null;
 		}
 		List<NonEmptyMultiLangURIType> schemeTypes = schemeTypeList.getURI();
+		if (this.frozen) {
+			return Collections.unmodifiableList(JaxbCopies.copy(
+					schemeTypeList).getURI());
+		}
 		return schemeTypes;
 	}
 
 	public void setSchemeTerritory(String schemeTerritory) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		schemeInformation.setSchemeTerritory(schemeTerritory);
 	}
@@ -1122,6 +2102,7 @@ public class TrustServiceList {
 	}
 
 	public void addLegalNotice(String legalNotice, Locale locale) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		PolicyOrLegalnoticeType policyOrLegalnotice = schemeInformation
 				.getPolicyOrLegalNotice();
@@ -1171,6 +2152,7 @@ public class TrustServiceList {
 	}
 
 	public void setHistoricalInformationPeriod(int historicalInformationPeriod) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		schemeInformation.setHistoricalInformationPeriod(BigInteger
 				.valueOf(historicalInformationPeriod));
@@ -1194,6 +2176,7 @@ public class TrustServiceList {
 	}
 
 	public void setListIssueDateTime(DateTime listIssueDateTime) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		GregorianCalendar listIssueCalendar = listIssueDateTime
 				.toGregorianCalendar();
@@ -1223,6 +2206,7 @@ public class TrustServiceList {
 	}
 
 	public void setNextUpdate(DateTime nextUpdateDateTime) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		GregorianCalendar nextUpdateCalendar = nextUpdateDateTime
 				.toGregorianCalendar();
@@ -1238,6 +2222,7 @@ public class TrustServiceList {
 	}
 
 	public void setTSLSequenceNumber(BigInteger sequenceNumber) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		schemeInformation.setTSLSequenceNumber(sequenceNumber);
 	}
@@ -1264,7 +2249,9 @@ public class TrustServiceList {
 
 	public void addTrustServiceProvider(
 			TrustServiceProvider trustServiceProvider) {
+		checkNotFrozen();
 		TrustStatusListType trustStatusList = getTrustStatusList();
+		List<TrustServiceProvider> trustServiceProviders = getTrustServiceProviders();
 		TrustServiceProviderListType trustServiceProviderList = trustStatusList
 				.getTrustServiceProviderList();
 		if (null == trustServiceProviderList) {
@@ -1276,8 +2263,18 @@ public class TrustServiceList {
 		List<TSPType> tspList = trustServiceProviderList
 				.getTrustServiceProvider();
 		tspList.add(trustServiceProvider.getTSP());
+		trustServiceProviders.add(trustServiceProvider);
+		/*
+		 * Edits of the trust service provider and of its trust services are
+		 * reported back, also those made after attaching it.
+		 */
+		trustServiceProvider.setTrustServiceList(this);
 		// reset Java model cache
-		this.trustServiceProviders = null;
+		this.trustServiceIndex = null;
+		this.serviceStatusTimeline = null;
+		this.trustAnchors = null;
+		this.attributeIndex = null;
+		this.policyIndex = null;
 	}
 
 	public void humanReadableExport(File pdfExportFile) {
@@ -1285,6 +2282,7 @@ public class TrustServiceList {
 	}
 
 	public void addDistributionPoint(String distributionPointUri) {
+		checkNotFrozen();
 		TSLSchemeInformationType schemeInformation = getSchemeInformation();
 		NonEmptyURIListType distributionPoints = schemeInformation
 				.getDistributionPoints();
@@ -1303,7 +2301,7 @@ public class TrustServiceList {
 		
 	}
 	
-	public String getSha1Fingerprint() {
+	public synchronized String getSha1Fingerprint() {
 		String fingerprint = DigestUtils.shaHex(toByteArray());
 		return fingerprint;
 	}
@@ -1316,6 +2314,11 @@ public class TrustServiceList {
 				throw new RuntimeException(e);
 			}
 		}
+		return toDocumentByteArray();
+	}
+
+	private byte[] toDocumentByteArray()
+			throws TransformerFactoryConfigurationError {
 		Source source = new DOMSource(this.tslDocument);
 		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
 		Result result = new StreamResult(byteArrayOutputStream);
@@ -1337,7 +2340,7 @@ public class TrustServiceList {
 		return byteArrayOutputStream.toByteArray();
 	}
 
-	public String getSha256Fingerprint() {
+	public synchronized String getSha256Fingerprint() {
 		String fingerprint = DigestUtils.sha256Hex(toByteArray());
 		return fingerprint;
 	}
@@ -1362,12 +2365,20 @@ public class TrustServiceList {
 		if (null == otherTSLpointer) {
 			return null;
 		}
+		if (this.frozen) {
+			List<OtherTSLPointerType> copies = new LinkedList<OtherTSLPointerType>();
+			for (OtherTSLPointerType otherTSLPointer : otherTSLpointer) {
+				copies.add(JaxbCopies.copy(otherTSLPointer));
+			}
+			return Collections.unmodifiableList(copies);
+		}
 		return otherTSLpointer;
 	}
 
 	 public void addOtherTSLPointer(String location, String mimeType,
              String tslType, String schemeTerritory, String schemeOperatorName,
              String schemeTypeCommunityRuleUri, Locale schemeTypeCommunityRuleUriLocale) {
+		checkNotFrozen();
      addOtherTSLPointer(location, mimeType, tslType, schemeTerritory,
                      schemeOperatorName, schemeTypeCommunityRuleUri, schemeTypeCommunityRuleUriLocale, null);
 }
@@ -1377,6 +2388,7 @@ public class TrustServiceList {
 	             String schemeTypeCommunityRuleUri,
 	             Locale schemeTypeCommunityRuleUriLocale,
 	             X509Certificate digitalIdentityCertificate) {
+		checkNotFrozen();
 	     TSLSchemeInformationType schemeInformation = getSchemeInformation();
 	     OtherTSLPointersType otherTSLPointers = schemeInformation
 	                     .getPointersToOtherTSL();
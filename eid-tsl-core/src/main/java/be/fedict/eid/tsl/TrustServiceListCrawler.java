@@ -0,0 +1,208 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.fedict.eid.tsl.ListOfListsCrawlReport.Entry;
+import be.fedict.eid.tsl.jaxb.tsl.OtherTSLPointerType;
+
+/**
+ * Fetches the member state trust service lists a list of lists points to.
+ * The lists are fetched and parsed concurrently on a bounded thread pool, so
+ * a crawl takes about as long as the slowest single fetch. Fetches still
+ * running at the crawl deadline are cancelled and reported as failed.
+ * 
+ * Only the XML pointers are followed. The fetched lists are not verified,
+ * use {@link ListOfListsVerifier} for this. Use a
+ * {@link TrustServiceListFetchCache} as transport to avoid downloading and
+ * parsing unchanged lists on every crawl.
+ */
+public class TrustServiceListCrawler {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceListCrawler.class);
+
+	private static final String PDF_MIME_TYPE = "application/pdf";
+
+	private final TrustServiceListTransport transport;
+
+	private final int threads;
+
+	private int timeout;
+
+	private long deadline;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param transport
+	 *            the transport used to fetch the lists.
+	 * @param threads
+	 *            the maximum number of concurrent fetches.
+	 */
+	public TrustServiceListCrawler(TrustServiceListTransport transport,
+			int threads) {
+		if (null == transport) {
+			throw new IllegalArgumentException();
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads should be positive");
+		}
+		this.transport = transport;
+		this.threads = threads;
+		this.timeout = 30 * 1000;
+		this.deadline = 5 * 60 * 1000;
+	}
+
+	/**
+	 * Sets the connect and read timeout per fetch, in milliseconds.
+	 * 
+	 * @param timeout
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the maximum duration of a crawl, in milliseconds. The connect and
+	 * read timeout doesn't bound a server that keeps trickling data.
+	 * 
+	 * @param deadline
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Fetches all member state trust service lists of the given list of lists.
+	 * 
+	 * @param listOfLists
+	 * @return the crawl report, with an entry per distinct XML pointer.
+	 */
+	public ListOfListsCrawlReport crawl(TrustServiceList listOfLists) {
+		long start = System.nanoTime();
+		Map<String, String> locations = new LinkedHashMap<String, String>();
+		List<OtherTSLPointerType> otherTSLPointers = listOfLists
+				.getOtherTSLPointers();
+		if (null != otherTSLPointers) {
+			for (OtherTSLPointerType otherTSLPointer : otherTSLPointers) {
+				String location = otherTSLPointer.getTSLLocation();
+				if (null == location) {
+					continue;
+				}
+				if (PDF_MIME_TYPE.equals(TrustServiceListUtils
+						.getMimeType(otherTSLPointer))) {
+					continue;
+				}
+				location = location.trim();
+				if (false == locations.containsKey(location)) {
+					locations.put(location, TrustServiceListUtils
+							.getSchemeTerritory(otherTSLPointer));
+				}
+			}
+		}
+		List<Entry> entries = new LinkedList<Entry>();
+		List<Future<Entry>> futures = new LinkedList<Future<Entry>>();
+		ExecutorService executorService = Executors.newFixedThreadPool(Math
+				.max(1, Math.min(this.threads, locations.size())));
+		try {
+			for (Map.Entry<String, String> location : locations.entrySet()) {
+				futures.add(executorService.submit(new FetchTask(location
+						.getValue(), location.getKey())));
+			}
+			List<String> territories = new ArrayList<String>(
+					locations.values());
+			List<String> locationList = new ArrayList<String>(
+					locations.keySet());
+			long deadlineNanos = start + this.deadline * 1000000;
+			int idx = 0;
+			for (Future<Entry> future : futures) {
+				try {
+					entries.add(future.get(
+							Math.max(0, deadlineNanos - System.nanoTime()),
+							TimeUnit.NANOSECONDS));
+				} catch (TimeoutException e) {
+					future.cancel(true);
+					LOG.error("fetch timeout for " + locationList.get(idx));
+					entries.add(new Entry(territories.get(idx), locationList
+							.get(idx), null, System.nanoTime() - start,
+							"timeout"));
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					LOG.error("fetch error for " + locationList.get(idx)
+							+ ": " + cause.getMessage(), cause);
+					entries.add(new Entry(territories.get(idx), locationList
+							.get(idx), null, 0, cause.getMessage()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("crawl interrupted", e);
+				}
+				idx++;
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+		long duration = System.nanoTime() - start;
+		LOG.debug("fetched " + entries.size() + " lists in " + duration
+				/ 1000000 + " ms");
+		return new ListOfListsCrawlReport(entries, duration);
+	}
+
+	private class FetchTask implements Callable<Entry> {
+
+		private final String territory;
+
+		private final String location;
+
+		public FetchTask(String territory, String location) {
+			this.territory = territory;
+			this.location = location;
+		}
+
+		public Entry call() throws Exception {
+			long start = System.nanoTime();
+			/*
+			 * Lets a caching transport skip parsing of unchanged lists.
+			 */
+			TrustServiceList trustServiceList = TrustServiceListCrawler.this.transport
+					.getTrustServiceList(this.location,
+							TrustServiceListCrawler.this.timeout);
+			long duration = System.nanoTime() - start;
+			LOG.debug("fetched " + this.location + " in " + duration
+					/ 1000000 + " ms");
+			return new Entry(this.territory, this.location, trustServiceList,
+					duration, null);
+		}
+	}
+}
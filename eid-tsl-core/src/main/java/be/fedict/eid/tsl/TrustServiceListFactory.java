@@ -19,7 +19,12 @@
 package be.fedict.eid.tsl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 
 import javax.xml.bind.JAXBContext;
@@ -30,6 +35,10 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
@@ -66,13 +75,53 @@ public class TrustServiceListFactory {
 		if (null == tslFile) {
 			throw new IllegalArgumentException();
 		}
+		InputStream inputStream = new FileInputStream(tslFile);
+		try {
+			return newInstance(inputStream, tslFile);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Creates a new trust service list from the given input stream, e.g. a
+	 * download. The stream is read completely, but not closed.
+	 * 
+	 * @param tslInputStream
+	 * @return
+	 * @throws IOException
+	 */
+	public static TrustServiceList newInstance(InputStream tslInputStream)
+			throws IOException {
+		if (null == tslInputStream) {
+			throw new IllegalArgumentException();
+		}
+		return newInstance(tslInputStream, null);
+	}
+
+	private static TrustServiceList newInstance(InputStream tslInputStream,
+			File tslFile) throws IOException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 error: " + e.getMessage(), e);
+		}
 		Document tslDocument;
+		InputStream inputStream = new DigestInputStream(tslInputStream,
+				messageDigest);
 		try {
-			tslDocument = parseDocument(tslFile);
+			tslDocument = parseDocument(inputStream, tslFile);
+			/*
+			 * Make sure the digest covers all bytes.
+			 */
+			IOUtils.copy(inputStream, new NullOutputStream());
 		} catch (Exception e) {
 			throw new IOException("DOM parse error: " + e.getMessage(), e);
 		}
 		TrustServiceList trustServiceList = newInstance(tslDocument, tslFile);
+		trustServiceList.setDocumentDigest(new String(Hex
+				.encodeHex(messageDigest.digest())));
 		return trustServiceList;
 	}
 
@@ -105,14 +154,24 @@ public class TrustServiceListFactory {
 		return newInstance(tslDocument, null);
 	}
 
-	private static Document parseDocument(File file)
+	private static Document parseDocument(InputStream inputStream, File file)
 			throws ParserConfigurationException, SAXException, IOException {
 		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
 				.newInstance();
 		documentBuilderFactory.setNamespaceAware(true);
 		DocumentBuilder documentBuilder = documentBuilderFactory
 				.newDocumentBuilder();
-		Document document = documentBuilder.parse(file);
+		/*
+		 * The parser closes the stream it reads from, while we still need it
+		 * to complete the digest.
+		 */
+		InputStream closeShieldInputStream = new CloseShieldInputStream(
+				inputStream);
+		if (null == file) {
+			return documentBuilder.parse(closeShieldInputStream);
+		}
+		Document document = documentBuilder.parse(closeShieldInputStream, file
+				.toURI().toString());
 		return document;
 	}
 
@@ -0,0 +1,316 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Transport that wraps another transport with conditional fetches. The ETag
+ * and Last-Modified validators are kept per TSL location, while the bodies go
+ * into an on-disk store keyed by their SHA-256 digest. An unchanged list thus
+ * costs a single round-trip without body.
+ * 
+ * Unchanged lists are not parsed again either: the previously parsed trust
+ * service list instance is handed out by
+ * {@link #getTrustServiceList(String, int)}. These instances are frozen, as
+ * they are shared between all callers.
+ * 
+ * Stored bodies that no location refers to any more are deleted. The store
+ * directory can be shared between runs, but not between concurrent cache
+ * instances.
+ */
+public class TrustServiceListFetchCache implements TrustServiceListTransport {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceListFetchCache.class);
+
+	private static final String INDEX_FILE_NAME = "index.properties";
+
+	private final TrustServiceListTransport transport;
+
+	private final File directory;
+
+	private final Properties index;
+
+	private final Map<String, ParsedList> parsedLists;
+
+	private static class ParsedList {
+
+		private final String digest;
+
+		private final TrustServiceList trustServiceList;
+
+		public ParsedList(String digest, TrustServiceList trustServiceList) {
+			this.digest = digest;
+			this.trustServiceList = trustServiceList;
+		}
+	}
+
+	/**
+	 * Creates a cache that fetches via {@link UrlTrustServiceListTransport}.
+	 * 
+	 * @param directory
+	 *            the store directory, created if not present.
+	 * @throws IOException
+	 */
+	public TrustServiceListFetchCache(File directory) throws IOException {
+		this(directory, new UrlTrustServiceListTransport());
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param directory
+	 *            the store directory, created if not present.
+	 * @param transport
+	 *            the transport that performs the actual fetches.
+	 * @throws IOException
+	 */
+	public TrustServiceListFetchCache(File directory,
+			TrustServiceListTransport transport) throws IOException {
+		if (null == transport) {
+			throw new IllegalArgumentException();
+		}
+		FileUtils.forceMkdir(directory);
+		this.transport = transport;
+		this.directory = directory;
+		this.index = new Properties();
+		File indexFile = new File(directory, INDEX_FILE_NAME);
+		if (indexFile.exists()) {
+			InputStream inputStream = new FileInputStream(indexFile);
+			try {
+				this.index.load(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		}
+		this.parsedLists = new HashMap<String, ParsedList>();
+		removeOrphans();
+	}
+
+	public InputStream open(String location, int timeout) throws IOException {
+		return new FileInputStream(getFile(fetch(location, timeout)));
+	}
+
+	/**
+	 * Fetches via the cache, so the given validators are compared with those
+	 * of the stored content.
+	 */
+	public TrustServiceListResponse open(String location, String etag,
+			String lastModified, int timeout) throws IOException {
+		String digest = fetch(location, timeout);
+		String storedEtag;
+		String storedLastModified;
+		synchronized (this.index) {
+			storedEtag = this.index.getProperty(location + ".etag");
+			storedLastModified = this.index.getProperty(location
+					+ ".lastModified");
+		}
+		if ((null != etag && etag.equals(storedEtag))
+				|| (null != lastModified && lastModified
+						.equals(storedLastModified))) {
+			return TrustServiceListResponse.notModified();
+		}
+		return new TrustServiceListResponse(new FileInputStream(
+				getFile(digest)), storedEtag, storedLastModified);
+	}
+
+	/**
+	 * Gives back the trust service list at the given location. If the content
+	 * did not change since the previous call, the same instance is returned.
+	 * The list is frozen, use {@link TrustServiceList#copy()} to edit it.
+	 * 
+	 * @param location
+	 * @param timeout
+	 *            the connect and read timeout in milliseconds.
+	 * @return
+	 * @throws IOException
+	 */
+	public TrustServiceList getTrustServiceList(String location, int timeout)
+			throws IOException {
+		String digest = fetch(location, timeout);
+		synchronized (this.parsedLists) {
+			ParsedList parsedList = this.parsedLists.get(location);
+			if (null != parsedList && parsedList.digest.equals(digest)) {
+				return parsedList.trustServiceList;
+			}
+		}
+		TrustServiceList trustServiceList = AbstractTrustServiceListTransport
+				.parse(new FileInputStream(getFile(digest))).freeze();
+		synchronized (this.parsedLists) {
+			this.parsedLists.put(location, new ParsedList(digest,
+					trustServiceList));
+		}
+		return trustServiceList;
+	}
+
+	/**
+	 * Fetches the given location, unless not modified, and gives back the
+	 * SHA-256 digest of its current content.
+	 * 
+	 * @param location
+	 * @param timeout
+	 * @return the hex encoded SHA-256 digest.
+	 * @throws IOException
+	 */
+	public String fetch(String location, int timeout) throws IOException {
+		String digest;
+		String etag;
+		String lastModified;
+		synchronized (this.index) {
+			digest = this.index.getProperty(location + ".digest");
+			etag = this.index.getProperty(location + ".etag");
+			lastModified = this.index.getProperty(location + ".lastModified");
+		}
+		if (null != digest && false == getFile(digest).exists()) {
+			LOG.warn("missing stored content for " + location);
+			digest = null;
+		}
+
+		if (null == digest) {
+			etag = null;
+			lastModified = null;
+		}
+
+		TrustServiceListResponse response = this.transport.open(location,
+				etag, lastModified, timeout);
+		if (response.isNotModified()) {
+			if (null == digest) {
+				throw new IOException("unexpected not modified for "
+						+ location);
+			}
+			LOG.debug("not modified: " + location);
+			return digest;
+		}
+		InputStream inputStream = response.getInputStream();
+		try {
+			digest = store(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		LOG.debug("fetched " + location + ": " + digest);
+
+		synchronized (this.index) {
+			String previousDigest = (String) this.index.setProperty(location
+					+ ".digest", digest);
+			setProperty(location + ".etag", response.getETag());
+			setProperty(location + ".lastModified", response.getLastModified());
+			File indexFile = new File(this.directory, INDEX_FILE_NAME);
+			OutputStream outputStream = new FileOutputStream(indexFile);
+			try {
+				this.index.store(outputStream, "TSL fetch cache");
+			} finally {
+				outputStream.close();
+			}
+			if (null != previousDigest && false == isReferenced(previousDigest)) {
+				LOG.debug("removing unreferenced content: " + previousDigest);
+				FileUtils.deleteQuietly(getFile(previousDigest));
+			}
+		}
+		return digest;
+	}
+
+	private boolean isReferenced(String digest) {
+		for (Map.Entry<Object, Object> entry : this.index.entrySet()) {
+			if (((String) entry.getKey()).endsWith(".digest")
+					&& digest.equals(entry.getValue())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Deletes the stored bodies and temporary files left behind by a previous
+	 * run.
+	 */
+	private void removeOrphans() {
+		File[] files = this.directory.listFiles();
+		if (null == files) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith("fetch-") && name.endsWith(".tmp")) {
+				FileUtils.deleteQuietly(file);
+			} else if (name.endsWith(".xml")
+					&& false == isReferenced(name.substring(0,
+							name.length() - ".xml".length()))) {
+				LOG.debug("removing unreferenced content: " + name);
+				FileUtils.deleteQuietly(file);
+			}
+		}
+	}
+
+	private void setProperty(String key, String value) {
+		if (null == value) {
+			this.index.remove(key);
+		} else {
+			this.index.setProperty(key, value);
+		}
+	}
+
+	private String store(InputStream inputStream) throws IOException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 error: " + e.getMessage(), e);
+		}
+		File tmpFile = File.createTempFile("fetch-", ".tmp", this.directory);
+		try {
+			OutputStream outputStream = new DigestOutputStream(
+					new FileOutputStream(tmpFile), messageDigest);
+			try {
+				IOUtils.copy(inputStream, outputStream);
+			} finally {
+				outputStream.close();
+			}
+			String digest = new String(Hex.encodeHex(messageDigest.digest()));
+			File file = getFile(digest);
+			if (false == file.exists() && false == tmpFile.renameTo(file)) {
+				throw new IOException("could not store " + file);
+			}
+			return digest;
+		} finally {
+			FileUtils.deleteQuietly(tmpFile);
+		}
+	}
+
+	private File getFile(String digest) {
+		return new File(this.directory, digest + ".xml");
+	}
+}
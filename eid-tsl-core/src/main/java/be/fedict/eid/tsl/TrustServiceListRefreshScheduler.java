@@ -0,0 +1,313 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+
+/**
+ * Refreshes trust service lists as they are due for reissue. The next fetch
+ * of each list is planned at its own NextUpdate, plus a random jitter so that
+ * clients do not all hit the scheme operator at the same time. Failed
+ * fetches, and lists that were not reissued in time, are retried with
+ * exponential back-off.
+ * 
+ * A fetched list is only handed to the {@link RefreshListener} when its
+ * sequence number is greater than the one of the list already loaded. It
+ * replaces the loaded list only once the listener accepted it.
+ */
+public class TrustServiceListRefreshScheduler {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceListRefreshScheduler.class);
+
+	private final TrustServiceListTransport transport;
+
+	private final RefreshListener refreshListener;
+
+	private final ScheduledExecutorService executorService;
+
+	private final Map<String, TrustServiceList> trustServiceLists;
+
+	private final Random random;
+
+	private int timeout;
+
+	private long jitter;
+
+	private long minimumInterval;
+
+	private long initialBackoff;
+
+	private long maximumBackoff;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param transport
+	 *            the transport used to fetch the lists.
+	 * @param refreshListener
+	 * @param threads
+	 *            the maximum number of concurrent fetches.
+	 */
+	public TrustServiceListRefreshScheduler(
+			TrustServiceListTransport transport,
+			RefreshListener refreshListener, int threads) {
+		if (null == transport || null == refreshListener) {
+			throw new IllegalArgumentException();
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads should be positive");
+		}
+		this.transport = transport;
+		this.refreshListener = refreshListener;
+		this.executorService = Executors.newScheduledThreadPool(threads);
+		this.trustServiceLists = new HashMap<String, TrustServiceList>();
+		this.random = new Random();
+		this.timeout = 30 * 1000;
+		this.jitter = 15 * 60 * 1000;
+		this.minimumInterval = 60 * 1000;
+		this.initialBackoff = 60 * 1000;
+		this.maximumBackoff = 6 * 60 * 60 * 1000;
+	}
+
+	/**
+	 * Sets the connect and read timeout per fetch, in milliseconds.
+	 * 
+	 * @param timeout
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the maximum random delay added to each planned fetch, in
+	 * milliseconds.
+	 * 
+	 * @param jitter
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets the minimum time between two fetches of the same list, in
+	 * milliseconds.
+	 * 
+	 * @param minimumInterval
+	 */
+	public void setMinimumInterval(long minimumInterval) {
+		this.minimumInterval = minimumInterval;
+	}
+
+	/**
+	 * Sets the back-off after the first failure, doubled on each next
+	 * failure up to the maximum back-off, in milliseconds.
+	 * 
+	 * @param initialBackoff
+	 * @param maximumBackoff
+	 */
+	public void setBackoff(long initialBackoff, long maximumBackoff) {
+		this.initialBackoff = initialBackoff;
+		this.maximumBackoff = maximumBackoff;
+	}
+
+	/**
+	 * Starts refreshing the list at the given location, with a first fetch
+	 * right away.
+	 * 
+	 * @param location
+	 */
+	public void schedule(String location) {
+		schedule(location, null);
+	}
+
+	/**
+	 * Starts refreshing the list at the given location, of which the given
+	 * issue is already loaded. The first fetch is planned at its NextUpdate.
+	 * 
+	 * @param location
+	 * @param trustServiceList
+	 *            the loaded list, can be <code>null</code>.
+	 */
+	public void schedule(String location, TrustServiceList trustServiceList) {
+		long delay = 0;
+		if (null != trustServiceList) {
+			synchronized (this.trustServiceLists) {
+				this.trustServiceLists.put(location, trustServiceList);
+			}
+			delay = getDelay(trustServiceList);
+		}
+		schedule(new RefreshTask(location), delay);
+	}
+
+	/**
+	 * Gives back the most recent issue of the list at the given location, or
+	 * <code>null</code> if not yet loaded.
+	 * 
+	 * @param location
+	 * @return
+	 */
+	public TrustServiceList getTrustServiceList(String location) {
+		synchronized (this.trustServiceLists) {
+			return this.trustServiceLists.get(location);
+		}
+	}
+
+	/**
+	 * Stops all planned fetches.
+	 */
+	public void shutdown() {
+		this.executorService.shutdownNow();
+	}
+
+	private void schedule(RefreshTask refreshTask, long delay) {
+		if (this.executorService.isShutdown()) {
+			return;
+		}
+		LOG.debug("next fetch of " + refreshTask.location + " in " + delay
+				/ 1000 + " s");
+		this.executorService.schedule(refreshTask, delay,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private long getDelay(TrustServiceList trustServiceList) {
+		long delay = this.minimumInterval;
+		DateTime nextUpdate = trustServiceList.getNextUpdate();
+		if (null != nextUpdate) {
+			delay = Math.max(delay, nextUpdate.getMillis()
+					- System.currentTimeMillis());
+		}
+		return delay + getJitter();
+	}
+
+	private long getBackoff(int failures) {
+		long backoff = this.initialBackoff;
+		for (int idx = 1; idx < failures && backoff < this.maximumBackoff; idx++) {
+			backoff *= 2;
+		}
+		return Math.min(backoff, this.maximumBackoff) + getJitter();
+	}
+
+	private long getJitter() {
+		if (this.jitter <= 0) {
+			return 0;
+		}
+		return (long) (this.random.nextDouble() * this.jitter);
+	}
+
+	private class RefreshTask implements Runnable {
+
+		private final String location;
+
+		private int failures;
+
+		public RefreshTask(String location) {
+			this.location = location;
+		}
+
+		public void run() {
+			TrustServiceList loadedList = getTrustServiceList(this.location);
+			TrustServiceList fetchedList;
+			try {
+				fetchedList = TrustServiceListRefreshScheduler.this.transport
+						.getTrustServiceList(this.location,
+								TrustServiceListRefreshScheduler.this.timeout);
+			} catch (Exception e) {
+				this.failures++;
+				LOG.warn("fetch error for " + this.location + " (failure "
+						+ this.failures + "): " + e.getMessage());
+				try {
+					TrustServiceListRefreshScheduler.this.refreshListener
+							.failed(this.location, e);
+				} catch (RuntimeException listenerException) {
+					LOG.error("refresh listener error: "
+							+ listenerException.getMessage(), listenerException);
+				}
+				schedule(this, getBackoff(this.failures));
+				return;
+			}
+			if (null != loadedList
+					&& false == isNewer(fetchedList, loadedList)) {
+				LOG.debug("no newer issue of " + this.location);
+				DateTime nextUpdate = loadedList.getNextUpdate();
+				if (null != nextUpdate && nextUpdate.isBeforeNow()) {
+					/*
+					 * Overdue: the reissue will probably show up soon.
+					 */
+					this.failures++;
+					schedule(this, getBackoff(this.failures));
+				} else {
+					this.failures = 0;
+					schedule(this, getDelay(loadedList));
+				}
+				return;
+			}
+			boolean accepted;
+			try {
+				accepted = TrustServiceListRefreshScheduler.this.refreshListener
+						.accept(this.location, fetchedList);
+			} catch (RuntimeException e) {
+				LOG.error("refresh listener error: " + e.getMessage(), e);
+				accepted = false;
+			}
+			if (false == accepted) {
+				this.failures++;
+				LOG.warn("rejected issue of " + this.location + " (failure "
+						+ this.failures + ")");
+				schedule(this, getBackoff(this.failures));
+				return;
+			}
+			this.failures = 0;
+			synchronized (TrustServiceListRefreshScheduler.this.trustServiceLists) {
+				TrustServiceListRefreshScheduler.this.trustServiceLists.put(
+						this.location, fetchedList);
+			}
+			try {
+				TrustServiceListRefreshScheduler.this.refreshListener
+						.refreshed(this.location, fetchedList);
+			} catch (RuntimeException e) {
+				LOG.error("refresh listener error: " + e.getMessage(), e);
+			}
+			schedule(this, getDelay(fetchedList));
+		}
+	}
+
+	private static boolean isNewer(TrustServiceList fetchedList,
+			TrustServiceList loadedList) {
+		BigInteger fetchedSequenceNumber = fetchedList.getSequenceNumber();
+		BigInteger loadedSequenceNumber = loadedList.getSequenceNumber();
+		if (null == fetchedSequenceNumber) {
+			return false;
+		}
+		if (null == loadedSequenceNumber) {
+			return true;
+		}
+		return fetchedSequenceNumber.compareTo(loadedSequenceNumber) > 0;
+	}
+}
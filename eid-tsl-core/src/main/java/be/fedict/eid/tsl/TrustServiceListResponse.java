@@ -0,0 +1,85 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.eid.tsl;
+
+import java.io.InputStream;
+
+/**
+ * Response of a conditional trust service list fetch.
+ * 
+ * @see TrustServiceListTransport#open(String, String, String, int)
+ */
+public class TrustServiceListResponse {
+
+	private static final TrustServiceListResponse NOT_MODIFIED = new TrustServiceListResponse(
+			null, null, null);
+
+	private final InputStream inputStream;
+
+	private final String etag;
+
+	private final String lastModified;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param inputStream
+	 *            the TSL content.
+	 * @param etag
+	 *            the ETag validator, can be <code>null</code>.
+	 * @param lastModified
+	 *            the Last-Modified validator, can be <code>null</code>.
+	 */
+	public TrustServiceListResponse(InputStream inputStream, String etag,
+			String lastModified) {
+		this.inputStream = inputStream;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Gives back the response for a list that did not change since the
+	 * response carrying the given validators.
+	 * 
+	 * @return
+	 */
+	public static TrustServiceListResponse notModified() {
+		return NOT_MODIFIED;
+	}
+
+	public boolean isNotModified() {
+		return null == this.inputStream;
+	}
+
+	/**
+	 * @return the TSL content, or <code>null</code> if not modified.
+	 */
+	public InputStream getInputStream() {
+		return this.inputStream;
+	}
+
+	public String getETag() {
+		return this.etag;
+	}
+
+	public String getLastModified() {
+		return this.lastModified;
+	}
+}
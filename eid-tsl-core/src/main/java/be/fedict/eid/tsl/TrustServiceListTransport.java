@@ -0,0 +1,80 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Transport used by the {@link TrustServiceListCrawler} to retrieve trust
+ * service lists. Implementations must be thread-safe, as several lists are
+ * fetched concurrently.
+ * 
+ * Extend {@link AbstractTrustServiceListTransport} to only implement
+ * {@link #open(String, int)}.
+ */
+public interface TrustServiceListTransport {
+
+	/**
+	 * Opens the trust service list at the given location.
+	 * 
+	 * @param location
+	 *            the TSL location as announced by the list of lists pointer.
+	 * @param timeout
+	 *            the connect and read timeout in milliseconds.
+	 * @return the TSL content, closed by the caller.
+	 * @throws IOException
+	 */
+	InputStream open(String location, int timeout) throws IOException;
+
+	/**
+	 * Opens the trust service list at the given location, unless it did not
+	 * change since the response carrying the given validators.
+	 * 
+	 * @param location
+	 *            the TSL location as announced by the list of lists pointer.
+	 * @param etag
+	 *            the ETag of the previous response, can be <code>null</code>.
+	 * @param lastModified
+	 *            the Last-Modified of the previous response, can be
+	 *            <code>null</code>.
+	 * @param timeout
+	 *            the connect and read timeout in milliseconds.
+	 * @return the response, of which the content is closed by the caller.
+	 * @throws IOException
+	 */
+	TrustServiceListResponse open(String location, String etag,
+			String lastModified, int timeout) throws IOException;
+
+	/**
+	 * Fetches and parses the trust service list at the given location.
+	 * Implementations can hand out a previously parsed instance if the list
+	 * did not change.
+	 * 
+	 * @param location
+	 *            the TSL location as announced by the list of lists pointer.
+	 * @param timeout
+	 *            the connect and read timeout in milliseconds.
+	 * @return
+	 * @throws IOException
+	 */
+	TrustServiceList getTrustServiceList(String location, int timeout)
+			throws IOException;
+}
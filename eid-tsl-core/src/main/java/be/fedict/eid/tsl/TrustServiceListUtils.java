@@ -18,15 +18,35 @@ l * eID TSL Project.
 
 package be.fedict.eid.tsl;
 
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
+import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
+import org.bouncycastle.x509.extension.X509ExtensionUtil;
+import org.w3c.dom.Element;
 
+import be.fedict.eid.tsl.jaxb.tsl.AdditionalInformationType;
+import be.fedict.eid.tsl.jaxb.tsl.AnyType;
+import be.fedict.eid.tsl.jaxb.tsl.DigitalIdentityListType;
 import be.fedict.eid.tsl.jaxb.tsl.InternationalNamesType;
 import be.fedict.eid.tsl.jaxb.tsl.MultiLangNormStringType;
 import be.fedict.eid.tsl.jaxb.tsl.ObjectFactory;
+import be.fedict.eid.tsl.jaxb.tsl.OtherTSLPointerType;
+import be.fedict.eid.tsl.jaxb.tsl.ServiceDigitalIdentityListType;
 
 /**
  * Utility class for trust service lists.
@@ -39,6 +59,12 @@ class TrustServiceListUtils {
 	private static final Log LOG = LogFactory
 			.getLog(TrustServiceListUtils.class);
 
+	static final QName SCHEME_TERRITORY_QNAME = new QName(
+			"http://uri.etsi.org/02231/v2#", "SchemeTerritory");
+
+	static final QName MIME_TYPE_QNAME = new QName(
+			"http://uri.etsi.org/02231/v2/additionaltypes#", "MimeType");
+
 	private TrustServiceListUtils() {
 		super();
 	}
@@ -54,21 +80,11 @@ class TrustServiceListUtils {
 		if (null == i18nName) {
 			return null;
 		}
-		List<MultiLangNormStringType> names = i18nName.getName();
-		String enValue = null;
-		for (MultiLangNormStringType name : names) {
-			String lang = name.getLang().toLowerCase();
-			if ("en".equals(lang)) {
-				enValue = name.getValue();
-			}
-			if (locale.getLanguage().equals(lang)) {
-				return name.getValue();
-			}
-		}
-		if (null != enValue) {
-			return enValue;
+		MultiLangNormStringType name = LanguageIndex.getName(i18nName, locale);
+		if (null == name) {
+			return null;
 		}
-		return names.get(0).getValue();
+		return name.getValue();
 	}
 
 	/**
@@ -104,4 +120,167 @@ class TrustServiceListUtils {
 		}
 		localeName.setValue(value);
 	}
+
+	/**
+	 * Gives back the scheme territory of the trust service list the given
+	 * pointer refers to.
+	 * 
+	 * @param otherTSLPointer
+	 * @return
+	 */
+	static String getSchemeTerritory(OtherTSLPointerType otherTSLPointer) {
+		return getOtherInformation(otherTSLPointer, SCHEME_TERRITORY_QNAME);
+	}
+
+	/**
+	 * Gives back the MIME type of the trust service list the given pointer
+	 * refers to.
+	 * 
+	 * @param otherTSLPointer
+	 * @return
+	 */
+	static String getMimeType(OtherTSLPointerType otherTSLPointer) {
+		return getOtherInformation(otherTSLPointer, MIME_TYPE_QNAME);
+	}
+
+	/**
+	 * Gives back the string value of the given additional information
+	 * element. Depending on the JAXB context, elements are either
+	 * unmarshalled as JAXB elements or kept as DOM elements.
+	 * 
+	 * @param otherTSLPointer
+	 * @param name
+	 * @return
+	 */
+	static String getOtherInformation(OtherTSLPointerType otherTSLPointer,
+			QName name) {
+		AdditionalInformationType additionalInformation = otherTSLPointer
+				.getAdditionalInformation();
+		if (null == additionalInformation) {
+			return null;
+		}
+		for (Object information : additionalInformation
+				.getTextualInformationOrOtherInformation()) {
+			if (false == information instanceof AnyType) {
+				continue;
+			}
+			for (Object content : ((AnyType) information).getContent()) {
+				if (content instanceof JAXBElement) {
+					JAXBElement<?> jaxbElement = (JAXBElement<?>) content;
+					if (name.equals(jaxbElement.getName())
+							&& jaxbElement.getValue() instanceof String) {
+						return ((String) jaxbElement.getValue()).trim();
+					}
+				} else if (content instanceof Element) {
+					Element element = (Element) content;
+					if (name.getNamespaceURI().equals(
+							element.getNamespaceURI())
+							&& name.getLocalPart().equals(
+									element.getLocalName())) {
+						return element.getTextContent().trim();
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gives back the X509 certificates of the service digital identities of
+	 * the given pointer.
+	 * 
+	 * @param otherTSLPointer
+	 * @return
+	 */
+	static List<X509Certificate> getCertificates(
+			OtherTSLPointerType otherTSLPointer) {
+		List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+		ServiceDigitalIdentityListType serviceDigitalIdentities = otherTSLPointer
+				.getServiceDigitalIdentities();
+		if (null == serviceDigitalIdentities) {
+			return certificates;
+		}
+		for (DigitalIdentityListType digitalIdentityList : serviceDigitalIdentities
+				.getServiceDigitalIdentity()) {
+			certificates.addAll(DigitalIdentityCertificates
+					.getCertificates(digitalIdentityList));
+		}
+		return certificates;
+	}
+
+	/**
+	 * Gives back the subject key identifier of the given certificate, or
+	 * <code>null</code> if the extension is absent.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	static byte[] getSubjectKeyIdentifier(X509Certificate certificate) {
+		byte[] extensionValue = certificate
+				.getExtensionValue(X509Extensions.SubjectKeyIdentifier.getId());
+		if (null == extensionValue) {
+			return null;
+		}
+		try {
+			return new SubjectKeyIdentifierStructure(extensionValue)
+					.getKeyIdentifier();
+		} catch (IOException e) {
+			throw new RuntimeException("X509 SKI decoding error: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the authority key identifier of the given certificate, or
+	 * <code>null</code> if the extension or its key identifier is absent.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	static byte[] getAuthorityKeyIdentifier(X509Certificate certificate) {
+		byte[] extensionValue = certificate
+				.getExtensionValue(X509Extensions.AuthorityKeyIdentifier
+						.getId());
+		if (null == extensionValue) {
+			return null;
+		}
+		try {
+			return new AuthorityKeyIdentifierStructure(extensionValue)
+					.getKeyIdentifier();
+		} catch (IOException e) {
+			throw new RuntimeException("X509 AKI decoding error: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the policy OIDs of the certificate policies extension of the
+	 * given certificate.
+	 * 
+	 * @param certificate
+	 * @return
+	 */
+	static Set<String> getCertificatePolicies(X509Certificate certificate) {
+		Set<String> certificatePolicies = new HashSet<String>();
+		byte[] extensionValue = certificate
+				.getExtensionValue(X509Extensions.CertificatePolicies.getId());
+		if (null == extensionValue) {
+			return certificatePolicies;
+		}
+		ASN1Sequence policyInformations;
+		try {
+			policyInformations = ASN1Sequence.getInstance(X509ExtensionUtil
+					.fromExtensionValue(extensionValue));
+		} catch (IOException e) {
+			throw new RuntimeException("X509 certificate policies error: "
+					+ e.getMessage(), e);
+		}
+		for (int idx = 0; idx < policyInformations.size(); idx++) {
+			PolicyInformation policyInformation = PolicyInformation
+					.getInstance(policyInformations.getObjectAt(idx));
+			certificatePolicies.add(policyInformation.getPolicyIdentifier()
+					.getId());
+		}
+		return certificatePolicies;
+	}
 }
@@ -18,6 +18,7 @@
 
 package be.fedict.eid.tsl;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -42,6 +43,10 @@ public class TrustServiceProvider {
 
 	private List<TrustService> trustServices;
 
+	private volatile boolean frozen;
+
+	private TrustServiceList trustServiceList;
+
 	private final ObjectFactory objectFactory;
 
 	TrustServiceProvider(TSPType tsp) {
@@ -80,6 +85,46 @@ public class TrustServiceProvider {
 		
 	}
 	
+	/**
+	 * Makes this trust service provider and its trust services read-only.
+	 * 
+	 * @see TrustServiceList#freeze()
+	 */
+	void freeze() {
+		this.trustServices = Collections
+				.unmodifiableList(getTrustServices());
+		for (TrustService trustService : this.trustServices) {
+			trustService.freeze();
+		}
+		this.frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (this.frozen) {
+			throw new IllegalStateException(
+					"trust service provider is frozen");
+		}
+	}
+
+	/**
+	 * Attaches this trust service provider and its trust services to the
+	 * given trust service list, which gets notified of every edit.
+	 * 
+	 * @param trustServiceList
+	 */
+	void setTrustServiceList(TrustServiceList trustServiceList) {
+		this.trustServiceList = trustServiceList;
+		for (TrustService trustService : getTrustServices()) {
+			trustService.setTrustServiceList(trustServiceList);
+		}
+	}
+
+	private void setChanged() {
+		if (null != this.trustServiceList) {
+			this.trustServiceList.trustServiceChanged();
+		}
+	}
+
 	TSPType getTSP() {
 		return this.tsp;
 	}
@@ -87,6 +132,7 @@ public class TrustServiceProvider {
 	public void addPostalAddress(Locale locale, String streetAddress,
 			String locality, String stateOrProvince, String postalCode,
 			String countryName) {
+		checkNotFrozen();
 		TSPInformationType tspInformation = getTSPInformation();
 		AddressType address = tspInformation.getTSPAddress();
 		if (null == address) {
@@ -110,6 +156,7 @@ public class TrustServiceProvider {
 		postalAddress.setStateOrProvince(stateOrProvince);
 		postalAddress.setPostalCode(postalCode);
 		postalAddress.setCountryName(countryName);
+		setChanged();
 	}
 
 	public PostalAddressType getPostalAddress() {
@@ -129,19 +176,16 @@ public class TrustServiceProvider {
 		if (null == postalAddresses) {
 			return null;
 		}
-		List<PostalAddressType> postalAddressList = postalAddresses
-				.getPostalAddress();
-		for (PostalAddressType postalAddress : postalAddressList) {
-			String lang = postalAddress.getLang();
-			if (0 != locale.getLanguage().compareToIgnoreCase(lang)) {
-				continue;
-			}
-			return postalAddress;
+		PostalAddressType postalAddress = LanguageIndex.getPostalAddress(
+				postalAddresses, locale);
+		if (this.frozen) {
+			return JaxbCopies.copy(postalAddress);
 		}
-		return null;
+		return postalAddress;
 	}
 
 	public void addElectronicAddress(Locale local, String electronicAddres) {
+		checkNotFrozen();
 		TSPInformationType tspInformation = getTSPInformation();
 		AddressType address = tspInformation.getTSPAddress();
 		if (null == address) {
@@ -161,6 +205,7 @@ public class TrustServiceProvider {
 		uri.setLang(local.getLanguage());
 		uri.setValue(electronicAddres);
 		uris.add(uri);
+		setChanged();
 	}
 
 	public NonEmptyMultiLangURIListType getElectronicAddress() {
@@ -183,6 +228,9 @@ public class TrustServiceProvider {
 		for (NonEmptyMultiLangURIType uri : uris) {
 			resultElectronicAddress.getURI().add(uri);
 		}
+		if (this.frozen) {
+			return JaxbCopies.copy(resultElectronicAddress);
+		}
 		return resultElectronicAddress;
 	}
 
@@ -196,6 +244,7 @@ public class TrustServiceProvider {
 	}
 
 	public void addInformationUri(Locale locale, String informationUri) {
+		checkNotFrozen();
 		TSPInformationType tspInformation = getTSPInformation();
 		NonEmptyMultiLangURIListType tspInformationURI = tspInformation
 				.getTSPInformationURI();
@@ -210,6 +259,7 @@ public class TrustServiceProvider {
 		uri.setLang(locale.getLanguage());
 		uri.setValue(informationUri);
 		uris.add(uri);
+		setChanged();
 	}
 
 	public List<String> getInformationUris() {
@@ -292,12 +342,15 @@ public class TrustServiceProvider {
 		List<TSPServiceType> tspServiceList = tspServices.getTSPService();
 		for (TSPServiceType tspService : tspServiceList) {
 			TrustService trustService = new TrustService(tspService);
+			trustService.setTrustServiceList(this.trustServiceList);
 			this.trustServices.add(trustService);
 		}
 		return this.trustServices;
 	}
 
 	public void addTrustService(TrustService trustService) {
+		checkNotFrozen();
+		List<TrustService> trustServices = getTrustServices();
 		TSPServicesListType tspServicesList = this.tsp.getTSPServices();
 		if (null == tspServicesList) {
 			tspServicesList = this.objectFactory.createTSPServicesListType();
@@ -305,7 +358,8 @@ public class TrustServiceProvider {
 		}
 		List<TSPServiceType> tspServices = tspServicesList.getTSPService();
 		tspServices.add(trustService.getTSPService());
-		// reset java model cache
-		this.trustServices = null;
+		trustServices.add(trustService);
+		trustService.setTrustServiceList(this.trustServiceList);
+		setChanged();
 	}
 }
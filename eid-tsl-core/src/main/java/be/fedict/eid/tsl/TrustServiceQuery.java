@@ -0,0 +1,236 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.joda.time.DateTime;
+
+/**
+ * Query over the trust services of a trust service list, e.g. all CA/QC
+ * services under supervision with a certificate that is valid today:
+ * 
+ * <pre>
+ * for (TrustService trustService : trustServiceList.query()
+ * 		.serviceType(TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI)
+ * 		.serviceStatus(TrustService.SERVICE_STATUS_UNDER_SUPERVISION)
+ * 		.validAt(new DateTime())) {
+ * 	...
+ * }
+ * </pre>
+ * 
+ * Service type and status are looked up via secondary indexes, the other
+ * criteria are evaluated lazily while iterating.
+ */
+public class TrustServiceQuery implements Iterable<TrustService> {
+
+	private final TrustServiceAttributeIndex attributeIndex;
+
+	private final String schemeTerritory;
+
+	private String serviceType;
+
+	private String serviceStatus;
+
+	private String territory;
+
+	private DateTime validAt;
+
+	private final List<String> qualifiers;
+
+	TrustServiceQuery(TrustServiceAttributeIndex attributeIndex,
+			String schemeTerritory) {
+		this.attributeIndex = attributeIndex;
+		this.schemeTerritory = schemeTerritory;
+		this.qualifiers = new LinkedList<String>();
+	}
+
+	public TrustServiceQuery serviceType(String serviceType) {
+		this.serviceType = serviceType;
+		return this;
+	}
+
+	public TrustServiceQuery serviceStatus(String serviceStatus) {
+		this.serviceStatus = serviceStatus;
+		return this;
+	}
+
+	/**
+	 * Restricts to the given scheme territory. Both EU (UK, EL) and ISO (GB,
+	 * GR) codes are accepted.
+	 * 
+	 * @param territory
+	 * @return
+	 */
+	public TrustServiceQuery territory(String territory) {
+		this.territory = territory;
+		return this;
+	}
+
+	/**
+	 * Restricts to services with a service digital identity certificate that
+	 * is valid at the given time.
+	 * 
+	 * @param instant
+	 * @return
+	 */
+	public TrustServiceQuery validAt(DateTime instant) {
+		this.validAt = instant;
+		return this;
+	}
+
+	/**
+	 * Restricts to services whose Qualifications extension mentions the given
+	 * qualifier URI, e.g. {@link TrustService#QC_NO_SSCD_QUALIFIER_URI}. Can be
+	 * given several times.
+	 * 
+	 * @param qualifierUri
+	 * @return
+	 */
+	public TrustServiceQuery qualifier(String qualifierUri) {
+		this.qualifiers.add(qualifierUri);
+		return this;
+	}
+
+	/**
+	 * Gives back a lazily evaluated iterator over the matching trust services.
+	 */
+	public Iterator<TrustService> iterator() {
+		if (null != this.territory && false == isTerritory(this.territory)) {
+			return Collections.<TrustService> emptyList().iterator();
+		}
+		List<TrustService> candidates;
+		if (null != this.serviceType) {
+			candidates = this.attributeIndex.getByType(this.serviceType);
+			if (null != this.serviceStatus) {
+				List<TrustService> byStatus = this.attributeIndex
+						.getByStatus(this.serviceStatus);
+				if (byStatus.size() < candidates.size()) {
+					candidates = byStatus;
+				}
+			}
+		} else if (null != this.serviceStatus) {
+			candidates = this.attributeIndex.getByStatus(this.serviceStatus);
+		} else {
+			candidates = this.attributeIndex.getTrustServices();
+		}
+		return new QueryIterator(candidates.iterator(), this.serviceType,
+				this.serviceStatus, null == this.validAt ? null : this.validAt
+						.getMillis(), new ArrayList<String>(this.qualifiers));
+	}
+
+	/**
+	 * Gives back all matching trust services at once.
+	 * 
+	 * @return
+	 */
+	public List<TrustService> list() {
+		List<TrustService> result = new LinkedList<TrustService>();
+		for (TrustService trustService : this) {
+			result.add(trustService);
+		}
+		return result;
+	}
+
+	private boolean isTerritory(String territory) {
+		EUCountry country = FederatedTrustRegistry.getTerritory(territory);
+		if (null == country) {
+			return territory.equalsIgnoreCase(this.schemeTerritory);
+		}
+		return country == FederatedTrustRegistry
+				.getTerritory(this.schemeTerritory);
+	}
+
+	private class QueryIterator implements Iterator<TrustService> {
+
+		private final Iterator<TrustService> candidates;
+
+		private final String serviceType;
+
+		private final String serviceStatus;
+
+		private final Long validAt;
+
+		private final List<String> qualifiers;
+
+		private TrustService next;
+
+		public QueryIterator(Iterator<TrustService> candidates,
+				String serviceType, String serviceStatus, Long validAt,
+				List<String> qualifiers) {
+			this.candidates = candidates;
+			this.serviceType = serviceType;
+			this.serviceStatus = serviceStatus;
+			this.validAt = validAt;
+			this.qualifiers = qualifiers;
+		}
+
+		public boolean hasNext() {
+			while (null == this.next && this.candidates.hasNext()) {
+				TrustService candidate = this.candidates.next();
+				if (matches(candidate)) {
+					this.next = candidate;
+				}
+			}
+			return null != this.next;
+		}
+
+		public TrustService next() {
+			if (false == hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TrustService result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private boolean matches(TrustService trustService) {
+			if (null != this.serviceType
+					&& false == this.serviceType.equals(trustService.getType())) {
+				return false;
+			}
+			if (null != this.serviceStatus
+					&& false == this.serviceStatus.equals(trustService
+							.getStatus())) {
+				return false;
+			}
+			TrustServiceAttributeIndex.Attributes attributes = TrustServiceQuery.this.attributeIndex
+					.getAttributes(trustService);
+			if (null != this.validAt
+					&& false == attributes.isValidAt(this.validAt)) {
+				return false;
+			}
+			if (false == this.qualifiers.isEmpty()
+					&& false == attributes.getQualifiers().containsAll(
+							this.qualifiers)) {
+				return false;
+			}
+			return true;
+		}
+	}
+}
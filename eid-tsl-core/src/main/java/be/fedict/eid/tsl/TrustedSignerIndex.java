@@ -0,0 +1,115 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Index of trusted trust service list signer certificates, e.g. the pinned
+ * European Commission certificates for the list of lists. Lookups go by
+ * SHA-256 certificate digest or by subject key identifier, so that an
+ * untrusted signer can be rejected before any signature verification.
+ *
+ * Build an index once and reuse it for every list verified against the same
+ * trust anchors.
+ */
+public class TrustedSignerIndex {
+
+	private final Map<String, X509Certificate> certificatesByDigest;
+
+	private final Map<String, List<X509Certificate>> certificatesBySubjectKeyIdentifier;
+
+	public TrustedSignerIndex(Collection<X509Certificate> trustedSigners) {
+		this.certificatesByDigest = new HashMap<String, X509Certificate>();
+		this.certificatesBySubjectKeyIdentifier = new HashMap<String, List<X509Certificate>>();
+		for (X509Certificate trustedSigner : trustedSigners) {
+			this.certificatesByDigest.put(
+					CertificateDigests.getSha256Hex(trustedSigner),
+					trustedSigner);
+
+			byte[] subjectKeyIdentifier = TrustServiceListUtils
+					.getSubjectKeyIdentifier(trustedSigner);
+			if (null == subjectKeyIdentifier) {
+				continue;
+			}
+			String key = new String(Hex.encodeHex(subjectKeyIdentifier));
+			List<X509Certificate> certificates = this.certificatesBySubjectKeyIdentifier
+					.get(key);
+			if (null == certificates) {
+				certificates = new LinkedList<X509Certificate>();
+				this.certificatesBySubjectKeyIdentifier.put(key, certificates);
+			}
+			certificates.add(trustedSigner);
+		}
+	}
+
+	/**
+	 * Gives back the trusted certificate with the given encoding, or
+	 * <code>null</code> if not trusted.
+	 *
+	 * @param encodedCertificate
+	 * @return
+	 */
+	public X509Certificate findByEncoding(byte[] encodedCertificate) {
+		return this.certificatesByDigest.get(DigestUtils
+				.sha256Hex(encodedCertificate));
+	}
+
+	/**
+	 * Gives back the trusted certificate with the given SHA-256 digest, or
+	 * <code>null</code> if not trusted.
+	 *
+	 * @param sha256Digest
+	 * @return
+	 */
+	public X509Certificate findByDigest(byte[] sha256Digest) {
+		return this.certificatesByDigest.get(new String(Hex
+				.encodeHex(sha256Digest)));
+	}
+
+	/**
+	 * Gives back the trusted certificates with the given subject key
+	 * identifier. Several certificates can share the same key.
+	 *
+	 * @param subjectKeyIdentifier
+	 * @return
+	 */
+	public List<X509Certificate> findBySubjectKeyIdentifier(
+			byte[] subjectKeyIdentifier) {
+		List<X509Certificate> certificates = this.certificatesBySubjectKeyIdentifier
+				.get(new String(Hex.encodeHex(subjectKeyIdentifier)));
+		if (null == certificates) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(certificates);
+	}
+
+	public boolean isEmpty() {
+		return this.certificatesByDigest.isEmpty();
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+
+package be.fedict.eid.tsl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Transport that fetches trust service lists via {@link URL} connections, so
+ * both HTTP(S) and file locations are supported. The validators are sent as
+ * conditional HTTP request headers.
+ */
+public class UrlTrustServiceListTransport extends
+		AbstractTrustServiceListTransport {
+
+	public InputStream open(String location, int timeout) throws IOException {
+		return open(location, null, null, timeout).getInputStream();
+	}
+
+	@Override
+	public TrustServiceListResponse open(String location, String etag,
+			String lastModified, int timeout) throws IOException {
+		URLConnection connection = new URL(location).openConnection();
+		connection.setConnectTimeout(timeout);
+		connection.setReadTimeout(timeout);
+		if (null != etag) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		if (null != lastModified) {
+			connection.setRequestProperty("If-Modified-Since", lastModified);
+		}
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection httpConnection = (HttpURLConnection) connection;
+			int responseCode = httpConnection.getResponseCode();
+			if (HttpURLConnection.HTTP_NOT_MODIFIED == responseCode
+					&& (null != etag || null != lastModified)) {
+				httpConnection.disconnect();
+				return TrustServiceListResponse.notModified();
+			}
+			if (HttpURLConnection.HTTP_OK != responseCode) {
+				httpConnection.disconnect();
+				throw new IOException("HTTP response code " + responseCode
+						+ " for " + location);
+			}
+		}
+		return new TrustServiceListResponse(connection.getInputStream(),
+				connection.getHeaderField("ETag"),
+				connection.getHeaderField("Last-Modified"));
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of signature verification reports, keyed by the
+ * SHA-256 digest of the signed document bytes. Shared by all trust service
+ * list instances, so loading identical bytes twice only verifies once.
+ */
+final class VerificationReportCache {
+
+	private static final int MAX_ENTRIES = 64;
+
+	private static final Map<String, SignatureVerificationReport> CACHE = new LinkedHashMap<String, SignatureVerificationReport>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, SignatureVerificationReport> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private VerificationReportCache() {
+		super();
+	}
+
+	static SignatureVerificationReport get(String documentDigest) {
+		synchronized (CACHE) {
+			return CACHE.get(documentDigest);
+		}
+	}
+
+	static void put(String documentDigest,
+			SignatureVerificationReport verificationReport) {
+		synchronized (CACHE) {
+			CACHE.put(documentDigest, verificationReport);
+		}
+	}
+
+	static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+}
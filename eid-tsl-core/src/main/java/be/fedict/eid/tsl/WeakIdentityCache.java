@@ -0,0 +1,106 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe map keyed on object identity via weak references, for values
+ * derived from objects that are not owned by this library, like JAXB
+ * objects and certificates. Lookups don't lock, and don't call the hash
+ * code or equals of the keys. Entries go away together with their keys.
+ * 
+ * @param <K>
+ *            the key type.
+ * @param <V>
+ *            the value type.
+ */
+final class WeakIdentityCache<K, V> {
+
+	private final ConcurrentMap<IdentityKey<K>, V> entries;
+
+	private final ReferenceQueue<K> staleKeys;
+
+	public WeakIdentityCache() {
+		this.entries = new ConcurrentHashMap<IdentityKey<K>, V>();
+		this.staleKeys = new ReferenceQueue<K>();
+	}
+
+	/**
+	 * Gives back the value for the given key instance, or <code>null</code>
+	 * if not present.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public V get(K key) {
+		return this.entries.get(new IdentityKey<K>(key, null));
+	}
+
+	public void put(K key, V value) {
+		removeStaleKeys();
+		this.entries.put(new IdentityKey<K>(key, this.staleKeys), value);
+	}
+
+	public void remove(K key) {
+		this.entries.remove(new IdentityKey<K>(key, null));
+	}
+
+	private void removeStaleKeys() {
+		Reference<? extends K> staleKey;
+		while (null != (staleKey = this.staleKeys.poll())) {
+			this.entries.remove(staleKey);
+		}
+	}
+
+	/**
+	 * Weak reference to a key, equal to references to the same key instance.
+	 * Once cleared, it's only equal to itself.
+	 */
+	private static final class IdentityKey<K> extends WeakReference<K> {
+
+		private final int hashCode;
+
+		public IdentityKey(K key, ReferenceQueue<K> queue) {
+			super(key, queue);
+			this.hashCode = System.identityHashCode(key);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (false == obj instanceof IdentityKey) {
+				return false;
+			}
+			Object key = get();
+			return null != key && key == ((IdentityKey<?>) obj).get();
+		}
+	}
+}
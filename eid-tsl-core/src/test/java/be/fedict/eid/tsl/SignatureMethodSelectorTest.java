@@ -0,0 +1,129 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import test.unit.be.fedict.eid.tsl.TrustTestUtils;
+
+public class SignatureMethodSelectorTest {
+
+	private static final String RSA_SHA1 = "http://www.w3.org/2000/09/xmldsig#rsa-sha1";
+
+	private static final String RSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+
+	private static final String ECDSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256";
+
+	private static final String ECDSA_SHA384 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha384";
+
+	private static final String ECDSA_SHA512 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha512";
+
+	private static final String RSA_PSS_SHA256 = "http://www.w3.org/2007/05/xmldsig-more#sha256-rsa-MGF1";
+
+	private static final String RSA_PSS_SHA384 = "http://www.w3.org/2007/05/xmldsig-more#sha384-rsa-MGF1";
+
+	private static final String RSA_PSS_SHA512 = "http://www.w3.org/2007/05/xmldsig-more#sha512-rsa-MGF1";
+
+	private static final Set<String> ALL_SIGNATURE_METHODS = new HashSet<String>(
+			Arrays.asList(RSA_SHA1, RSA_SHA256, ECDSA_SHA256, ECDSA_SHA384,
+					ECDSA_SHA512, RSA_PSS_SHA256, RSA_PSS_SHA384,
+					RSA_PSS_SHA512));
+
+	/**
+	 * Signature methods of XML signature providers like Apache XML Security
+	 * 1.4.5, lacking both the ECDSA and the RSA-MGF1 URIs.
+	 */
+	private static final Set<String> LEGACY_SIGNATURE_METHODS = new HashSet<String>(
+			Arrays.asList(RSA_SHA1, RSA_SHA256));
+
+	@Test
+	public void testEcKeys() throws Exception {
+		assertEquals(ECDSA_SHA256, SignatureMethodSelector.getSignatureMethod(
+				TrustTestUtils.generateEcKeyPair("secp256r1").getPublic(),
+				false, ALL_SIGNATURE_METHODS));
+		assertEquals(ECDSA_SHA384, SignatureMethodSelector.getSignatureMethod(
+				TrustTestUtils.generateEcKeyPair("secp384r1").getPublic(),
+				false, ALL_SIGNATURE_METHODS));
+		assertEquals(ECDSA_SHA512, SignatureMethodSelector.getSignatureMethod(
+				TrustTestUtils.generateEcKeyPair("secp521r1").getPublic(),
+				true, ALL_SIGNATURE_METHODS));
+	}
+
+	@Test
+	public void testRsaPssModulusSizes() throws Exception {
+		assertEquals(RSA_PSS_SHA256, SignatureMethodSelector
+				.getSignatureMethod(getRsaPublicKey(2048), true,
+						ALL_SIGNATURE_METHODS));
+		assertEquals(RSA_PSS_SHA256, SignatureMethodSelector
+				.getSignatureMethod(getRsaPublicKey(3071), true,
+						ALL_SIGNATURE_METHODS));
+		assertEquals(RSA_PSS_SHA384, SignatureMethodSelector
+				.getSignatureMethod(getRsaPublicKey(3072), true,
+						ALL_SIGNATURE_METHODS));
+		assertEquals(RSA_PSS_SHA384, SignatureMethodSelector
+				.getSignatureMethod(getRsaPublicKey(7679), true,
+						ALL_SIGNATURE_METHODS));
+		assertEquals(RSA_PSS_SHA512, SignatureMethodSelector
+				.getSignatureMethod(getRsaPublicKey(7680), true,
+						ALL_SIGNATURE_METHODS));
+		assertEquals(RSA_SHA256, SignatureMethodSelector.getSignatureMethod(
+				getRsaPublicKey(7680), false, ALL_SIGNATURE_METHODS));
+	}
+
+	@Test
+	public void testLegacyProvider() throws Exception {
+		assertEquals(RSA_SHA256, SignatureMethodSelector.getSignatureMethod(
+				getRsaPublicKey(2048), true, LEGACY_SIGNATURE_METHODS));
+		assertEquals(RSA_SHA1, SignatureMethodSelector.getSignatureMethod(
+				getRsaPublicKey(2048), true,
+				new HashSet<String>(Arrays.asList(RSA_SHA1))));
+		try {
+			SignatureMethodSelector.getSignatureMethod(TrustTestUtils
+					.generateEcKeyPair("secp256r1").getPublic(), false,
+					LEGACY_SIGNATURE_METHODS);
+			fail();
+		} catch (NoSuchAlgorithmException e) {
+			// expected
+		}
+	}
+
+	private static PublicKey getRsaPublicKey(int modulusSize)
+			throws Exception {
+		/*
+		 * Only the modulus size matters, so no need to generate large keys.
+		 */
+		BigInteger modulus = BigInteger.ONE.shiftLeft(modulusSize - 1)
+				.setBit(0);
+		return KeyFactory.getInstance("RSA").generatePublic(
+				new RSAPublicKeySpec(modulus, RSAKeyGenParameterSpec.F4));
+	}
+}
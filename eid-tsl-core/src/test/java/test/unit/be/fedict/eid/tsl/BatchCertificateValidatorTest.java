@@ -0,0 +1,187 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.BatchCertificateValidator;
+import be.fedict.eid.tsl.CertificateValidationResult;
+import be.fedict.eid.tsl.TrustService;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class BatchCertificateValidatorTest {
+
+	@Test
+	public void testBatchCertificateValidator() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		DateTime notBefore = fixture.notBefore;
+		DateTime notAfter = fixture.notAfter;
+		X509Certificate caCertificate = fixture.caCertificate;
+		PrivateKey caPrivateKey = fixture.caKeyPair.getPrivate();
+		PrivateKey otherPrivateKey = fixture.otherCaKeyPair.getPrivate();
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate validCertificate = TrustTestUtils.generateCertificate(
+				keyPair.getPublic(), "CN=Valid", notBefore, notAfter,
+				caCertificate, caPrivateKey);
+		X509Certificate earlyCertificate = TrustTestUtils.generateCertificate(
+				keyPair.getPublic(), "CN=Early", notBefore.minusHours(2),
+				notAfter, caCertificate, caPrivateKey);
+		X509Certificate expiredCertificate = TrustTestUtils
+				.generateCertificate(keyPair.getPublic(), "CN=Expired",
+						notBefore.minusMonths(2), notBefore.minusMonths(1),
+						caCertificate, caPrivateKey);
+		X509Certificate forgedCertificate = TrustTestUtils
+				.generateCertificate(keyPair.getPublic(), "CN=Forged",
+						notBefore, notAfter, caCertificate, otherPrivateKey);
+		X509Certificate unknownCertificate = TrustTestUtils
+				.generateCertificate(keyPair.getPublic(), "CN=Unknown",
+						notBefore, notAfter, fixture.otherCaCertificate,
+						otherPrivateKey);
+
+		List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+		for (int idx = 0; idx < 25; idx++) {
+			certificates.add(validCertificate);
+			certificates.add(expiredCertificate);
+			certificates.add(forgedCertificate);
+			certificates.add(unknownCertificate);
+		}
+		BatchCertificateValidator validator = new BatchCertificateValidator(
+				fixture.trustServiceList, 3);
+
+		// operate
+		List<CertificateValidationResult> results = validator.validate(
+				certificates, new DateTime());
+
+		// verify
+		assertEquals(100, results.size());
+		for (int idx = 0; idx < 100; idx += 4) {
+			assertSame(validCertificate, results.get(idx).getCertificate());
+			assertEquals(CertificateValidationResult.Status.VALID, results
+					.get(idx).getStatus());
+			assertEquals("test-service", results.get(idx).getTrustService()
+					.getName());
+			assertEquals(TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+					results.get(idx).getServiceStatus());
+			assertEquals(CertificateValidationResult.Status.EXPIRED, results
+					.get(idx + 1).getStatus());
+			assertEquals(CertificateValidationResult.Status.INVALID_SIGNATURE,
+					results.get(idx + 2).getStatus());
+			assertEquals(CertificateValidationResult.Status.UNKNOWN_ISSUER,
+					results.get(idx + 3).getStatus());
+		}
+		CertificateValidationResult result = validator.validate(
+				earlyCertificate, notBefore.minusHours(1).toDate());
+		assertEquals(CertificateValidationResult.Status.SERVICE_NOT_ACTIVE,
+				result.getStatus());
+		assertTrue(validator.validate(new X509Certificate[0], new DateTime())
+				.isEmpty());
+	}
+
+	@Test
+	public void testIntermediateServiceNotActive() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		DateTime notBefore = fixture.notBefore;
+		KeyPair intermediateKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate intermediateCertificate = TrustTestUtils
+				.generateCertificate(intermediateKeyPair.getPublic(),
+						"CN=Intermediate CA", notBefore, fixture.notAfter,
+						fixture.caCertificate,
+						fixture.caKeyPair.getPrivate(), true);
+		X509Certificate certificate = TrustTestUtils.generateCertificate(
+				TrustTestUtils.generateKeyPair().getPublic(), "CN=Test",
+				notBefore, fixture.notAfter, intermediateCertificate,
+				intermediateKeyPair.getPrivate());
+		fixture.trustServiceProvider.addTrustService(new TrustService(
+				"intermediate-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_ACCREDITED,
+				notBefore.plusHours(12), intermediateCertificate));
+		BatchCertificateValidator validator = new BatchCertificateValidator(
+				fixture.trustServiceList, 1);
+
+		// operate
+		CertificateValidationResult earlyResult = validator.validate(
+				certificate, notBefore.plusHours(6).toDate());
+		CertificateValidationResult result = validator.validate(certificate,
+				new DateTime().toDate());
+
+		// verify
+		assertEquals(CertificateValidationResult.Status.SERVICE_NOT_ACTIVE,
+				earlyResult.getStatus());
+		assertEquals("intermediate-service", earlyResult.getTrustService()
+				.getName());
+		assertNull(earlyResult.getServiceStatus());
+		assertEquals(CertificateValidationResult.Status.VALID,
+				result.getStatus());
+		assertEquals("intermediate-service", result.getTrustService()
+				.getName());
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				result.getServiceStatus());
+	}
+
+	@Test
+	public void testSharedExecutor() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		X509Certificate certificate = fixture.generateCertificate("CN=Test");
+		List<X509Certificate> certificates = new LinkedList<X509Certificate>();
+		for (int idx = 0; idx < 10; idx++) {
+			certificates.add(certificate);
+		}
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			BatchCertificateValidator validator = new BatchCertificateValidator(
+					fixture.trustServiceList, 2, executorService);
+
+			// operate
+			List<CertificateValidationResult> results = validator.validate(
+					certificates, new DateTime());
+			List<CertificateValidationResult> nextResults = validator
+					.validate(certificates, new DateTime());
+
+			// verify
+			assertEquals(10, results.size());
+			assertEquals(10, nextResults.size());
+			for (CertificateValidationResult result : nextResults) {
+				assertEquals(CertificateValidationResult.Status.VALID,
+						result.getStatus());
+			}
+			assertFalse(executorService.isShutdown());
+		} finally {
+			executorService.shutdown();
+		}
+	}
+}
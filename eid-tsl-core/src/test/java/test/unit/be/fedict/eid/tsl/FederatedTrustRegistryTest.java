@@ -0,0 +1,125 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.EUCountry;
+import be.fedict.eid.tsl.FederatedTrustRegistry;
+import be.fedict.eid.tsl.FederatedTrustRegistry.Snapshot;
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceProvider;
+
+public class FederatedTrustRegistryTest {
+
+	@Test
+	public void testUpdate() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair beKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate beCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(beKeyPair, "CN=BE CA",
+						notBefore, notAfter);
+		KeyPair ukKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate ukCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(ukKeyPair, "CN=UK CA",
+						notBefore, notAfter);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils.generateCertificate(
+				keyPair.getPublic(), "CN=Test", notBefore, notAfter,
+				ukCertificate, ukKeyPair.getPrivate());
+
+		TrustServiceList beList = createTrustServiceList("BE", beCertificate);
+		TrustServiceList ukList = createTrustServiceList("GB", ukCertificate);
+
+		FederatedTrustRegistry registry = new FederatedTrustRegistry();
+		Snapshot emptySnapshot = registry.getSnapshot();
+
+		// operate
+		assertEquals(EUCountry.BE, registry.update(beList));
+		assertEquals(EUCountry.UK, registry.update(ukList));
+
+		// verify
+		Snapshot snapshot = registry.getSnapshot();
+		assertEquals(0, emptySnapshot.getVersion());
+		assertTrue(emptySnapshot.getTerritories().isEmpty());
+		assertEquals(2, snapshot.getVersion());
+		assertEquals(2, snapshot.getTerritories().size());
+		assertTrue(snapshot.getTrustServiceList(EUCountry.UK).isFrozen());
+		assertEquals("GB", snapshot.getTrustServiceList(EUCountry.UK)
+				.getSchemeTerritory());
+		List<TrustService> trustServices = registry
+				.findByCertificate(beCertificate);
+		assertEquals(1, trustServices.size());
+		assertEquals("BE-service", trustServices.get(0).getName());
+		trustServices = registry.findIssuingServices(certificate);
+		assertEquals(1, trustServices.size());
+		assertEquals("GB-service", trustServices.get(0).getName());
+		assertTrue(emptySnapshot.findByCertificate(beCertificate).isEmpty());
+		assertSame(snapshot.findByCertificate(beCertificate).get(0),
+				snapshot.getTrustServiceIndex(EUCountry.BE)
+						.findByCertificate(beCertificate).get(0));
+
+		// later changes of a registered list don't affect the registry
+		beList.setSchemeTerritory("NL");
+		assertEquals("BE", registry.getSnapshot()
+				.getTrustServiceList(EUCountry.BE).getSchemeTerritory());
+
+		registry.update(EUCountry.BE,
+				createTrustServiceList("BE", ukCertificate));
+		registry.remove(EUCountry.UK);
+		assertEquals(1, snapshot.findByCertificate(beCertificate).size());
+		assertTrue(registry.findByCertificate(beCertificate).isEmpty());
+		assertEquals(1, registry.findByCertificate(ukCertificate).size());
+		assertNull(registry.getSnapshot().getTrustServiceList(EUCountry.UK));
+		assertEquals(4, registry.getSnapshot().getVersion());
+
+		assertEquals(EUCountry.EL, FederatedTrustRegistry.getTerritory("GR"));
+		assertEquals(EUCountry.EL, FederatedTrustRegistry.getTerritory("el"));
+		assertNull(FederatedTrustRegistry.getTerritory("EU"));
+	}
+
+	private TrustServiceList createTrustServiceList(String territory,
+			X509Certificate caCertificate) {
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeTerritory(territory);
+		TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
+				territory + "-tsp", new String[] { territory + "-trade-name" });
+		trustServiceProvider.addTrustService(new TrustService(territory
+				+ "-service", TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, new DateTime(),
+				caCertificate));
+		trustServiceList.addTrustServiceProvider(trustServiceProvider);
+		return trustServiceList;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.ListOfListsVerificationReport;
+import be.fedict.eid.tsl.ListOfListsVerificationReport.Entry;
+import be.fedict.eid.tsl.ListOfListsVerificationReport.Status;
+import be.fedict.eid.tsl.ListOfListsVerifier;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+
+public class ListOfListsVerifierTest {
+
+	private static final String TSL_TYPE = "http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/TSLType/generic";
+
+	@Test
+	public void testVerifyMemberLists() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair beKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate beCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(beKeyPair, "CN=BE", notBefore,
+						notAfter);
+		KeyPair nlKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate nlCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(nlKeyPair, "CN=NL", notBefore,
+						notAfter);
+		KeyPair rogueKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate rogueCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(rogueKeyPair, "CN=Rogue",
+						notBefore, notAfter);
+
+		TrustServiceList listOfLists = TrustServiceListFactory.newInstance();
+		listOfLists.setSchemeTerritory("EU");
+		listOfLists.addOtherTSLPointer("http://tsl.be/tsl-be.xml",
+				"application/vnd.etsi.tsl+xml", TSL_TYPE, "BE", "FedICT",
+				"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/BE",
+				Locale.ENGLISH, beCertificate);
+		listOfLists.addOtherTSLPointer("http://tsl.be/tsl-be.pdf",
+				"application/pdf", TSL_TYPE, "BE", "FedICT",
+				"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/BE",
+				Locale.ENGLISH, rogueCertificate);
+		listOfLists.addOtherTSLPointer("http://tsl.nl/tsl-nl.xml",
+				"application/vnd.etsi.tsl+xml", TSL_TYPE, "NL", "OPTA",
+				"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/NL",
+				Locale.ENGLISH, nlCertificate);
+		listOfLists.addOtherTSLPointer("http://tsl.fr/tsl-fr.xml",
+				"application/vnd.etsi.tsl+xml", TSL_TYPE, "FR", "ANSSI",
+				"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/FR",
+				Locale.ENGLISH, rogueCertificate);
+		File lotlFile = File.createTempFile("lotl-", ".xml");
+		lotlFile.deleteOnExit();
+		listOfLists.saveAs(lotlFile);
+		// parsed pointers carry their additional information as DOM elements
+		listOfLists = TrustServiceListFactory.newInstance(lotlFile);
+
+		TrustServiceList beList = TrustServiceListFactory.newInstance();
+		beList.setSchemeTerritory("BE");
+		beList.sign(beKeyPair.getPrivate(), beCertificate);
+		TrustServiceList nlList = TrustServiceListFactory.newInstance();
+		nlList.setSchemeTerritory("NL");
+		nlList.sign(rogueKeyPair.getPrivate(), rogueCertificate);
+		TrustServiceList deList = TrustServiceListFactory.newInstance();
+		deList.setSchemeTerritory("DE");
+		deList.sign(beKeyPair.getPrivate(), beCertificate);
+
+		ListOfListsVerifier verifier = new ListOfListsVerifier(listOfLists, 2);
+
+		// operate
+		ListOfListsVerificationReport report = verifier.verify(Arrays.asList(
+				beList, nlList, deList));
+
+		// verify
+		assertFalse(report.isValid());
+		List<Entry> entries = report.getEntries();
+		assertEquals(4, entries.size());
+		assertEquals("BE", entries.get(0).getTerritory());
+		assertEquals(Status.VALID, report.getEntry("BE").getStatus());
+		assertEquals(beCertificate, report.getEntry("BE").getSigner());
+		assertEquals(Status.NO_POINTER, report.getEntry("DE").getStatus());
+		assertEquals(Status.MISSING, report.getEntry("FR").getStatus());
+		assertEquals(Status.UNTRUSTED, report.getEntry("NL").getStatus());
+		assertNull(report.getEntry("NL").getSigner());
+	}
+
+	@Test
+	public void testDuplicateMemberLists() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair beKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate beCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(beKeyPair, "CN=BE", notBefore,
+						notAfter);
+		KeyPair rogueKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate rogueCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(rogueKeyPair, "CN=Rogue",
+						notBefore, notAfter);
+
+		TrustServiceList listOfLists = TrustServiceListFactory.newInstance();
+		listOfLists.setSchemeTerritory("EU");
+		listOfLists.addOtherTSLPointer("http://tsl.be/tsl-be.xml",
+				"application/vnd.etsi.tsl+xml", TSL_TYPE, "BE", "FedICT",
+				"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/BE",
+				Locale.ENGLISH, beCertificate);
+		File lotlFile = File.createTempFile("lotl-", ".xml");
+		lotlFile.deleteOnExit();
+		listOfLists.saveAs(lotlFile);
+		listOfLists = TrustServiceListFactory.newInstance(lotlFile);
+
+		TrustServiceList beList = TrustServiceListFactory.newInstance();
+		beList.setSchemeTerritory("BE");
+		beList.sign(beKeyPair.getPrivate(), beCertificate);
+		TrustServiceList rogueList = TrustServiceListFactory.newInstance();
+		rogueList.setSchemeTerritory("be");
+		rogueList.sign(rogueKeyPair.getPrivate(), rogueCertificate);
+
+		ListOfListsVerifier verifier = new ListOfListsVerifier(listOfLists, 2);
+
+		// operate
+		ListOfListsVerificationReport report = verifier.verify(Arrays.asList(
+				beList, rogueList));
+
+		// verify
+		assertFalse(report.isValid());
+		assertEquals(1, report.getEntries().size());
+		assertEquals(Status.DUPLICATE, report.getEntry("BE").getStatus());
+		assertNull(report.getEntry("BE").getSigner());
+	}
+}
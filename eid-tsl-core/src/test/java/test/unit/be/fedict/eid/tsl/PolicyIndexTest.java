@@ -0,0 +1,86 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.fedict.eid.tsl.PolicyIndex;
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class PolicyIndexTest {
+
+	@Test
+	public void testPolicyIndex() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		TrustService trustService = fixture.trustService;
+		X509Certificate otherCaCertificate = fixture.otherCaCertificate;
+		TrustService otherTrustService = new TrustService("test-other-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				fixture.notBefore, otherCaCertificate);
+		fixture.trustServiceProvider.addTrustService(otherTrustService);
+		assertTrue(trustServiceList.getPolicyIndex().getPolicyOids()
+				.isEmpty());
+
+		// operate
+		trustService.addOIDForQCSSCDStatusAsInCert("1.2.3.4");
+		trustService.addOIDForQCForLegalPerson("1.2.3.5");
+		otherTrustService.addOIDForQCForLegalPerson("1.2.3.4");
+		PolicyIndex policyIndex = trustServiceList.getPolicyIndex();
+
+		// verify
+		assertSame(policyIndex, trustServiceList.getPolicyIndex());
+		assertEquals(2, policyIndex.getPolicyOids().size());
+		List<TrustService> trustServices = policyIndex
+				.getTrustServices("1.2.3.4");
+		assertEquals(2, trustServices.size());
+		assertEquals(fixture.caCertificate, trustServices.get(0)
+				.getServiceDigitalIdentity());
+		assertEquals(otherCaCertificate, trustServices.get(1)
+				.getServiceDigitalIdentity());
+		assertEquals(trustServices,
+				policyIndex.getTrustServices("urn:oid:1.2.3.4"));
+		assertTrue(policyIndex.getQualifiers("1.2.3.4", trustServices.get(0))
+				.contains(TrustService.QC_SSCD_STATUS_AS_IN_CERT_QUALIFIER_URI));
+		assertFalse(policyIndex.getQualifiers("1.2.3.4", trustServices.get(0))
+				.contains(TrustService.QC_FOR_LEGAL_PERSON_QUALIFIER_URI));
+		assertEquals(2, policyIndex.getQualifiers("1.2.3.4").size());
+		assertEquals(1, policyIndex.getTrustServices("1.2.3.5").size());
+		assertTrue(policyIndex.getTrustServices("1.2.3.6").isEmpty());
+
+		otherTrustService.addOIDForQCForLegalPerson("1.2.3.6");
+		assertNotSame(policyIndex, trustServiceList.getPolicyIndex());
+		assertEquals(Collections.singletonList(otherTrustService),
+				trustServiceList.getPolicyIndex().getTrustServices("1.2.3.6"));
+	}
+}
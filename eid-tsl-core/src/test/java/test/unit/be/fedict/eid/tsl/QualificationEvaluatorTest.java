@@ -0,0 +1,115 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.QualificationEvaluator;
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.jaxb.ecc.CriteriaListType;
+import be.fedict.eid.tsl.jaxb.ecc.QualificationsType;
+import be.fedict.eid.tsl.jaxb.xades.AnyType;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class QualificationEvaluatorTest {
+
+	@Test
+	public void testQualificationEvaluator() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		X509Certificate sscdCertificate = generateCertificate(fixture,
+				"CN=SSCD", "1.2.3.4", "1.2.3.5");
+		X509Certificate otherCertificate = generateCertificate(fixture,
+				"CN=Other", "1.2.3.6");
+		fixture.trustService.addOIDForQCSSCDStatusAsInCert("1.2.3.4");
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		fixture.trustServiceList.saveAs(tmpFile);
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+
+		// operate
+		QualificationEvaluator qualificationEvaluator = new QualificationEvaluator(
+				reloadedTrustServiceList);
+
+		// verify
+		Set<String> qualifiers = qualificationEvaluator
+				.getQualifiers(sscdCertificate);
+		assertEquals(1, qualifiers.size());
+		assertTrue(qualifiers
+				.contains(TrustService.QC_SSCD_STATUS_AS_IN_CERT_QUALIFIER_URI));
+		assertTrue(qualificationEvaluator.getQualifiers(otherCertificate)
+				.isEmpty());
+		assertTrue(qualificationEvaluator.getQualifiers(
+				fixture.caCertificate).isEmpty());
+		assertEquals(qualifiers, new QualificationEvaluator(
+				fixture.trustServiceList).getQualifiers(sscdCertificate));
+	}
+
+	@Test
+	public void testQualificationEvaluatorUnsupportedCriteria()
+			throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		X509Certificate certificate = generateCertificate(fixture, "CN=Test",
+				"1.2.3.6");
+		fixture.trustService.addOIDForQCSSCDStatusAsInCert("1.2.3.4");
+		JAXBElement<?> qualificationsElement = (JAXBElement<?>) fixture.trustService
+				.getExtensions().get(0).getContent().get(0);
+		CriteriaListType criteriaList = ((QualificationsType) qualificationsElement
+				.getValue()).getQualificationElement().get(0)
+				.getCriteriaList();
+		criteriaList.setAssert("none");
+		assertTrue(new QualificationEvaluator(trustServiceList).getQualifiers(
+				certificate).contains(
+				TrustService.QC_SSCD_STATUS_AS_IN_CERT_QUALIFIER_URI));
+
+		// operate
+		criteriaList.setOtherCriteriaList(new AnyType());
+
+		// verify
+		assertTrue(new QualificationEvaluator(trustServiceList).getQualifiers(
+				certificate).isEmpty());
+	}
+
+	private static X509Certificate generateCertificate(
+			TrustServiceListFixture fixture, String subjectDn,
+			String... policyOids) throws Exception {
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		return TrustTestUtils.generateCertificate(keyPair.getPublic(),
+				subjectDn, fixture.notBefore, fixture.notAfter,
+				fixture.caCertificate, fixture.caKeyPair.getPrivate(), false,
+				-1, null, null, new KeyUsage(KeyUsage.nonRepudiation),
+				policyOids);
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.ServiceDelta;
+import be.fedict.eid.tsl.ServiceDelta.Type;
+import be.fedict.eid.tsl.ServiceDeltaFeed;
+import be.fedict.eid.tsl.ServiceDeltaListener;
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceProvider;
+
+public class ServiceDeltaFeedTest {
+
+	private static final String LOCATION = "http://tsl.be/tsl-be.xml";
+
+	@Test
+	public void testUpdate() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		X509Certificate certificateA = generateCertificate("CN=A", notBefore);
+		X509Certificate certificateB = generateCertificate("CN=B", notBefore);
+		X509Certificate certificateC = generateCertificate("CN=C", notBefore);
+		X509Certificate rotatedCertificateC = generateCertificate("CN=C",
+				notBefore);
+		X509Certificate certificateD = generateCertificate("CN=D", notBefore);
+
+		TrustServiceList oldList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider oldTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		oldTrustServiceProvider.addTrustService(createTrustService("a-service",
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificateA));
+		oldTrustServiceProvider.addTrustService(createTrustService("b-service",
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificateB));
+		oldTrustServiceProvider.addTrustService(createTrustService("c-service",
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificateC));
+		oldList.addTrustServiceProvider(oldTrustServiceProvider);
+
+		TrustServiceList newList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider newTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		newTrustServiceProvider.addTrustService(createTrustService("a-service",
+				TrustService.SERVICE_STATUS_CEASED, notBefore, certificateA));
+		newTrustServiceProvider.addTrustService(createTrustService("c-service",
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				rotatedCertificateC));
+		newTrustServiceProvider.addTrustService(createTrustService("d-service",
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificateD));
+		newList.addTrustServiceProvider(newTrustServiceProvider);
+
+		ServiceDeltaFeed feed = new ServiceDeltaFeed();
+		final List<List<ServiceDelta>> notifications = new LinkedList<List<ServiceDelta>>();
+		feed.subscribe(new ServiceDeltaListener() {
+			public void changed(String location, List<ServiceDelta> deltas) {
+				notifications.add(deltas);
+			}
+		});
+
+		// operate
+		List<ServiceDelta> initialDeltas = feed.update(LOCATION, oldList);
+		List<ServiceDelta> deltas = feed.update(LOCATION, newList);
+		List<ServiceDelta> unchangedDeltas = feed.update(LOCATION, newList);
+
+		// verify
+		assertEquals(3, initialDeltas.size());
+		assertEquals(Type.ADDED, initialDeltas.get(0).getType());
+
+		assertEquals(4, deltas.size());
+		assertEquals(Type.STATUS_CHANGED, deltas.get(0).getType());
+		assertEquals("a-service", deltas.get(0).getNewTrustService().getName());
+		assertEquals(TrustService.SERVICE_STATUS_UNDER_SUPERVISION, deltas
+				.get(0).getOldTrustService().getStatus());
+
+		assertEquals(Type.CERTIFICATE_ROTATED, deltas.get(1).getType());
+		assertEquals(rotatedCertificateC, deltas.get(1).getAddedCertificates()
+				.get(0));
+		assertEquals(certificateC, deltas.get(1).getRemovedCertificates()
+				.get(0));
+
+		assertEquals(Type.ADDED, deltas.get(2).getType());
+		assertNull(deltas.get(2).getOldTrustService());
+		assertEquals(certificateD, deltas.get(2).getAddedCertificates().get(0));
+
+		assertEquals(Type.REMOVED, deltas.get(3).getType());
+		assertEquals("b-service", deltas.get(3).getOldTrustService().getName());
+
+		assertTrue(unchangedDeltas.isEmpty());
+		assertEquals(2, notifications.size());
+		assertTrue(ServiceDeltaFeed.compare(newList, newList).isEmpty());
+	}
+
+	@Test
+	public void testAmbiguousNameNotMatched() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		TrustServiceList oldList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider oldTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		oldTrustServiceProvider.addTrustService(createTrustService(
+				"test-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				notBefore, generateCertificate("CN=A", notBefore)));
+		oldTrustServiceProvider.addTrustService(createTrustService(
+				"test-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				notBefore, generateCertificate("CN=B", notBefore)));
+		oldList.addTrustServiceProvider(oldTrustServiceProvider);
+
+		TrustServiceList newList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider newTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		newTrustServiceProvider.addTrustService(createTrustService(
+				"test-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				notBefore, generateCertificate("CN=C", notBefore)));
+		newList.addTrustServiceProvider(newTrustServiceProvider);
+
+		// operate
+		List<ServiceDelta> deltas = ServiceDeltaFeed.compare(oldList, newList);
+
+		// verify
+		assertEquals(3, deltas.size());
+		assertEquals(Type.ADDED, deltas.get(0).getType());
+		assertEquals(Type.REMOVED, deltas.get(1).getType());
+		assertEquals(Type.REMOVED, deltas.get(2).getType());
+	}
+
+	@Test
+	public void testSharedCertificateMatchedBySameType() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		X509Certificate certificate = generateCertificate("CN=A", notBefore);
+		String ocspType = "http://uri.etsi.org/TrstSvc/Svctype/Certstatus/OCSP/QC";
+
+		TrustServiceList oldList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider oldTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		oldTrustServiceProvider.addTrustService(createTrustService(
+				"ca-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				notBefore, certificate));
+		oldTrustServiceProvider.addTrustService(new TrustService(
+				"ocsp-service", ocspType,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificate));
+		oldList.addTrustServiceProvider(oldTrustServiceProvider);
+
+		TrustServiceList newList = TrustServiceListFactory.newInstance();
+		TrustServiceProvider newTrustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		newTrustServiceProvider.addTrustService(createTrustService(
+				"ca-service", TrustService.SERVICE_STATUS_CEASED, notBefore,
+				certificate));
+		newTrustServiceProvider.addTrustService(new TrustService(
+				"ocsp-service", ocspType,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificate));
+		newList.addTrustServiceProvider(newTrustServiceProvider);
+
+		// operate
+		List<ServiceDelta> deltas = ServiceDeltaFeed.compare(oldList, newList);
+
+		// verify
+		assertEquals(1, deltas.size());
+		assertEquals(Type.STATUS_CHANGED, deltas.get(0).getType());
+		assertEquals("ca-service", deltas.get(0).getOldTrustService()
+				.getName());
+		assertEquals("ca-service", deltas.get(0).getNewTrustService()
+				.getName());
+	}
+
+	@Test
+	public void testListenerErrorIsolated() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		trustServiceProvider.addTrustService(createTrustService(
+				"test-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				notBefore, generateCertificate("CN=A", notBefore)));
+		trustServiceList.addTrustServiceProvider(trustServiceProvider);
+
+		ServiceDeltaFeed feed = new ServiceDeltaFeed();
+		final List<List<ServiceDelta>> notifications = new LinkedList<List<ServiceDelta>>();
+		feed.subscribe(new ServiceDeltaListener() {
+			public void changed(String location, List<ServiceDelta> deltas) {
+				throw new IllegalStateException("test listener error");
+			}
+		});
+		feed.subscribe(new ServiceDeltaListener() {
+			public void changed(String location, List<ServiceDelta> deltas) {
+				notifications.add(deltas);
+			}
+		});
+
+		// operate
+		List<ServiceDelta> deltas = feed.update(LOCATION, trustServiceList);
+
+		// verify
+		assertEquals(1, deltas.size());
+		assertEquals(1, notifications.size());
+		assertEquals(deltas, notifications.get(0));
+	}
+
+	private static X509Certificate generateCertificate(String dn,
+			DateTime notBefore) throws Exception {
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		return TrustTestUtils.generateSelfSignedCertificate(keyPair, dn,
+				notBefore, notBefore.plusYears(1));
+	}
+
+	private static TrustService createTrustService(String name, String status,
+			DateTime statusStartingDate, X509Certificate certificate) {
+		return new TrustService(name,
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI, status,
+				statusStartingDate, certificate);
+	}
+}
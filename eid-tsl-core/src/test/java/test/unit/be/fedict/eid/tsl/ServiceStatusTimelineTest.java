@@ -0,0 +1,130 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.ServiceStatusTimeline;
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class ServiceStatusTimelineTest {
+
+	@Test
+	public void testServiceStatusTimeline() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		DateTime notBefore = fixture.notBefore;
+		X509Certificate caCertificate = fixture.caCertificate;
+		X509Certificate oldCaCertificate = fixture.otherCaCertificate;
+		X509Certificate certificate = fixture.generateCertificate("CN=Test");
+		fixture.trustService.addServiceHistory(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				"test-service", TrustService.SERVICE_STATUS_ACCREDITED,
+				notBefore.minusYears(1), caCertificate);
+		fixture.trustService.addServiceHistory(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				"test-old-service", TrustService.SERVICE_STATUS_ACCREDITED,
+				notBefore.minusYears(2), oldCaCertificate);
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		fixture.trustServiceList.saveAs(tmpFile);
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+
+		// operate
+		ServiceStatusTimeline serviceStatusTimeline = reloadedTrustServiceList
+				.getServiceStatusTimeline();
+
+		// verify
+		assertSame(serviceStatusTimeline,
+				reloadedTrustServiceList.getServiceStatusTimeline());
+		DateTime now = new DateTime();
+		assertEquals(TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				serviceStatusTimeline.statusAt(caCertificate, now));
+		assertEquals(TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				serviceStatusTimeline.statusAt(certificate, now));
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				serviceStatusTimeline.statusAt(caCertificate,
+						notBefore.minusMonths(6)));
+		assertNull(serviceStatusTimeline.statusAt(caCertificate,
+				notBefore.minusMonths(18)));
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				serviceStatusTimeline.statusAt(oldCaCertificate,
+						notBefore.minusMonths(18)));
+		assertNull(serviceStatusTimeline.statusAt(oldCaCertificate, now));
+		assertNull(serviceStatusTimeline.statusAt(caCertificate,
+				notBefore.minusYears(3)));
+		TrustService reloadedTrustService = reloadedTrustServiceList
+				.getTrustServiceProviders().get(0).getTrustServices().get(0);
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				serviceStatusTimeline.statusAt(reloadedTrustService,
+						notBefore.minusMonths(18)));
+	}
+
+	@Test
+	public void testIntermediateServiceStatus() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		DateTime notBefore = fixture.notBefore;
+		KeyPair intermediateKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate intermediateCertificate = TrustTestUtils
+				.generateCertificate(intermediateKeyPair.getPublic(),
+						"CN=Intermediate CA", notBefore, fixture.notAfter,
+						fixture.caCertificate,
+						fixture.caKeyPair.getPrivate(), true);
+		X509Certificate certificate = TrustTestUtils.generateCertificate(
+				TrustTestUtils.generateKeyPair().getPublic(), "CN=Test",
+				notBefore, fixture.notAfter, intermediateCertificate,
+				intermediateKeyPair.getPrivate());
+		fixture.trustServiceProvider.addTrustService(new TrustService(
+				"intermediate-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_ACCREDITED,
+				notBefore.plusHours(12), intermediateCertificate));
+
+		// operate
+		ServiceStatusTimeline serviceStatusTimeline = fixture.trustServiceList
+				.getServiceStatusTimeline();
+
+		// verify
+		DateTime now = new DateTime();
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				serviceStatusTimeline.statusAt(intermediateCertificate, now));
+		assertEquals(TrustService.SERVICE_STATUS_ACCREDITED,
+				serviceStatusTimeline.statusAt(certificate, now));
+		// not the status of the root service
+		assertNull(serviceStatusTimeline.statusAt(intermediateCertificate,
+				notBefore.plusHours(6)));
+		assertEquals(TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				serviceStatusTimeline.statusAt(fixture.caCertificate,
+						notBefore.plusHours(6)));
+	}
+}
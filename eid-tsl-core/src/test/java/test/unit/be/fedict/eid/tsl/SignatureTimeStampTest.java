@@ -0,0 +1,284 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.LocalTimeStampService;
+import be.fedict.eid.tsl.SignatureTimeStamper;
+import be.fedict.eid.tsl.SignatureVerificationReport;
+import be.fedict.eid.tsl.SignatureVerificationReport.Phase;
+import be.fedict.eid.tsl.TimeStampService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+
+public class SignatureTimeStampTest {
+
+	@Test
+	public void testBatchTimeStamp() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		PrivateKey privateKey = keyPair.getPrivate();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+
+		TrustServiceList trustServiceList1 = TrustServiceListFactory
+				.newInstance();
+		trustServiceList1.setSchemeName("test-scheme-name-1");
+		trustServiceList1.sign(privateKey, certificate);
+		TrustServiceList trustServiceList2 = TrustServiceListFactory
+				.newInstance();
+		trustServiceList2.setSchemeName("test-scheme-name-2");
+		trustServiceList2.sign(privateKey, certificate);
+		assertNull(trustServiceList1.getSignatureTimeStamp());
+
+		LocalTimeStampService localTimeStampService = new LocalTimeStampService();
+		CountingTimeStampService timeStampService = new CountingTimeStampService(
+				localTimeStampService);
+		SignatureTimeStamper signatureTimeStamper = new SignatureTimeStamper(
+				timeStampService);
+
+		// operate
+		Date before = new Date(System.currentTimeMillis() - 1000);
+		signatureTimeStamper.add(trustServiceList1);
+		signatureTimeStamper.add(trustServiceList2);
+		signatureTimeStamper.timeStamp();
+
+		// verify
+		assertEquals(1, timeStampService.calls);
+		assertEquals(2, timeStampService.digests);
+		trustServiceList1.setTrustedTimeStampAuthorities(Collections
+				.singletonList(localTimeStampService.getCertificate()));
+		trustServiceList2.setTrustedTimeStampAuthorities(Collections
+				.singletonList(localTimeStampService.getCertificate()));
+		assertEquals(certificate, trustServiceList1.verifySignature());
+		assertEquals(certificate, trustServiceList2.verifySignature());
+		Date timeStamp = trustServiceList1.getSignatureTimeStamp();
+		assertNotNull(timeStamp);
+		assertEquals(false, timeStamp.before(before));
+		assertNotNull(trustServiceList2.getSignatureTimeStamp());
+	}
+
+	@Test
+	public void testTimeStampSurvivesSave() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		LocalTimeStampService localTimeStampService = new LocalTimeStampService();
+		trustServiceList.setTrustedTimeStampAuthorities(Collections
+				.singletonList(localTimeStampService.getCertificate()));
+
+		// operate
+		trustServiceList.addXadesT(localTimeStampService);
+		trustServiceList.saveAs(tmpFile);
+
+		// verify
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+		reloadedTrustServiceList.setTrustedTimeStampAuthorities(Collections
+				.singletonList(localTimeStampService.getCertificate()));
+		assertEquals(certificate, reloadedTrustServiceList.verifySignature());
+		assertNotNull(trustServiceList.getSignatureTimeStamp());
+		assertEquals(trustServiceList.getSignatureTimeStamp(),
+				reloadedTrustServiceList.getSignatureTimeStamp());
+	}
+
+	@Test
+	public void testUnsignedListRejected() throws Exception {
+		// setup
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		SignatureTimeStamper signatureTimeStamper = new SignatureTimeStamper(
+				new LocalTimeStampService());
+
+		// operate & verify
+		try {
+			signatureTimeStamper.add(trustServiceList);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUntrustedTimeStampAuthority() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		LocalTimeStampService untrustedTimeStampService = new LocalTimeStampService();
+		LocalTimeStampService trustedTimeStampService = new LocalTimeStampService();
+
+		// operate
+		trustServiceList.addXadesT(untrustedTimeStampService);
+
+		// verify
+		assertNull(trustServiceList.getSignatureTimeStamp());
+		trustServiceList.setTrustedTimeStampAuthorities(Collections
+				.singletonList(trustedTimeStampService.getCertificate()));
+		assertNull(trustServiceList.getSignatureTimeStamp());
+		assertNull(trustServiceList.verifySignature());
+		assertEquals(Phase.TIME_STAMP, trustServiceList
+				.getSignatureVerificationReport().getFailedPhase());
+
+		trustServiceList.setTrustedTimeStampAuthorities(Collections
+				.singletonList(untrustedTimeStampService.getCertificate()));
+		assertEquals(certificate, trustServiceList.verifySignature());
+		assertNotNull(trustServiceList.getSignatureTimeStamp());
+		assertEquals(trustServiceList.getSignatureTimeStamp(),
+				trustServiceList.getSignatureVerificationReport()
+						.getSignatureTimeStamp());
+	}
+
+	@Test
+	public void testTamperedTimeStampToken() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		LocalTimeStampService localTimeStampService = new LocalTimeStampService();
+		trustServiceList.setTrustedTimeStampAuthorities(Collections
+				.singletonList(localTimeStampService.getCertificate()));
+
+		// operate
+		trustServiceList.addXadesT(new TamperingTimeStampService(
+				localTimeStampService));
+
+		// verify
+		assertNull(trustServiceList.getSignatureTimeStamp());
+		assertNull(trustServiceList.verifySignature());
+		SignatureVerificationReport report = trustServiceList
+				.getSignatureVerificationReport();
+		assertFalse(report.isValid());
+		assertEquals(Phase.TIME_STAMP, report.getFailedPhase());
+		assertNull(report.getSignatureTimeStamp());
+	}
+
+	@Test
+	public void testTimeStampWithoutTrustedAuthorities() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+
+		// operate
+		trustServiceList.addXadesT(new LocalTimeStampService());
+
+		// verify
+		assertEquals(certificate, trustServiceList.verifySignature());
+		SignatureVerificationReport report = trustServiceList
+				.getSignatureVerificationReport();
+		assertTrue(report.isValid());
+		assertNull(report.getSignatureTimeStamp());
+		assertNull(trustServiceList.getSignatureTimeStamp());
+	}
+
+	private static class CountingTimeStampService implements
+			TimeStampService {
+
+		private final TimeStampService delegate;
+
+		private int calls;
+
+		private int digests;
+
+		public CountingTimeStampService(TimeStampService delegate) {
+			this.delegate = delegate;
+		}
+
+		public List<byte[]> timeStamp(List<byte[]> digests) throws IOException {
+			this.calls++;
+			this.digests += digests.size();
+			return this.delegate.timeStamp(digests);
+		}
+	}
+
+	/**
+	 * Flips a bit of the signature value of the time-stamp token, which is
+	 * encoded last within the CMS signer information.
+	 */
+	private static class TamperingTimeStampService implements
+			TimeStampService {
+
+		private final TimeStampService delegate;
+
+		public TamperingTimeStampService(TimeStampService delegate) {
+			this.delegate = delegate;
+		}
+
+		public List<byte[]> timeStamp(List<byte[]> digests) throws IOException {
+			List<byte[]> timeStampTokens = this.delegate.timeStamp(digests);
+			for (byte[] timeStampToken : timeStampTokens) {
+				timeStampToken[timeStampToken.length - 1] ^= 0x01;
+			}
+			return timeStampTokens;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyStore;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceProvider;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class TrustAnchorsTest {
+
+	@Test
+	public void testTrustAnchors() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		X509Certificate caCertificate = fixture.caCertificate;
+		X509Certificate ceasedCaCertificate = fixture.otherCaCertificate;
+		X509Certificate certificate = fixture.generateCertificate("CN=Test");
+		fixture.trustServiceProvider.addTrustService(new TrustService(
+				"test-ceased-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_CEASED, fixture.notBefore,
+				ceasedCaCertificate));
+
+		// operate
+		Set<TrustAnchor> trustAnchors = trustServiceList.getTrustAnchors(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION);
+
+		// verify
+		assertEquals(1, trustAnchors.size());
+		assertEquals(caCertificate, trustAnchors.iterator().next()
+				.getTrustedCert());
+		assertSame(trustAnchors, trustServiceList.getTrustAnchors(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION));
+		assertEquals(2, trustServiceList.getTrustAnchors().size());
+
+		PKIXParameters pkixParameters = new PKIXParameters(trustAnchors);
+		pkixParameters.setRevocationEnabled(false);
+		CertPath certPath = CertificateFactory.getInstance("X.509")
+				.generateCertPath(Collections.singletonList(certificate));
+		CertPathValidator.getInstance("PKIX").validate(certPath,
+				pkixParameters);
+
+		KeyStore keyStore = trustServiceList.exportKeyStore("JKS", null,
+				TrustService.SERVICE_STATUS_CEASED);
+		assertEquals(1, keyStore.size());
+		assertEquals(ceasedCaCertificate, keyStore.getCertificate(keyStore
+				.aliases().nextElement()));
+
+		trustServiceList.addTrustServiceProvider(new TrustServiceProvider(
+				"other-tsp", new String[] { "other-trade-name" }));
+		assertNotSame(trustAnchors, trustServiceList.getTrustAnchors(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION));
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceIdentityFilter;
+import be.fedict.eid.tsl.TrustServiceIndex;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceProvider;
+
+public class TrustServiceIdentityFilterTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(TrustServiceIdentityFilterTest.class);
+
+	@Test
+	public void testFalsePositiveRate() throws Exception {
+		// setup
+		SecureRandom random = new SecureRandom();
+		TrustServiceIdentityFilter filter = new TrustServiceIdentityFilter(
+				1000, 0.01);
+		List<byte[]> keys = new LinkedList<byte[]>();
+		for (int idx = 0; idx < 1000; idx++) {
+			byte[] key = new byte[32];
+			random.nextBytes(key);
+			keys.add(key);
+			filter.put(key);
+		}
+
+		// operate
+		int falsePositives = 0;
+		for (int idx = 0; idx < 10000; idx++) {
+			byte[] key = new byte[32];
+			random.nextBytes(key);
+			if (filter.mightContain(key)) {
+				falsePositives++;
+			}
+		}
+
+		// verify
+		for (byte[] key : keys) {
+			assertTrue(filter.mightContain(key));
+		}
+		LOG.debug("false positives: " + falsePositives);
+		LOG.debug("bits: " + filter.getBitCount() + ", hashes: "
+				+ filter.getHashCount());
+		assertEquals(1000, filter.getEntryCount());
+		assertEquals(7, filter.getHashCount());
+		assertTrue(falsePositives < 300);
+		assertTrue(filter.getExpectedFalsePositiveRate() < 0.02);
+	}
+
+	@Test
+	public void testTrustServiceIndexFilter() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair caKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate caCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(caKeyPair, "CN=CA", notBefore,
+						notAfter);
+		KeyPair otherKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate otherCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(otherKeyPair, "CN=Other",
+						notBefore, notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		trustServiceProvider.addTrustService(new TrustService("test-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				caCertificate));
+		trustServiceList.addTrustServiceProvider(trustServiceProvider);
+
+		// operate
+		trustServiceList.setIdentityFilterFalsePositiveRate(0.001);
+		TrustServiceIndex trustServiceIndex = trustServiceList
+				.getTrustServiceIndex();
+
+		// verify
+		TrustServiceIdentityFilter filter = trustServiceIndex
+				.getIdentityFilter();
+		assertEquals(0.001, filter.getFalsePositiveRate(), 0);
+		// SHA-256 digest and subject key identifier
+		assertEquals(2, filter.getEntryCount());
+		assertEquals(1, trustServiceIndex.findByCertificate(caCertificate)
+				.size());
+		assertTrue(trustServiceIndex.findByCertificate(otherCertificate)
+				.isEmpty());
+	}
+}
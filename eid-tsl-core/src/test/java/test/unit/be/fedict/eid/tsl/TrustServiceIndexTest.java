@@ -0,0 +1,129 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceIndex;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceProvider;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class TrustServiceIndexTest {
+
+	@Test
+	public void testTrustServiceIndex() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		X509Certificate certificate = fixture.generateCertificate("CN=Test");
+		fixture.trustService.addServiceHistory(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				"test-old-service", TrustService.SERVICE_STATUS_CEASED,
+				fixture.notBefore.minusYears(1), fixture.otherCaCertificate);
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		fixture.trustServiceList.saveAs(tmpFile);
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+
+		// operate
+		TrustServiceIndex trustServiceIndex = reloadedTrustServiceList
+				.getTrustServiceIndex();
+
+		// verify
+		assertSame(trustServiceIndex,
+				reloadedTrustServiceList.getTrustServiceIndex());
+		List<TrustService> trustServices = trustServiceIndex
+				.findByCertificate(fixture.caCertificate);
+		assertEquals(1, trustServices.size());
+		assertEquals("test-service", trustServices.get(0).getName());
+		assertEquals(trustServices,
+				trustServiceIndex.findByCertificate(fixture.otherCaCertificate));
+		assertEquals(trustServices,
+				trustServiceIndex.findIssuingServices(certificate));
+		assertEquals(trustServices, trustServiceIndex
+				.findBySubjectName(fixture.caCertificate
+						.getSubjectX500Principal()));
+		assertTrue(trustServiceIndex.findByCertificate(certificate).isEmpty());
+
+		reloadedTrustServiceList.addTrustServiceProvider(new TrustServiceProvider(
+				"other-tsp", new String[] { "other-trade-name" }));
+		assertNotSame(trustServiceIndex,
+				reloadedTrustServiceList.getTrustServiceIndex());
+	}
+
+	@Test
+	public void testTrustServiceIndexInvalidatedByTrustServiceEdit()
+			throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		X509Certificate otherCaCertificate = fixture.otherCaCertificate;
+		KeyPair oldCaKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate oldCaCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(oldCaKeyPair, "CN=Old CA",
+						fixture.notBefore, fixture.notAfter);
+		TrustServiceIndex trustServiceIndex = trustServiceList
+				.getTrustServiceIndex();
+		assertTrue(trustServiceIndex.findByCertificate(otherCaCertificate)
+				.isEmpty());
+
+		// operate
+		fixture.trustServiceProvider.addTrustService(new TrustService(
+				"other-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				fixture.notBefore, otherCaCertificate));
+
+		// verify
+		TrustServiceIndex updatedTrustServiceIndex = trustServiceList
+				.getTrustServiceIndex();
+		assertNotSame(trustServiceIndex, updatedTrustServiceIndex);
+		List<TrustService> trustServices = updatedTrustServiceIndex
+				.findByCertificate(otherCaCertificate);
+		assertEquals(1, trustServices.size());
+		assertEquals("other-service", trustServices.get(0).getName());
+		assertSame(fixture.trustServiceProvider, trustServiceList
+				.getTrustServiceProviders().get(0));
+
+		// operate
+		fixture.trustService.addServiceHistory(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				"test-old-service", TrustService.SERVICE_STATUS_CEASED,
+				fixture.notBefore.minusYears(1), oldCaCertificate);
+
+		// verify
+		trustServices = trustServiceList.getTrustServiceIndex()
+				.findByCertificate(oldCaCertificate);
+		assertEquals(1, trustServices.size());
+		assertSame(fixture.trustService, trustServices.get(0));
+	}
+}
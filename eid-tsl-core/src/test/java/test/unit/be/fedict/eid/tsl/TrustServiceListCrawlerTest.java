@@ -0,0 +1,405 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.AbstractTrustServiceListTransport;
+import be.fedict.eid.tsl.ListOfListsCrawlReport;
+import be.fedict.eid.tsl.ListOfListsCrawlReport.Entry;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListCrawler;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceListFetchCache;
+import be.fedict.eid.tsl.TrustServiceListResponse;
+import be.fedict.eid.tsl.TrustServiceListTransport;
+import be.fedict.eid.tsl.UrlTrustServiceListTransport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TrustServiceListCrawlerTest {
+
+	private static final String TSL_TYPE = "http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/TSLType/generic";
+
+	private static final String TSL_MIME_TYPE = "application/vnd.etsi.tsl+xml";
+
+	private HttpServer httpServer;
+
+	@After
+	public void tearDown() throws Exception {
+		if (null != this.httpServer) {
+			this.httpServer.stop(0);
+		}
+	}
+
+	@Test
+	public void testCrawlFileSystem() throws Exception {
+		// setup
+		final Map<String, File> files = new HashMap<String, File>();
+		files.put("http://tsl.be/tsl-be.xml", createMemberList("BE"));
+		files.put("http://tsl.nl/tsl-nl.xml", createMemberList("NL"));
+		TrustServiceList listOfLists = createListOfLists(
+				"http://tsl.be/tsl-be.xml", "http://tsl.nl/tsl-nl.xml",
+				"http://tsl.fr/tsl-fr.xml");
+
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				File file = files.get(location);
+				if (null == file) {
+					throw new FileNotFoundException(location);
+				}
+				return new FileInputStream(file);
+			}
+		};
+		TrustServiceListCrawler crawler = new TrustServiceListCrawler(
+				transport, 2);
+
+		// operate
+		ListOfListsCrawlReport report = crawler.crawl(listOfLists);
+
+		// verify
+		assertFalse(report.isComplete());
+		List<Entry> entries = report.getEntries();
+		assertEquals(3, entries.size());
+		assertEquals("BE", entries.get(0).getTerritory());
+		assertEquals("BE", entries.get(0).getTrustServiceList()
+				.getSchemeTerritory());
+		assertEquals("NL", entries.get(1).getTrustServiceList()
+				.getSchemeTerritory());
+		assertEquals("FR", entries.get(2).getTerritory());
+		assertNull(entries.get(2).getTrustServiceList());
+		assertNotNull(entries.get(2).getErrorMessage());
+		assertEquals(2, report.getTrustServiceLists().size());
+	}
+
+	@Test
+	public void testCrawlDeadline() throws Exception {
+		// setup
+		final File file = createMemberList("BE");
+		TrustServiceList listOfLists = createListOfLists(
+				"http://tsl.be/tsl-be.xml", "http://tsl.nl/tsl-nl.xml");
+		final AtomicInteger interrupts = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				if ("http://tsl.nl/tsl-nl.xml".equals(location)) {
+					// a server that keeps trickling data
+					try {
+						Thread.sleep(10000);
+					} catch (InterruptedException e) {
+						interrupts.incrementAndGet();
+						throw new IOException("interrupted");
+					}
+				}
+				return new FileInputStream(file);
+			}
+		};
+		TrustServiceListCrawler crawler = new TrustServiceListCrawler(
+				transport, 2);
+		crawler.setDeadline(500);
+
+		// operate
+		ListOfListsCrawlReport report = crawler.crawl(listOfLists);
+
+		// verify
+		assertFalse(report.isComplete());
+		List<Entry> entries = report.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals("BE", entries.get(0).getTrustServiceList()
+				.getSchemeTerritory());
+		assertNull(entries.get(1).getTrustServiceList());
+		assertEquals("timeout", entries.get(1).getErrorMessage());
+		assertTrue(report.getDuration() / 1000000 < 5000);
+		Thread.sleep(100);
+		assertEquals(1, interrupts.get());
+	}
+
+	@Test
+	public void testCrawlHttp() throws Exception {
+		// setup
+		final Map<String, byte[]> documents = new HashMap<String, byte[]>();
+		documents.put("/tsl-be.xml",
+				FileUtils.readFileToByteArray(createMemberList("BE")));
+		documents.put("/tsl-nl.xml",
+				FileUtils.readFileToByteArray(createMemberList("NL")));
+		documents.put("/tsl-fr.xml",
+				FileUtils.readFileToByteArray(createMemberList("FR")));
+		this.httpServer = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		this.httpServer.setExecutor(Executors.newCachedThreadPool());
+		this.httpServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				try {
+					Thread.sleep("/tsl-slow.xml".equals(path) ? 5000 : 1000);
+				} catch (InterruptedException e) {
+					return;
+				}
+				byte[] document = documents.get(path);
+				if (null == document) {
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+					return;
+				}
+				exchange.sendResponseHeaders(200, document.length);
+				OutputStream outputStream = exchange.getResponseBody();
+				outputStream.write(document);
+				outputStream.close();
+			}
+		});
+		this.httpServer.start();
+		String baseLocation = "http://localhost:"
+				+ this.httpServer.getAddress().getPort();
+		TrustServiceList listOfLists = createListOfLists(baseLocation
+				+ "/tsl-be.xml", baseLocation + "/tsl-nl.xml", baseLocation
+				+ "/tsl-fr.xml", baseLocation + "/tsl-de.xml", baseLocation
+				+ "/tsl-slow.xml");
+
+		TrustServiceListCrawler crawler = new TrustServiceListCrawler(
+				new UrlTrustServiceListTransport(), 5);
+		crawler.setTimeout(3000);
+
+		// operate
+		ListOfListsCrawlReport report = crawler.crawl(listOfLists);
+
+		// verify
+		List<Entry> entries = report.getEntries();
+		assertEquals(5, entries.size());
+		assertEquals(3, report.getTrustServiceLists().size());
+		assertEquals("FR", entries.get(2).getTrustServiceList()
+				.getSchemeTerritory());
+		assertTrue(entries.get(3).getErrorMessage().contains("404"));
+		assertNull(entries.get(4).getTrustServiceList());
+		// concurrent fetches: about the time of the slowest fetch
+		assertTrue(report.getDuration() / 1000000 < 4500);
+	}
+
+	@Test
+	public void testFetchCache() throws Exception {
+		// setup
+		final byte[] document = FileUtils
+				.readFileToByteArray(createMemberList("BE"));
+		final AtomicInteger fullResponses = new AtomicInteger();
+		final AtomicInteger notModifiedResponses = new AtomicInteger();
+		this.httpServer = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		this.httpServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst(
+						"If-None-Match"))) {
+					notModifiedResponses.incrementAndGet();
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+					return;
+				}
+				fullResponses.incrementAndGet();
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				exchange.sendResponseHeaders(200, document.length);
+				OutputStream outputStream = exchange.getResponseBody();
+				outputStream.write(document);
+				outputStream.close();
+			}
+		});
+		this.httpServer.start();
+		String location = "http://localhost:"
+				+ this.httpServer.getAddress().getPort() + "/tsl-be.xml";
+		TrustServiceList listOfLists = createListOfLists(location);
+		File directory = File.createTempFile("tsl-cache-", "");
+		directory.delete();
+
+		TrustServiceListFetchCache fetchCache = new TrustServiceListFetchCache(
+				directory);
+		TrustServiceListCrawler crawler = new TrustServiceListCrawler(
+				fetchCache, 2);
+
+		try {
+			// operate
+			ListOfListsCrawlReport report = crawler.crawl(listOfLists);
+			ListOfListsCrawlReport report2 = crawler.crawl(listOfLists);
+			// a new cache on the same store only needs the validators
+			ListOfListsCrawlReport report3 = new TrustServiceListCrawler(
+					new TrustServiceListFetchCache(directory), 2)
+					.crawl(listOfLists);
+
+			// verify
+			assertTrue(report.isComplete());
+			assertSame(report.getTrustServiceLists().get(0), report2
+					.getTrustServiceLists().get(0));
+			assertEquals("BE", report3.getTrustServiceLists().get(0)
+					.getSchemeTerritory());
+			assertEquals(1, fullResponses.get());
+			assertEquals(2, notModifiedResponses.get());
+			assertEquals(DigestUtils.sha256Hex(document),
+					fetchCache.fetch(location, 1000));
+		} finally {
+			FileUtils.deleteQuietly(directory);
+		}
+	}
+
+	@Test
+	public void testFetchCacheWrapsTransport() throws Exception {
+		// setup
+		final byte[] document = FileUtils
+				.readFileToByteArray(createMemberList("BE"));
+		final AtomicInteger fullResponses = new AtomicInteger();
+		final AtomicInteger notModifiedResponses = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				throw new IOException("conditional fetch expected");
+			}
+
+			@Override
+			public TrustServiceListResponse open(String location,
+					String etag, String lastModified, int timeout)
+					throws IOException {
+				if ("\"v1\"".equals(etag)) {
+					notModifiedResponses.incrementAndGet();
+					return TrustServiceListResponse.notModified();
+				}
+				fullResponses.incrementAndGet();
+				return new TrustServiceListResponse(new ByteArrayInputStream(
+						document), "\"v1\"", null);
+			}
+		};
+		File directory = File.createTempFile("tsl-cache-", "");
+		directory.delete();
+		TrustServiceListFetchCache fetchCache = new TrustServiceListFetchCache(
+				directory, transport);
+
+		try {
+			// operate
+			TrustServiceList trustServiceList = fetchCache
+					.getTrustServiceList("http://tsl.be/tsl-be.xml", 1000);
+			TrustServiceList trustServiceList2 = fetchCache
+					.getTrustServiceList("http://tsl.be/tsl-be.xml", 1000);
+
+			// verify
+			assertEquals("BE", trustServiceList.getSchemeTerritory());
+			assertTrue(trustServiceList.isFrozen());
+			assertSame(trustServiceList, trustServiceList2);
+			assertEquals(1, fullResponses.get());
+			assertEquals(1, notModifiedResponses.get());
+			assertTrue(fetchCache.open("http://tsl.be/tsl-be.xml", "\"v1\"",
+					null, 1000).isNotModified());
+		} finally {
+			FileUtils.deleteQuietly(directory);
+		}
+	}
+
+	@Test
+	public void testFetchCacheRemovesUnreferencedContent() throws Exception {
+		// setup
+		final byte[] document = FileUtils
+				.readFileToByteArray(createMemberList("BE"));
+		final byte[] reissuedDocument = FileUtils
+				.readFileToByteArray(createMemberList("NL"));
+		final AtomicInteger fetches = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				if (0 == fetches.getAndIncrement()) {
+					return new ByteArrayInputStream(document);
+				}
+				return new ByteArrayInputStream(reissuedDocument);
+			}
+		};
+		File directory = File.createTempFile("tsl-cache-", "");
+		directory.delete();
+		TrustServiceListFetchCache fetchCache = new TrustServiceListFetchCache(
+				directory, transport);
+		File orphanFile = new File(directory, "orphan.xml");
+
+		try {
+			// operate
+			String digest = fetchCache.fetch("http://tsl.be/tsl-be.xml", 1000);
+			FileUtils.writeByteArrayToFile(orphanFile, document);
+			String reissuedDigest = fetchCache.fetch(
+					"http://tsl.be/tsl-be.xml", 1000);
+			new TrustServiceListFetchCache(directory, transport);
+
+			// verify
+			assertFalse(new File(directory, digest + ".xml").exists());
+			assertTrue(new File(directory, reissuedDigest + ".xml").exists());
+			assertFalse(orphanFile.exists());
+		} finally {
+			FileUtils.deleteQuietly(directory);
+		}
+	}
+
+	private static File createMemberList(String territory) throws Exception {
+		TrustServiceList memberList = TrustServiceListFactory.newInstance();
+		memberList.setSchemeTerritory(territory);
+		File file = File.createTempFile("tsl-" + territory + "-", ".xml");
+		file.deleteOnExit();
+		memberList.saveAs(file);
+		return file;
+	}
+
+	private static TrustServiceList createListOfLists(String... locations)
+			throws Exception {
+		TrustServiceList listOfLists = TrustServiceListFactory.newInstance();
+		listOfLists.setSchemeTerritory("EU");
+		for (String location : locations) {
+			String territory = location.substring(
+					location.lastIndexOf('-') + 1, location.lastIndexOf('.'))
+					.toUpperCase();
+			listOfLists.addOtherTSLPointer(location, TSL_MIME_TYPE, TSL_TYPE,
+					territory, "Operator",
+					"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/"
+							+ territory, Locale.ENGLISH);
+			listOfLists.addOtherTSLPointer(location.replace(".xml", ".pdf"),
+					"application/pdf", TSL_TYPE, territory, "Operator",
+					"http://uri.etsi.org/TrstSvc/eSigDir-1999-93-EC-TrustedList/schemerules/"
+							+ territory, Locale.ENGLISH);
+		}
+		File lotlFile = File.createTempFile("lotl-", ".xml");
+		lotlFile.deleteOnExit();
+		listOfLists.saveAs(lotlFile);
+		return TrustServiceListFactory.newInstance(lotlFile);
+	}
+}
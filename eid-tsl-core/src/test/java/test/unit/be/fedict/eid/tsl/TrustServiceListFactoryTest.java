@@ -22,29 +22,48 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.math.BigInteger;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 
+import javax.xml.crypto.dsig.XMLSignature;
+
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.xpath.XPathAPI;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
 import org.joda.time.DateTime;
 import org.junit.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import be.fedict.eid.tsl.SignatureVerificationReport;
+import be.fedict.eid.tsl.SignatureVerificationReport.Phase;
+import be.fedict.eid.tsl.SignatureVerificationReport.ReferenceResult;
+import be.fedict.eid.tsl.TrustService;
 import be.fedict.eid.tsl.TrustServiceList;
 import be.fedict.eid.tsl.TrustServiceListFactory;
 import be.fedict.eid.tsl.TrustServiceProvider;
+import be.fedict.eid.tsl.TrustedSignerIndex;
+import be.fedict.eid.tsl.VerificationListener;
+import be.fedict.eid.tsl.jaxb.tsl.PostalAddressType;
 
 public class TrustServiceListFactoryTest {
 
@@ -394,4 +413,372 @@ public class TrustServiceListFactoryTest {
 		assertEquals(certificate, trustServiceList.verifySignature());
 	}
 
+	@Test
+	public void testStreamSignNewTsl() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		PrivateKey privateKey = keyPair.getPrivate();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+
+		String schemeName = "test-scheme-name & <streamed>";
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName(schemeName);
+		File tmpTslFile = File.createTempFile("tsl-", ".xml");
+		tmpTslFile.deleteOnExit();
+
+		// operate
+		FileOutputStream outputStream = new FileOutputStream(tmpTslFile);
+		try {
+			trustServiceList.streamSign(privateKey, certificate, outputStream);
+		} finally {
+			outputStream.close();
+		}
+
+		// verify
+		LOG.debug(FileUtils.readFileToString(tmpTslFile));
+		trustServiceList = TrustServiceListFactory.newInstance(tmpTslFile);
+		assertTrue(trustServiceList.hasSignature());
+		assertEquals(certificate, trustServiceList.verifySignature());
+		assertEquals(schemeName, trustServiceList.getSchemeName());
+	}
+
+	@Test
+	public void testStreamSignExistingTsl() throws Exception {
+		// setup
+		Document tslDocument = TrustTestUtils
+				.loadDocumentFromResource("tsl-signed-1.xml");
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance(tslDocument);
+
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		PrivateKey privateKey = keyPair.getPrivate();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+
+		// operate
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		trustServiceList.streamSign(privateKey, certificate, outputStream);
+
+		// verify
+		File tmpTslFile = File.createTempFile("tsl-", ".xml");
+		tmpTslFile.deleteOnExit();
+		FileUtils.writeByteArrayToFile(tmpTslFile, outputStream.toByteArray());
+		TrustServiceList signedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpTslFile);
+		assertEquals(certificate, signedTrustServiceList.verifySignature());
+		assertEquals(trustServiceList.getSchemeName(),
+				signedTrustServiceList.getSchemeName());
+	}
+
+	@Test
+	public void testSignNewTslWithEcKey() throws Exception {
+		// setup
+		KeyPair keyPair = TrustTestUtils.generateEcKeyPair("secp256r1");
+		PrivateKey privateKey = keyPair.getPrivate();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+
+		// operate
+		trustServiceList.sign(privateKey, certificate);
+
+		// verify
+		assertTrue(trustServiceList.hasSignature());
+		assertEquals(certificate, trustServiceList.verifySignature());
+		Node signatureMethodNode = XPathAPI.selectSingleNode(
+				trustServiceList.tslDocument,
+				"//*[local-name()='SignatureMethod']/@Algorithm");
+		assertEquals("http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256",
+				signatureMethodNode.getNodeValue());
+	}
+
+	@Test
+	public void testVerifySignatureResultInvalidatedOnChange()
+			throws Exception {
+		// setup
+		Document tslDocument = TrustTestUtils
+				.loadDocumentFromResource("tsl-signed-1.xml");
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance(tslDocument);
+		X509Certificate originalSigner = trustServiceList.verifySignature();
+		assertNotNull(originalSigner);
+
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		File tmpTslFile = File.createTempFile("tsl-", ".xml");
+		tmpTslFile.deleteOnExit();
+
+		// operate
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		trustServiceList.saveAs(tmpTslFile);
+
+		// verify
+		assertEquals(certificate, trustServiceList.verifySignature());
+		TrustServiceList trustServiceList1 = TrustServiceListFactory
+				.newInstance(tmpTslFile);
+		TrustServiceList trustServiceList2 = TrustServiceListFactory
+				.newInstance(tmpTslFile);
+		assertEquals(certificate, trustServiceList1.verifySignature());
+		assertEquals(certificate, trustServiceList2.verifySignature());
+
+		trustServiceList1.setSchemeName("changed-scheme-name");
+		assertNull(trustServiceList1.verifySignature());
+		assertEquals(certificate, trustServiceList2.verifySignature());
+	}
+
+	@Test
+	public void testVerifySignatureTrustedSigners() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		KeyPair otherKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate otherCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(otherKeyPair, "CN=Other",
+						notBefore, notAfter);
+
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+
+		// operate & verify
+		assertNull(trustServiceList.verifySignature(Collections
+				.singletonList(otherCertificate)));
+		assertEquals(certificate,
+				trustServiceList.verifySignature(Arrays.asList(
+						otherCertificate, certificate)));
+
+		TrustedSignerIndex trustedSignerIndex = new TrustedSignerIndex(
+				Arrays.asList(certificate));
+		assertEquals(certificate,
+				trustServiceList.verifySignature(trustedSignerIndex));
+	}
+
+	@Test
+	public void testVerifySignatureSubjectKeyIdentifierSharedByRenewedSigner()
+			throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		X509Certificate renewedCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter.plusYears(1));
+
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		File tmpTslFile = File.createTempFile("tsl-", ".xml");
+		tmpTslFile.deleteOnExit();
+		trustServiceList.saveAs(tmpTslFile);
+
+		/*
+		 * Only reference the signer key via ds:X509SKI.
+		 */
+		Document document = TrustTestUtils.loadDocument(tmpTslFile);
+		Element keyInfoElement = (Element) document.getElementsByTagNameNS(
+				XMLSignature.XMLNS, "KeyInfo").item(0);
+		while (null != keyInfoElement.getFirstChild()) {
+			keyInfoElement.removeChild(keyInfoElement.getFirstChild());
+		}
+		Element x509DataElement = document.createElementNS(
+				XMLSignature.XMLNS, "ds:X509Data");
+		keyInfoElement.appendChild(x509DataElement);
+		Element x509SkiElement = document.createElementNS(XMLSignature.XMLNS,
+				"ds:X509SKI");
+		SubjectKeyIdentifierStructure subjectKeyIdentifier = new SubjectKeyIdentifierStructure(
+				certificate.getExtensionValue(X509Extensions.SubjectKeyIdentifier
+						.getId()));
+		x509SkiElement.setTextContent(new String(Base64
+				.encodeBase64(subjectKeyIdentifier.getKeyIdentifier())));
+		x509DataElement.appendChild(x509SkiElement);
+		trustServiceList = TrustServiceListFactory.newInstance(document);
+
+		TrustedSignerIndex trustedSignerIndex = new TrustedSignerIndex(
+				Arrays.asList(renewedCertificate, certificate));
+
+		// operate
+		X509Certificate result = trustServiceList
+				.verifySignature(trustedSignerIndex);
+
+		// verify
+		assertEquals(certificate, result);
+	}
+
+	@Test
+	public void testVerifySignatureSigningTimeOutsideCertificateValidity()
+			throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().plusDays(1);
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+
+		// operate
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+
+		// verify
+		assertTrue(trustServiceList.hasSignature());
+		assertNull(trustServiceList.verifySignature());
+		assertNull(trustServiceList.verifySignature(Collections
+				.singletonList(certificate)));
+	}
+
+	@Test
+	public void testSignatureVerificationReport() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime().minusDays(1);
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeName("test-scheme-name");
+		trustServiceList.sign(keyPair.getPrivate(), certificate);
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		trustServiceList.saveAs(tmpFile);
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+		final List<SignatureVerificationReport> reports = new LinkedList<SignatureVerificationReport>();
+		reloadedTrustServiceList
+				.addVerificationListener(new VerificationListener() {
+					public void verified(SignatureVerificationReport report) {
+						reports.add(report);
+					}
+				});
+
+		// operate
+		SignatureVerificationReport report = reloadedTrustServiceList
+				.getSignatureVerificationReport();
+
+		// verify
+		LOG.debug("report: " + report);
+		assertTrue(report.isValid());
+		assertNull(report.getFailedPhase());
+		assertEquals(certificate, report.getSigner());
+		assertNotNull(report.getSigningTime());
+		assertEquals(2, report.getReferences().size());
+		for (ReferenceResult reference : report.getReferences()) {
+			assertTrue(reference.isValid());
+			assertEquals("http://www.w3.org/2001/04/xmlenc#sha256",
+					reference.getDigestAlgorithm());
+		}
+		assertTrue(report.getDuration(Phase.SIGNATURE_VALUE) > 0);
+		assertTrue(report.getDuration() >= report
+				.getDuration(Phase.REFERENCES));
+		assertEquals(1, reports.size());
+		assertEquals(certificate, reloadedTrustServiceList.verifySignature());
+		assertEquals(1, reports.size());
+	}
+
+	@Test
+	public void testServiceDigitalIdentityDecodedOnce() throws Exception {
+		// setup
+		DateTime notBefore = new DateTime();
+		DateTime notAfter = notBefore.plusYears(1);
+		KeyPair keyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate certificate = TrustTestUtils
+				.generateSelfSignedCertificate(keyPair, "CN=Test", notBefore,
+						notAfter);
+		TrustService trustService = new TrustService("test-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				certificate);
+
+		// operate
+		X509Certificate serviceCertificate = trustService
+				.getServiceDigitalIdentity();
+
+		// verify
+		assertEquals(certificate, serviceCertificate);
+		assertSame(serviceCertificate, trustService.getServiceDigitalIdentity());
+		assertTrue(Arrays.equals(certificate.getEncoded(),
+				trustService.getServiceDigitalIdentityData()));
+	}
+
+	@Test
+	public void testLocalizedLookups() throws Exception {
+		// setup
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		Locale dutch = new Locale("nl");
+		trustServiceList.setSchemeName("test-scheme", Locale.ENGLISH);
+		trustServiceList.setSchemeName("test-schema", dutch);
+		TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		trustServiceProvider.addPostalAddress(dutch, "Straat 1", "Brussel",
+				"Brussel", "1000", "BE");
+
+		// operate & verify
+		assertEquals("test-schema", trustServiceList.getSchemeName(dutch));
+		assertEquals("test-scheme",
+				trustServiceList.getSchemeName(Locale.FRENCH));
+		trustServiceList.setSchemeName("test-schema-2", dutch);
+		assertEquals("test-schema-2", trustServiceList.getSchemeName(dutch));
+		trustServiceList.setSchemeName("test-schema-fr", Locale.FRENCH);
+		assertEquals("test-schema-fr",
+				trustServiceList.getSchemeName(Locale.FRENCH));
+
+		assertEquals("Brussel", trustServiceProvider.getPostalAddress(dutch)
+				.getLocality());
+		assertNull(trustServiceProvider.getPostalAddress());
+		trustServiceProvider.addPostalAddress(Locale.ENGLISH, "Street 1",
+				"Brussels", "Brussels", "1000", "BE");
+		assertEquals("Brussels", trustServiceProvider.getPostalAddress()
+				.getLocality());
+	}
+
+	@Test
+	public void testLocalizedLookupsAfterInPlaceEdit() throws Exception {
+		// setup
+		TrustServiceProvider trustServiceProvider = new TrustServiceProvider(
+				"test-tsp", new String[] { "test-trade-name" });
+		trustServiceProvider.addPostalAddress(Locale.ENGLISH, "Street 1",
+				"Brussels", "Brussels", "1000", "BE");
+		PostalAddressType postalAddress = trustServiceProvider
+				.getPostalAddress(Locale.ENGLISH);
+		assertNull(trustServiceProvider.getPostalAddress(Locale.FRENCH));
+
+		// operate
+		postalAddress.setLang(Locale.FRENCH.getLanguage());
+
+		// verify
+		assertSame(postalAddress,
+				trustServiceProvider.getPostalAddress(Locale.FRENCH));
+		assertNull(trustServiceProvider.getPostalAddress(Locale.ENGLISH));
+	}
 }
@@ -0,0 +1,231 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.AbstractTrustServiceListTransport;
+import be.fedict.eid.tsl.RefreshListener;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceListRefreshScheduler;
+import be.fedict.eid.tsl.TrustServiceListTransport;
+
+public class TrustServiceListRefreshSchedulerTest {
+
+	private static final String LOCATION = "http://tsl.be/tsl-be.xml";
+
+	private static class TestRefreshListener implements RefreshListener {
+
+		private final List<TrustServiceList> refreshed = new Vector<TrustServiceList>();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private final AtomicInteger rejections = new AtomicInteger();
+
+		private volatile BigInteger maximumSequenceNumber;
+
+		public boolean accept(String location,
+				TrustServiceList trustServiceList) {
+			if (null != this.maximumSequenceNumber
+					&& trustServiceList.getSequenceNumber().compareTo(
+							this.maximumSequenceNumber) > 0) {
+				this.rejections.incrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		public void refreshed(String location,
+				TrustServiceList trustServiceList) {
+			this.refreshed.add(trustServiceList);
+		}
+
+		public void failed(String location, Exception exception) {
+			this.failures.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testSequenceNumberGuard() throws Exception {
+		// setup
+		final AtomicReference<byte[]> document = new AtomicReference<byte[]>(
+				createList(1, new DateTime().minusDays(1)));
+		final AtomicInteger fetches = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				fetches.incrementAndGet();
+				return new ByteArrayInputStream(document.get());
+			}
+		};
+		TestRefreshListener refreshListener = new TestRefreshListener();
+		TrustServiceListRefreshScheduler scheduler = new TrustServiceListRefreshScheduler(
+				transport, refreshListener, 1);
+		scheduler.setJitter(0);
+		scheduler.setMinimumInterval(50);
+		scheduler.setBackoff(50, 50);
+
+		try {
+			// operate
+			scheduler.schedule(LOCATION);
+			Thread.sleep(500);
+			int fetchesBeforeReissue = fetches.get();
+			document.set(createList(2, new DateTime().plusDays(1)));
+			Thread.sleep(500);
+
+			// verify
+			assertTrue(fetchesBeforeReissue > 2);
+			assertEquals(2, refreshListener.refreshed.size());
+			assertEquals(BigInteger.valueOf(2), scheduler
+					.getTrustServiceList(LOCATION).getSequenceNumber());
+			assertEquals(0, refreshListener.failures.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testRejectedIssueNotStored() throws Exception {
+		// setup
+		final AtomicReference<byte[]> document = new AtomicReference<byte[]>(
+				createList(1, new DateTime().minusDays(1)));
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				return new ByteArrayInputStream(document.get());
+			}
+		};
+		TestRefreshListener refreshListener = new TestRefreshListener();
+		refreshListener.maximumSequenceNumber = BigInteger.ONE;
+		TrustServiceListRefreshScheduler scheduler = new TrustServiceListRefreshScheduler(
+				transport, refreshListener, 1);
+		scheduler.setJitter(0);
+		scheduler.setMinimumInterval(50);
+		scheduler.setBackoff(50, 50);
+
+		try {
+			// operate
+			scheduler.schedule(LOCATION);
+			Thread.sleep(300);
+			document.set(createList(2, new DateTime().plusDays(1)));
+			Thread.sleep(300);
+
+			// verify
+			assertEquals(1, refreshListener.refreshed.size());
+			assertTrue(refreshListener.rejections.get() > 1);
+			assertEquals(BigInteger.ONE,
+					scheduler.getTrustServiceList(LOCATION)
+							.getSequenceNumber());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testNextUpdate() throws Exception {
+		// setup
+		final AtomicInteger fetches = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				fetches.incrementAndGet();
+				throw new IOException("not expected");
+			}
+		};
+		TestRefreshListener refreshListener = new TestRefreshListener();
+		TrustServiceListRefreshScheduler scheduler = new TrustServiceListRefreshScheduler(
+				transport, refreshListener, 1);
+		scheduler.setMinimumInterval(50);
+		TrustServiceList loadedList = TrustServiceListFactory
+				.newInstance(new ByteArrayInputStream(createList(1,
+						new DateTime().plusDays(1))));
+
+		try {
+			// operate
+			scheduler.schedule(LOCATION, loadedList);
+			Thread.sleep(300);
+
+			// verify
+			assertEquals(0, fetches.get());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void testBackoff() throws Exception {
+		// setup
+		final AtomicInteger fetches = new AtomicInteger();
+		TrustServiceListTransport transport = new AbstractTrustServiceListTransport() {
+			public InputStream open(String location, int timeout)
+					throws IOException {
+				fetches.incrementAndGet();
+				throw new IOException("unreachable");
+			}
+		};
+		TestRefreshListener refreshListener = new TestRefreshListener();
+		TrustServiceListRefreshScheduler scheduler = new TrustServiceListRefreshScheduler(
+				transport, refreshListener, 1);
+		scheduler.setJitter(0);
+		scheduler.setBackoff(100, 10000);
+
+		try {
+			// operate
+			scheduler.schedule(LOCATION);
+			Thread.sleep(1000);
+
+			// verify: at 0, 100, 300 and 700 ms
+			assertEquals(4, fetches.get());
+			assertEquals(4, refreshListener.failures.get());
+			assertTrue(refreshListener.refreshed.isEmpty());
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private static byte[] createList(int sequenceNumber, DateTime nextUpdate)
+			throws Exception {
+		TrustServiceList trustServiceList = TrustServiceListFactory
+				.newInstance();
+		trustServiceList.setSchemeTerritory("BE");
+		trustServiceList.setTSLSequenceNumber(BigInteger
+				.valueOf(sequenceNumber));
+		trustServiceList.setNextUpdate(nextUpdate);
+		File file = File.createTempFile("tsl-", ".xml");
+		file.deleteOnExit();
+		trustServiceList.saveAs(file);
+		return FileUtils.readFileToByteArray(file);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceProvider;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class TrustServiceListSnapshotTest {
+
+	@Test
+	public void testSnapshot() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		DateTime notBefore = fixture.notBefore;
+		X509Certificate otherCaCertificate = fixture.otherCaCertificate;
+		trustServiceList.setSchemeTerritory("BE");
+
+		// operate
+		AtomicReference<TrustServiceList> published = new AtomicReference<TrustServiceList>(
+				trustServiceList.snapshot());
+		TrustServiceList snapshot = published.get();
+		TrustServiceProvider otherTrustServiceProvider = new TrustServiceProvider(
+				"other-tsp", new String[] { "other-trade-name" });
+		otherTrustServiceProvider.addTrustService(new TrustService(
+				"other-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+				otherCaCertificate));
+		trustServiceList.addTrustServiceProvider(otherTrustServiceProvider);
+		published.set(trustServiceList.snapshot());
+
+		// verify
+		assertTrue(snapshot.isFrozen());
+		assertFalse(trustServiceList.isFrozen());
+		assertSame(snapshot, snapshot.snapshot());
+		assertEquals(1, snapshot.getTrustServiceProviders().size());
+		assertEquals(1, snapshot.getTrustAnchors().size());
+		assertEquals("BE", snapshot.getSchemeTerritory());
+		assertEquals(2, published.get().getTrustServiceProviders().size());
+		assertEquals(2, published.get().getTrustAnchors().size());
+		try {
+			snapshot.setSchemeTerritory("NL");
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			snapshot.getTrustServiceProviders().add(otherTrustServiceProvider);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		TrustServiceProvider frozenTrustServiceProvider = snapshot
+				.getTrustServiceProviders().get(0);
+		try {
+			frozenTrustServiceProvider.addTrustService(new TrustService(
+					"rogue-service",
+					TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+					TrustService.SERVICE_STATUS_UNDER_SUPERVISION, notBefore,
+					otherCaCertificate));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			frozenTrustServiceProvider.getTrustServices().get(0)
+					.addOIDForQCForLegalPerson("1.2.3.4");
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		TrustServiceList copy = snapshot.copy();
+		assertFalse(copy.isFrozen());
+		copy.setSchemeTerritory("NL");
+		assertEquals("BE", snapshot.getSchemeTerritory());
+	}
+
+	@Test
+	public void testFrozenGettersGiveCopies() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		TrustServiceList trustServiceList = fixture.trustServiceList;
+		trustServiceList.addOtherTSLPointer("http://tsl.be/tsl-be.xml",
+				"application/vnd.etsi.tsl+xml",
+				"http://uri.etsi.org/TrstSvc/TrustedList/TSLType/EUgeneric",
+				"BE", "test-operator",
+				"http://uri.etsi.org/TrstSvc/TrustedList/schemerules/EUcommon",
+				Locale.ENGLISH);
+		fixture.trustServiceProvider.addPostalAddress(Locale.ENGLISH,
+				"Street 1", "Brussels", "Brussels", "1000", "BE");
+		fixture.trustServiceProvider.addElectronicAddress(Locale.ENGLISH,
+				"mailto:info@tsp.be");
+		fixture.trustService
+				.addSchemeServiceDefinitionURI("http://tsp.be/definition");
+		fixture.trustService.addServiceHistory(
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				"test-service", TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+				fixture.notBefore.minusDays(1), fixture.caCertificate);
+
+		// operate
+		TrustServiceList snapshot = trustServiceList.snapshot();
+		TrustServiceProvider trustServiceProvider = snapshot
+				.getTrustServiceProviders().get(0);
+		TrustService trustService = trustServiceProvider.getTrustServices()
+				.get(0);
+		snapshot.getOtherTSLPointers().get(0).setTSLLocation("changed");
+		trustServiceProvider.getPostalAddress(Locale.ENGLISH).setLocality(
+				"changed");
+		trustServiceProvider.getElectronicAddress().getURI().get(0)
+				.setValue("changed");
+		trustService.getSchemeServiceDefinitionURI().getURI().get(0)
+				.setValue("changed");
+		trustService.getServiceHistoryInstanceType()
+				.getServiceHistoryInstance().clear();
+
+		// verify
+		assertEquals("http://tsl.be/tsl-be.xml", snapshot
+				.getOtherTSLPointers().get(0).getTSLLocation());
+		assertEquals("Brussels",
+				trustServiceProvider.getPostalAddress(Locale.ENGLISH)
+						.getLocality());
+		assertEquals("mailto:info@tsp.be", trustServiceProvider
+				.getElectronicAddress().getURI().get(0).getValue());
+		assertEquals("http://tsp.be/definition", trustService
+				.getSchemeServiceDefinitionURI().getURI().get(0).getValue());
+		assertEquals(1, trustService.getServiceHistoryInstanceType()
+				.getServiceHistoryInstance().size());
+	}
+}
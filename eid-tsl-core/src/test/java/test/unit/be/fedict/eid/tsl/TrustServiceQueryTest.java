@@ -0,0 +1,95 @@
+/*
+ * eID TSL Project.
+ * Copyright (C) 2009 FedICT.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.fedict.eid.tsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import test.unit.be.fedict.eid.tsl.TrustTestUtils.TrustServiceListFixture;
+
+public class TrustServiceQueryTest {
+
+	@Test
+	public void testTrustServiceQuery() throws Exception {
+		// setup
+		TrustServiceListFixture fixture = new TrustServiceListFixture();
+		X509Certificate caCertificate = fixture.caCertificate;
+		KeyPair oldCaKeyPair = TrustTestUtils.generateKeyPair();
+		X509Certificate oldCaCertificate = TrustTestUtils
+				.generateSelfSignedCertificate(oldCaKeyPair, "CN=Old CA",
+						fixture.notBefore.minusYears(3),
+						fixture.notBefore.minusYears(2));
+		fixture.trustServiceList.setSchemeTerritory("GR");
+		fixture.trustService.addOIDForQCSSCDStatusAsInCert("1.2.3.4");
+		fixture.trustServiceProvider.addTrustService(new TrustService(
+				"test-old-service",
+				TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+				TrustService.SERVICE_STATUS_CEASED, fixture.notBefore,
+				oldCaCertificate));
+		File tmpFile = File.createTempFile("tsl-", ".xml");
+		tmpFile.deleteOnExit();
+		fixture.trustServiceList.saveAs(tmpFile);
+		TrustServiceList reloadedTrustServiceList = TrustServiceListFactory
+				.newInstance(tmpFile);
+
+		// operate
+		List<TrustService> caServices = reloadedTrustServiceList.query()
+				.serviceType(TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI)
+				.list();
+		List<TrustService> validServices = reloadedTrustServiceList.query()
+				.serviceType(TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI)
+				.territory("EL").validAt(new DateTime()).list();
+		List<TrustService> qualifiedServices = reloadedTrustServiceList
+				.query()
+				.qualifier(
+						TrustService.QC_SSCD_STATUS_AS_IN_CERT_QUALIFIER_URI)
+				.list();
+		List<TrustService> ceasedServices = reloadedTrustServiceList.query()
+				.serviceStatus(TrustService.SERVICE_STATUS_CEASED).list();
+
+		// verify
+		assertEquals(2, caServices.size());
+		assertEquals(1, validServices.size());
+		assertEquals(caCertificate, validServices.get(0)
+				.getServiceDigitalIdentity());
+		assertEquals(1, qualifiedServices.size());
+		assertEquals(caCertificate, qualifiedServices.get(0)
+				.getServiceDigitalIdentity());
+		assertEquals(1, ceasedServices.size());
+		assertEquals(oldCaCertificate, ceasedServices.get(0)
+				.getServiceDigitalIdentity());
+		assertFalse(reloadedTrustServiceList.query().territory("BE")
+				.iterator().hasNext());
+		assertTrue(reloadedTrustServiceList.query()
+				.serviceStatus(TrustService.SERVICE_STATUS_ACCREDITED)
+				.list().isEmpty());
+	}
+}
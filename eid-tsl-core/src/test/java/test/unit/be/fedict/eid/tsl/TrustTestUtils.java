@@ -31,6 +31,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
+import java.security.Security;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
@@ -38,6 +39,7 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.RSAKeyGenParameterSpec;
 import java.util.Date;
 import java.util.LinkedList;
@@ -55,9 +57,11 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.DERObjectIdentifier;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
 import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
@@ -69,6 +73,7 @@ import org.bouncycastle.asn1.x509.DistributionPointName;
 import org.bouncycastle.asn1.x509.GeneralName;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.PolicyInformation;
 import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.bouncycastle.asn1.x509.X509Extensions;
@@ -93,6 +98,11 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import be.fedict.eid.tsl.TrustService;
+import be.fedict.eid.tsl.TrustServiceList;
+import be.fedict.eid.tsl.TrustServiceListFactory;
+import be.fedict.eid.tsl.TrustServiceProvider;
+
 public class TrustTestUtils {
 
 	public static X509Certificate loadCertificateFromResource(
@@ -180,7 +190,25 @@ public class TrustTestUtils {
 			String crlUri, String ocspUri, KeyUsage keyUsage)
 			throws IOException, InvalidKeyException, IllegalStateException,
 			NoSuchAlgorithmException, SignatureException, CertificateException {
-		String signatureAlgorithm = "SHA1withRSA";
+		return generateCertificate(subjectPublicKey, subjectDn, notBefore,
+				notAfter, issuerCertificate, issuerPrivateKey, caFlag,
+				pathLength, crlUri, ocspUri, keyUsage, null);
+	}
+
+	public static X509Certificate generateCertificate(
+			PublicKey subjectPublicKey, String subjectDn, DateTime notBefore,
+			DateTime notAfter, X509Certificate issuerCertificate,
+			PrivateKey issuerPrivateKey, boolean caFlag, int pathLength,
+			String crlUri, String ocspUri, KeyUsage keyUsage,
+			String[] certificatePolicies) throws IOException,
+			InvalidKeyException, IllegalStateException,
+			NoSuchAlgorithmException, SignatureException, CertificateException {
+		String signatureAlgorithm;
+		if ("RSA".equals(issuerPrivateKey.getAlgorithm())) {
+			signatureAlgorithm = "SHA1withRSA";
+		} else {
+			signatureAlgorithm = "SHA256withECDSA";
+		}
 		X509V3CertificateGenerator certificateGenerator = new X509V3CertificateGenerator();
 		certificateGenerator.reset();
 		certificateGenerator.setPublicKey(subjectPublicKey);
@@ -202,7 +230,11 @@ public class TrustTestUtils {
 		certificateGenerator.addExtension(X509Extensions.SubjectKeyIdentifier,
 				false, createSubjectKeyId(subjectPublicKey));
 		PublicKey issuerPublicKey;
-		issuerPublicKey = subjectPublicKey;
+		if (null != issuerCertificate) {
+			issuerPublicKey = issuerCertificate.getPublicKey();
+		} else {
+			issuerPublicKey = subjectPublicKey;
+		}
 		certificateGenerator.addExtension(
 				X509Extensions.AuthorityKeyIdentifier, false,
 				createAuthorityKeyId(issuerPublicKey));
@@ -246,6 +278,17 @@ public class TrustTestUtils {
 					keyUsage);
 		}
 
+		if (null != certificatePolicies) {
+			ASN1EncodableVector policyInformations = new ASN1EncodableVector();
+			for (String certificatePolicy : certificatePolicies) {
+				policyInformations.add(new PolicyInformation(
+						new DERObjectIdentifier(certificatePolicy)));
+			}
+			certificateGenerator.addExtension(
+					X509Extensions.CertificatePolicies, false, new DERSequence(
+							policyInformations));
+		}
+
 		X509Certificate certificate;
 		certificate = certificateGenerator.generate(issuerPrivateKey);
 
@@ -277,6 +320,18 @@ public class TrustTestUtils {
 		return keyPair;
 	}
 
+	public static KeyPair generateEcKeyPair(String curveName)
+			throws Exception {
+		if (null == Security.getProvider(BouncyCastleProvider.PROVIDER_NAME)) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+		keyPairGenerator.initialize(new ECGenParameterSpec(curveName),
+				new SecureRandom());
+		KeyPair keyPair = keyPairGenerator.generateKeyPair();
+		return keyPair;
+	}
+
 	private static SubjectKeyIdentifier createSubjectKeyId(PublicKey publicKey)
 			throws IOException {
 		ByteArrayInputStream bais = new ByteArrayInputStream(publicKey
@@ -496,4 +551,68 @@ public class TrustTestUtils {
 		transformer.transform(source, result);
 		return stringWriter.getBuffer().toString();
 	}
+
+	/**
+	 * New trust service list with a single trust service provider offering a
+	 * CA/QC service under supervision for a self-signed CA. A second CA is
+	 * generated as well, but not added to the list.
+	 */
+	public static class TrustServiceListFixture {
+
+		public final DateTime notBefore;
+
+		public final DateTime notAfter;
+
+		public final KeyPair caKeyPair;
+
+		public final X509Certificate caCertificate;
+
+		public final KeyPair otherCaKeyPair;
+
+		public final X509Certificate otherCaCertificate;
+
+		public final TrustServiceList trustServiceList;
+
+		public final TrustServiceProvider trustServiceProvider;
+
+		public final TrustService trustService;
+
+		public TrustServiceListFixture() throws Exception {
+			this.notBefore = new DateTime().minusDays(1);
+			this.notAfter = this.notBefore.plusYears(1);
+			this.caKeyPair = generateKeyPair();
+			this.caCertificate = generateSelfSignedCertificate(this.caKeyPair,
+					"CN=CA", this.notBefore.minusYears(3), this.notAfter);
+			this.otherCaKeyPair = generateKeyPair();
+			this.otherCaCertificate = generateSelfSignedCertificate(
+					this.otherCaKeyPair, "CN=Other CA",
+					this.notBefore.minusYears(3), this.notAfter);
+
+			this.trustServiceList = TrustServiceListFactory.newInstance();
+			this.trustServiceProvider = new TrustServiceProvider("test-tsp",
+					new String[] { "test-trade-name" });
+			this.trustServiceList
+					.addTrustServiceProvider(this.trustServiceProvider);
+			this.trustService = new TrustService("test-service",
+					TrustService.SERVICE_TYPE_IDENTIFIER_CA_QC_URI,
+					TrustService.SERVICE_STATUS_UNDER_SUPERVISION,
+					this.notBefore, this.caCertificate);
+			this.trustServiceProvider.addTrustService(this.trustService);
+		}
+
+		/**
+		 * Issues an end-entity certificate by the CA, valid from notBefore
+		 * till notAfter.
+		 * 
+		 * @param subjectDn
+		 * @return
+		 * @throws Exception
+		 */
+		public X509Certificate generateCertificate(String subjectDn)
+				throws Exception {
+			return TrustTestUtils.generateCertificate(generateKeyPair()
+					.getPublic(), subjectDn, this.notBefore, this.notAfter,
+					this.caCertificate, this.caKeyPair.getPrivate(), false);
+		}
+	}
 }